@@ -0,0 +1,70 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+// Parses a compile_commands.json made by repeating the entries of src/test/resources/orig/compile_commands.json, each copy with its own file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompileCommandsParserBenchmark {
+    @Param({ "10000", "100000" })
+    private int compileCommandCount;
+
+    private File compileCommandsJsonFile;
+
+    @Setup
+    public void createCompileCommandsJsonFile() throws IOException {
+        final JsonArray origCompileCommands = new JsonParser().parse(FileUtils.readFileToString(new File("src/test/resources/orig/compile_commands.json"), StandardCharsets.UTF_8)).getAsJsonArray();
+        compileCommandsJsonFile = File.createTempFile("compile_commands", ".json");
+        try (Writer writer = Files.newBufferedWriter(compileCommandsJsonFile.toPath(), StandardCharsets.UTF_8); JsonWriter jsonWriter = new JsonWriter(writer)) {
+            jsonWriter.beginArray();
+            for (int i = 0; i < compileCommandCount; i++) {
+                final JsonElement origCompileCommand = origCompileCommands.get(i % origCompileCommands.size());
+                final JsonObject compileCommand = origCompileCommand.getAsJsonObject().deepCopy();
+                final String file = compileCommand.get("file").getAsString();
+                final String copyFile = file.replace(".c", String.format("_%d.c", i / origCompileCommands.size()));
+                compileCommand.addProperty("file", copyFile);
+                compileCommand.addProperty("command", compileCommand.get("command").getAsString().replace(file, copyFile));
+                jsonWriter.jsonValue(compileCommand.toString());
+            }
+            jsonWriter.endArray();
+        }
+    }
+
+    @TearDown
+    public void deleteCompileCommandsJsonFile() {
+        FileUtils.deleteQuietly(compileCommandsJsonFile);
+    }
+
+    @Benchmark
+    public void parseCompileCommandsFile(final Blackhole blackhole) throws IOException {
+        try (CompileCommandsParser compileCommandsParser = new CompileCommandsParser(compileCommandsJsonFile)) {
+            while (compileCommandsParser.hasNext()) {
+                blackhole.consume(compileCommandsParser.next());
+            }
+        }
+    }
+}
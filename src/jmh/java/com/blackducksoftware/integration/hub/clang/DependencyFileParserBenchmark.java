@@ -0,0 +1,73 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Parses deps.mk rules as written by the compiler, from a file (read whole below 1 MB, mapped above) and line by line as from a pipe
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DependencyFileParserBenchmark {
+    private static final int HEADERS_PER_RULE = 120;
+
+    // 1 rule is a single translation unit's deps.mk; 2000 rules is about 10 MB
+    @Param({ "1", "2000" })
+    private int ruleCount;
+
+    private File depsMkFile;
+    private List<String> depsMkLines;
+
+    @Setup
+    public void createDepsMkFile() throws IOException {
+        final StringBuilder depsMk = new StringBuilder();
+        for (int rule = 0; rule < ruleCount; rule++) {
+            depsMk.append(String.format("stccore/sbos/CMakeFiles/sbos.dir/file_%d.c.o: /home/dev/stcapi/stccore/sbos/file_%d.c \\\n", rule, rule));
+            for (int header = 0; header < HEADERS_PER_RULE; header++) {
+                depsMk.append(String.format(" /usr/include/x86_64-linux-gnu/module_%d/header_%d.h", header % 12, header));
+                depsMk.append(header % 3 == 2 ? " \\\n" : "");
+            }
+            depsMk.append(" /home/dev/stcapi/stccore/with\\ space.h\n");
+        }
+        depsMkFile = File.createTempFile("deps", ".mk");
+        FileUtils.writeStringToFile(depsMkFile, depsMk.toString(), StandardCharsets.UTF_8);
+        depsMkLines = FileUtils.readLines(depsMkFile, StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void deleteDepsMkFile() {
+        FileUtils.deleteQuietly(depsMkFile);
+    }
+
+    @Benchmark
+    public List<String> parseDependencyFile() throws IOException {
+        final List<String> dependencyFilePaths = new ArrayList<>();
+        DependencyFileParser.parse(depsMkFile, dependencyFilePaths);
+        return dependencyFilePaths;
+    }
+
+    @Benchmark
+    public List<String> parseDependencyLines() {
+        final List<String> dependencyFilePaths = new ArrayList<>();
+        final DependencyFileParser dependencyFileParser = new DependencyFileParser(dependencyFilePaths::add);
+        for (final String line : depsMkLines) {
+            dependencyFileParser.feedLine(line);
+        }
+        dependencyFileParser.finish();
+        return dependencyFilePaths;
+    }
+}
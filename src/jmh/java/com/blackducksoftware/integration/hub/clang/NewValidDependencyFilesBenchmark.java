@@ -0,0 +1,87 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.blackducksoftware.integration.hub.clang.metrics.ExtractorMetrics;
+
+// Turns the dependency file paths of many compiles into DependencyFiles: existence checks and canonicalization against the
+// source dir. Paths come in the mix the compiler reports them: relative to the build dir, with "..", repeated, and missing.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NewValidDependencyFilesBenchmark {
+    private static final int SOURCE_HEADER_COUNT = 500;
+    private static final int SYSTEM_HEADER_COUNT = 500;
+
+    @Param({ "10000", "100000" })
+    private int dependencyFilePathCount;
+
+    private File rootDir;
+    private File sourceDir;
+    private List<String> dependencyFilePaths;
+    private ExtractorMetrics metrics;
+
+    @Setup
+    public void createHeaderTree() throws IOException {
+        rootDir = File.createTempFile("headers", "");
+        rootDir.delete();
+        sourceDir = new File(rootDir, "src");
+        final File systemIncludeDir = new File(rootDir, "usr/include");
+        for (int i = 0; i < SOURCE_HEADER_COUNT; i++) {
+            FileUtils.writeStringToFile(new File(sourceDir, String.format("module_%d/header_%d.h", i % 20, i)), "", StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < SYSTEM_HEADER_COUNT; i++) {
+            FileUtils.writeStringToFile(new File(systemIncludeDir, String.format("lib_%d/header_%d.h", i % 20, i)), "", StandardCharsets.UTF_8);
+        }
+        dependencyFilePaths = new ArrayList<>(dependencyFilePathCount);
+        for (int i = 0; i < dependencyFilePathCount; i++) {
+            switch (i % 4) {
+            case 0:
+                dependencyFilePaths.add(String.format("%s/module_%d/../module_%d/header_%d.h", sourceDir.getAbsolutePath(), i % 20, i % SOURCE_HEADER_COUNT % 20, i % SOURCE_HEADER_COUNT));
+                break;
+            case 1:
+                dependencyFilePaths.add(new File(systemIncludeDir, String.format("lib_%d/header_%d.h", i % SYSTEM_HEADER_COUNT % 20, i % SYSTEM_HEADER_COUNT)).getAbsolutePath());
+                break;
+            case 2:
+                dependencyFilePaths.add(new File(sourceDir, String.format("module_%d/header_%d.h", i % SOURCE_HEADER_COUNT % 20, i % SOURCE_HEADER_COUNT)).getAbsolutePath());
+                break;
+            default:
+                dependencyFilePaths.add(new File(systemIncludeDir, String.format("missing/header_%d.h", i)).getAbsolutePath());
+                break;
+            }
+        }
+        metrics = new ExtractorMetrics();
+        metrics.init();
+    }
+
+    @TearDown
+    public void deleteHeaderTree() {
+        FileUtils.deleteQuietly(rootDir);
+    }
+
+    // A new extractor each time, since it remembers the files it has already seen
+    @Benchmark
+    public Set<DependencyFile> getNewValidDependencyFiles() {
+        final ClangExtractor clangExtractor = new ClangExtractor();
+        ReflectionTestUtils.setField(clangExtractor, "metrics", metrics);
+        return ReflectionTestUtils.invokeMethod(clangExtractor, "getNewValidDependencyFiles", sourceDir, dependencyFilePaths);
+    }
+}
@@ -0,0 +1,47 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Adds the owners of every dependency file to a HashSet, as the extractor does; most are repeats of a few hundred packages,
+// and the repeats are equal but distinct objects, as they are when parsed from separate package manager queries
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PackageDetailsBenchmark {
+    private static final int DISTINCT_PACKAGE_COUNT = 400;
+
+    @Param({ "10000", "1000000" })
+    private int ownerCount;
+
+    private List<PackageDetails> owners;
+
+    @Setup
+    public void createOwners() {
+        owners = new ArrayList<>(ownerCount);
+        for (int i = 0; i < ownerCount; i++) {
+            final int packageNumber = i % DISTINCT_PACKAGE_COUNT;
+            owners.add(new PackageDetails(Optional.of(new String("libpackage" + packageNumber + "-dev")), Optional.of(new String("2.27-3ubuntu" + packageNumber)), Optional.of(new String("amd64"))));
+        }
+    }
+
+    @Benchmark
+    public Set<PackageDetails> addToHashSet() {
+        final Set<PackageDetails> packages = new HashSet<>();
+        packages.addAll(owners);
+        return packages;
+    }
+}
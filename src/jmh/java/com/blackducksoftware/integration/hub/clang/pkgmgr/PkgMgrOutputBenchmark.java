@@ -0,0 +1,130 @@
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+
+// Batch ownership queries of each package manager against canned output, so what is measured is building the commands and
+// parsing what they print. Every tenth file is owned by no package.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PkgMgrOutputBenchmark {
+    private static final int DISTINCT_PACKAGE_COUNT = 200;
+
+    @Param({ "100", "5000" })
+    private int dependencyFileCount;
+
+    private List<DependencyFile> dependencyFiles;
+    private Executor dpkgExecutor;
+    private Executor rpmExecutor;
+    private Executor apkExecutor;
+
+    @Setup
+    public void createQueryOutput() {
+        dependencyFiles = new ArrayList<>(dependencyFileCount);
+        final Map<String, String> dpkgLineByPath = new HashMap<>();
+        final Map<String, String> rpmLineByPath = new HashMap<>();
+        final Map<String, String> apkLineByPath = new HashMap<>();
+        for (int i = 0; i < dependencyFileCount; i++) {
+            final int packageNumber = i % DISTINCT_PACKAGE_COUNT;
+            final String path = String.format("/usr/include/lib%d/header_%d.h", packageNumber, i);
+            dependencyFiles.add(new DependencyFile(false, new File(path)));
+            if (i % 10 == 9) {
+                rpmLineByPath.put(path, String.format("file %s is not owned by any package", path));
+                continue;
+            }
+            dpkgLineByPath.put(path, String.format("libpackage%d-dev:amd64: %s", packageNumber, path));
+            rpmLineByPath.put(path, String.format("libpackage%d-devel-1.2.%d-18.el7.x86_64", packageNumber, packageNumber));
+            apkLineByPath.put(path, String.format("%s is owned by libpackage%d-dev-1.2.%d-r2", path, packageNumber, packageNumber));
+        }
+        final List<String> dpkgStatusLines = new ArrayList<>();
+        for (int packageNumber = 0; packageNumber < DISTINCT_PACKAGE_COUNT; packageNumber++) {
+            dpkgStatusLines.add(String.format("Package: libpackage%d-dev", packageNumber));
+            dpkgStatusLines.add("Status: install ok installed");
+            dpkgStatusLines.add("Architecture: amd64");
+            dpkgStatusLines.add(String.format("Version: 1.2.%d-0ubuntu2", packageNumber));
+            dpkgStatusLines.add(String.format("Description: package %d", packageNumber));
+            dpkgStatusLines.add(" headers for package");
+            dpkgStatusLines.add("");
+        }
+        dpkgExecutor = new QueryOutputExecutor("dpkg -S", dpkgLineByPath, Collections.singletonMap("dpkg -s", dpkgStatusLines));
+        rpmExecutor = new QueryOutputExecutor("rpm -qf", rpmLineByPath, Collections.emptyMap());
+        apkExecutor = new QueryOutputExecutor("apk info --who-owns", apkLineByPath, Collections.singletonMap("apk info --print-arch", Collections.singletonList("x86_64")));
+    }
+
+    // New package manager instances each time, since they remember the packages they have already seen
+    @Benchmark
+    public Map<DependencyFile, List<PackageDetails>> dpkg() {
+        return new Dpkg().getDependencyDetails(dpkgExecutor, new HashSet<>(), dependencyFiles);
+    }
+
+    @Benchmark
+    public Map<DependencyFile, List<PackageDetails>> rpm() {
+        return new Rpm().getDependencyDetails(rpmExecutor, new HashSet<>(), dependencyFiles);
+    }
+
+    @Benchmark
+    public Map<DependencyFile, List<PackageDetails>> apk() {
+        return new Apk().getDependencyDetails(apkExecutor, new HashSet<>(), dependencyFiles);
+    }
+
+    // Answers path queries with the line for each path in the command, in order, and other commands with fixed output
+    private static class QueryOutputExecutor implements Executor {
+        private final String pathQueryPrefix;
+        private final Map<String, String> outputLineByPath;
+        private final Map<String, List<String>> outputLinesByCommandPrefix;
+
+        public QueryOutputExecutor(final String pathQueryPrefix, final Map<String, String> outputLineByPath, final Map<String, List<String>> outputLinesByCommandPrefix) {
+            this.pathQueryPrefix = pathQueryPrefix;
+            this.outputLineByPath = outputLineByPath;
+            this.outputLinesByCommandPrefix = new LinkedHashMap<>(outputLinesByCommandPrefix);
+        }
+
+        @Override
+        public String execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd) {
+            final StringBuilder output = new StringBuilder();
+            execute(workingDir, environmentVariables, cmd, line -> output.append(line).append('\n'));
+            return output.toString();
+        }
+
+        @Override
+        public void execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final Consumer<String> standardOutputLineConsumer) {
+            if (cmd.startsWith(pathQueryPrefix)) {
+                for (final String path : cmd.substring(pathQueryPrefix.length()).trim().split(" ")) {
+                    final String outputLine = outputLineByPath.get(path);
+                    if (outputLine != null) {
+                        standardOutputLineConsumer.accept(outputLine);
+                    }
+                }
+                return;
+            }
+            for (final Map.Entry<String, List<String>> outputLines : outputLinesByCommandPrefix.entrySet()) {
+                if (cmd.startsWith(outputLines.getKey())) {
+                    outputLines.getValue().forEach(standardOutputLineConsumer);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.blackducksoftware.integration.hub.clang.scale;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import com.blackducksoftware.integration.hub.bdio.model.SimpleBdioDocument;
+import com.blackducksoftware.integration.hub.clang.ClangExtractor;
+import com.google.gson.GsonBuilder;
+
+// Runs ClangExtractor.extract end to end on SyntheticBuilds of increasing size and reports translation units per second, peak heap
+// and the number of commands (processes) run. Options are --name=value arguments: the scale.* ones below, and any of the
+// extractor's own (e.g. --compile.threads=8), which are passed to it unchanged.
+public class ScaleBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(ScaleBenchmark.class);
+
+    // The extractor's components without Application, which would start an extraction of its own
+    @Configuration
+    @ComponentScan(basePackages = { "com.blackducksoftware.integration.hub.clang" }, excludeFilters = @ComponentScan.Filter(type = FilterType.ANNOTATION, classes = Configuration.class))
+    public static class ExtractorConfig {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        final List<Integer> translationUnitCounts = new ArrayList<>();
+        for (final String translationUnitCount : getOption(options, "scale.translation.units", "1000,10000,100000").split(",")) {
+            translationUnitCounts.add(Integer.valueOf(translationUnitCount.trim()));
+        }
+        final File workDir = new File(getOption(options, "scale.work.dir", new File(System.getProperty("java.io.tmpdir"), "clang-extractor-scale").getAbsolutePath()));
+        final File reportFile = new File(getOption(options, "scale.report.file", "scale-report.json"));
+
+        final List<Map<String, Object>> results = new ArrayList<>(translationUnitCounts.size());
+        for (final int translationUnitCount : translationUnitCounts) {
+            final SyntheticBuild build = new SyntheticBuild(new File(workDir, String.format("tus-%d", translationUnitCount)), translationUnitCount,
+                    Integer.parseInt(getOption(options, "scale.project.headers.per.tu", "20")),
+                    Integer.parseInt(getOption(options, "scale.system.headers", "5000")),
+                    Integer.parseInt(getOption(options, "scale.system.headers.per.tu", "60")),
+                    Integer.parseInt(getOption(options, "scale.packages", "150")),
+                    Double.parseDouble(getOption(options, "scale.owned.fraction", "0.95")),
+                    Long.parseLong(getOption(options, "scale.seed", "42")));
+            final ScriptedExecutor executor = new ScriptedExecutor(build,
+                    Long.parseLong(getOption(options, "scale.compile.latency.micros", "0")),
+                    Long.parseLong(getOption(options, "scale.package.query.latency.micros", "0")));
+            try {
+                FileUtils.deleteQuietly(build.getRootDir());
+                build.create();
+                results.add(run(args, build, executor));
+            } finally {
+                if (!Boolean.parseBoolean(getOption(options, "scale.keep.files", "false"))) {
+                    FileUtils.deleteQuietly(build.getRootDir());
+                }
+            }
+        }
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", toMap(options));
+        report.put("results", results);
+        FileUtils.writeStringToFile(reportFile, new GsonBuilder().setPrettyPrinting().create().toJson(report), StandardCharsets.UTF_8);
+        logger.info(String.format("Wrote %s", reportFile.getAbsolutePath()));
+    }
+
+    private static Map<String, Object> run(final String[] args, final SyntheticBuild build, final ScriptedExecutor executor) throws Exception {
+        final File workingDir = new File(build.getRootDir(), "work");
+        workingDir.mkdirs();
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.getEnvironment().getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+            context.register(ExtractorConfig.class);
+            context.refresh();
+            final ClangExtractor clangExtractor = context.getBean(ClangExtractor.class);
+
+            final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream().filter(pool -> pool.getType() == MemoryType.HEAP).collect(Collectors.toList());
+            System.gc();
+            heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+            final Set<File> filesForIScan = new HashSet<>();
+            final long startNanos = System.nanoTime();
+            final SimpleBdioDocument bdioDocument = clangExtractor.extract(build.getSourceDir(), executor, build.getCompileCommandsJsonFile().getAbsolutePath(), workingDir.getAbsolutePath(),
+                    "scale", "scale", "1.0", filesForIScan);
+            final double seconds = (System.nanoTime() - startNanos) / 1e9;
+            // Each pool's own peak, so an upper bound on the heap in use at any one time
+            long peakHeapBytes = 0L;
+            for (final MemoryPoolMXBean heapPool : heapPools) {
+                peakHeapBytes += heapPool.getPeakUsage().getUsed();
+            }
+
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("translationUnits", build.getTranslationUnitCount());
+            result.put("seconds", seconds);
+            result.put("translationUnitsPerSecond", build.getTranslationUnitCount() / seconds);
+            result.put("peakHeapBytes", peakHeapBytes);
+            result.put("commands", executor.getCommandCount());
+            result.put("compileCommands", executor.getCompileCount());
+            result.put("packageQueryCommands", executor.getPackageQueryCount());
+            result.put("otherCommands", executor.getOtherCommandCount());
+            result.put("components", bdioDocument.components.size());
+            result.put("filesForIScan", filesForIScan.size());
+            logger.info(String.format("%d translation units in %.2f s (%.1f/s), peak heap %d MB, %d commands (%d compiles, %d package queries), %d components, %d files for iScan",
+                    build.getTranslationUnitCount(), seconds, build.getTranslationUnitCount() / seconds, peakHeapBytes / (1024 * 1024), executor.getCommandCount(), executor.getCompileCount(),
+                    executor.getPackageQueryCount(), bdioDocument.components.size(), filesForIScan.size()));
+            return result;
+        }
+    }
+
+    private static String getOption(final SimpleCommandLinePropertySource options, final String name, final String defaultValue) {
+        final String value = options.getProperty(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static Map<String, Object> toMap(final SimpleCommandLinePropertySource options) {
+        final Map<String, Object> optionMap = new LinkedHashMap<>();
+        for (final String name : options.getPropertyNames()) {
+            optionMap.put(name, options.getProperty(name));
+        }
+        return optionMap;
+    }
+}
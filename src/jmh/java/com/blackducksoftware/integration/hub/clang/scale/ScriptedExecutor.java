@@ -0,0 +1,143 @@
+package com.blackducksoftware.integration.hub.clang.scale;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.apache.commons.io.FileUtils;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+
+// Stands in for the compiler and dpkg of a SyntheticBuild, in the spirit of the tests' MockExecutor, taking a fixed time per
+// command. Each execute() is counted, since with the default executor each one is a process started.
+public class ScriptedExecutor implements Executor {
+    private static final String DEPENDENCY_OUTPUT_TO_STDOUT_SUFFIX = " -M -MF -";
+    private static final String DEPENDENCY_OUTPUT_FILE_OPTION = " -M -MF ";
+    private static final String COMPILE_SOURCE_OPTION = " -c ";
+    private static final String QUERY_OWNERS_COMMAND_PREFIX = "dpkg -S ";
+    private static final String QUERY_PACKAGES_COMMAND_PREFIX = "dpkg -s ";
+
+    private final SyntheticBuild build;
+    private final long compileLatencyMicros;
+    private final long packageQueryLatencyMicros;
+    private final LongAdder compileCount = new LongAdder();
+    private final LongAdder packageQueryCount = new LongAdder();
+    private final LongAdder otherCommandCount = new LongAdder();
+
+    public ScriptedExecutor(final SyntheticBuild build, final long compileLatencyMicros, final long packageQueryLatencyMicros) {
+        this.build = build;
+        this.compileLatencyMicros = compileLatencyMicros;
+        this.packageQueryLatencyMicros = packageQueryLatencyMicros;
+    }
+
+    @Override
+    public String execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd) throws IntegrationException {
+        final StringBuilder output = new StringBuilder();
+        execute(workingDir, environmentVariables, cmd, line -> output.append(line).append('\n'));
+        return output.toString();
+    }
+
+    @Override
+    public void execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final Consumer<String> standardOutputLineConsumer) throws IntegrationException {
+        if (cmd.endsWith(DEPENDENCY_OUTPUT_TO_STDOUT_SUFFIX)) {
+            compile(cmd, standardOutputLineConsumer);
+        } else if (cmd.contains(DEPENDENCY_OUTPUT_FILE_OPTION)) {
+            final StringBuilder depsMk = new StringBuilder();
+            compile(cmd, line -> depsMk.append(line).append('\n'));
+            final File depsMkFile = new File(cmd.substring(cmd.lastIndexOf(DEPENDENCY_OUTPUT_FILE_OPTION) + DEPENDENCY_OUTPUT_FILE_OPTION.length()).trim());
+            try {
+                FileUtils.writeStringToFile(depsMkFile, depsMk.toString(), StandardCharsets.UTF_8);
+            } catch (final IOException e) {
+                throw new IntegrationException(String.format("Error writing %s: %s", depsMkFile.getAbsolutePath(), e.getMessage()));
+            }
+        } else if (cmd.startsWith(QUERY_OWNERS_COMMAND_PREFIX)) {
+            queryOwners(cmd, standardOutputLineConsumer);
+        } else if (cmd.startsWith(QUERY_PACKAGES_COMMAND_PREFIX)) {
+            queryPackages(cmd, standardOutputLineConsumer);
+        } else {
+            otherCommandCount.increment();
+            if ("dpkg --version".equals(cmd)) {
+                standardOutputLineConsumer.accept("Debian 'dpkg' package management program version 1.19.0.5 (amd64).");
+            }
+        }
+    }
+
+    public long getCompileCount() {
+        return compileCount.sum();
+    }
+
+    public long getPackageQueryCount() {
+        return packageQueryCount.sum();
+    }
+
+    public long getOtherCommandCount() {
+        return otherCommandCount.sum();
+    }
+
+    public long getCommandCount() {
+        return getCompileCount() + getPackageQueryCount() + getOtherCommandCount();
+    }
+
+    private void compile(final String cmd, final Consumer<String> depsMkLineConsumer) throws IntegrationException {
+        compileCount.increment();
+        pause(compileLatencyMicros);
+        final int sourceStart = cmd.indexOf(COMPILE_SOURCE_OPTION) + COMPILE_SOURCE_OPTION.length();
+        final int sourceEnd = cmd.indexOf(' ', sourceStart);
+        final String translationUnitPath = cmd.substring(sourceStart, sourceEnd < 0 ? cmd.length() : sourceEnd);
+        final String objectFileName = new File(translationUnitPath).getName().replace(".c", ".o");
+        depsMkLineConsumer.accept(String.format("%s: \\", objectFileName));
+        for (final String dependencyPath : build.getDependencyPaths(translationUnitPath)) {
+            depsMkLineConsumer.accept(String.format("  %s \\", dependencyPath));
+        }
+        depsMkLineConsumer.accept("");
+    }
+
+    // Like dpkg -S: prints the owner of each owned path, then fails if any path was not owned
+    private void queryOwners(final String cmd, final Consumer<String> standardOutputLineConsumer) throws IntegrationException {
+        packageQueryCount.increment();
+        pause(packageQueryLatencyMicros);
+        boolean allOwned = true;
+        for (final String path : cmd.substring(QUERY_OWNERS_COMMAND_PREFIX.length()).split(" ")) {
+            final Optional<String> owningPackageName = build.getOwningPackageName(path);
+            if (owningPackageName.isPresent()) {
+                standardOutputLineConsumer.accept(String.format("%s:amd64: %s", owningPackageName.get(), path));
+            } else {
+                allOwned = false;
+            }
+        }
+        if (!allOwned) {
+            throw new IntegrationException(String.format("Command %s failed", cmd));
+        }
+    }
+
+    private void queryPackages(final String cmd, final Consumer<String> standardOutputLineConsumer) throws IntegrationException {
+        packageQueryCount.increment();
+        pause(packageQueryLatencyMicros);
+        for (final String packageName : cmd.substring(QUERY_PACKAGES_COMMAND_PREFIX.length()).split(" ")) {
+            final String packageNameWithoutArch = packageName.split(":")[0];
+            standardOutputLineConsumer.accept(String.format("Package: %s", packageNameWithoutArch));
+            standardOutputLineConsumer.accept("Status: install ok installed");
+            standardOutputLineConsumer.accept("Architecture: amd64");
+            standardOutputLineConsumer.accept(String.format("Version: %d.0-1", Math.abs(packageNameWithoutArch.hashCode() % 10)));
+            standardOutputLineConsumer.accept("");
+        }
+    }
+
+    private void pause(final long micros) throws IntegrationException {
+        if (micros <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MICROSECONDS.sleep(micros);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IntegrationException("Interrupted");
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.blackducksoftware.integration.hub.clang.scale;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import com.google.gson.stream.JsonWriter;
+
+// A build tree that exists only as far as the extractor looks: empty translation units and headers on disk, a compile_commands.json
+// for them, and a fixed, seeded answer to which headers each translation unit includes and which package owns each system header.
+// Header popularity follows a Zipf distribution, so a few headers (stdio.h, the project's config.h) are included almost everywhere.
+public class SyntheticBuild {
+    private static final String HEADER_FILE_PREFIX = "header_";
+    private static final String HEADER_FILE_SUFFIX = ".h";
+    private static final int TRANSLATION_UNITS_PER_MODULE = 1000;
+    private static final int PROJECT_HEADERS_PER_MODULE = 50;
+    private static final int SYSTEM_HEADERS_PER_LIB = 20;
+
+    private final File rootDir;
+    private final File sourceDir;
+    private final File systemIncludeDir;
+    private final String systemIncludePathPrefix;
+    private final int translationUnitCount;
+    private final int projectHeaderCount;
+    private final int systemHeaderCount;
+    private final int projectHeadersPerTranslationUnit;
+    private final int systemHeadersPerTranslationUnit;
+    private final long seed;
+    private final ZipfSampler projectHeaderSampler;
+    private final ZipfSampler systemHeaderSampler;
+    private final int[] packageNumberByLib;
+    private final boolean[] ownedSystemHeaders;
+
+    public SyntheticBuild(final File rootDir, final int translationUnitCount, final int projectHeadersPerTranslationUnit, final int systemHeaderCount, final int systemHeadersPerTranslationUnit,
+            final int packageCount, final double ownedFraction, final long seed) {
+        this.rootDir = rootDir;
+        this.sourceDir = new File(rootDir, "src");
+        this.systemIncludeDir = new File(rootDir, "usr/include");
+        this.systemIncludePathPrefix = systemIncludeDir.getAbsolutePath() + File.separator;
+        this.translationUnitCount = translationUnitCount;
+        this.projectHeaderCount = Math.max(projectHeadersPerTranslationUnit * 5, translationUnitCount / 10);
+        this.systemHeaderCount = systemHeaderCount;
+        this.projectHeadersPerTranslationUnit = projectHeadersPerTranslationUnit;
+        this.systemHeadersPerTranslationUnit = systemHeadersPerTranslationUnit;
+        this.seed = seed;
+        this.projectHeaderSampler = new ZipfSampler(projectHeaderCount);
+        this.systemHeaderSampler = new ZipfSampler(systemHeaderCount);
+        final Random random = new Random(seed);
+        final ZipfSampler packageSampler = new ZipfSampler(packageCount);
+        packageNumberByLib = new int[(systemHeaderCount + SYSTEM_HEADERS_PER_LIB - 1) / SYSTEM_HEADERS_PER_LIB];
+        for (int lib = 0; lib < packageNumberByLib.length; lib++) {
+            packageNumberByLib[lib] = packageSampler.sample(random);
+        }
+        ownedSystemHeaders = new boolean[systemHeaderCount];
+        for (int header = 0; header < systemHeaderCount; header++) {
+            ownedSystemHeaders[header] = random.nextDouble() < ownedFraction;
+        }
+    }
+
+    public void create() throws IOException {
+        for (int header = 0; header < projectHeaderCount; header++) {
+            createEmptyFile(getProjectHeader(header));
+        }
+        for (int header = 0; header < systemHeaderCount; header++) {
+            createEmptyFile(getSystemHeader(header));
+        }
+        final File projectIncludeDir = new File(sourceDir, "include");
+        try (Writer writer = Files.newBufferedWriter(getCompileCommandsJsonFile().toPath(), StandardCharsets.UTF_8); JsonWriter jsonWriter = new JsonWriter(writer)) {
+            jsonWriter.beginArray();
+            for (int translationUnit = 0; translationUnit < translationUnitCount; translationUnit++) {
+                final File translationUnitFile = getTranslationUnit(translationUnit);
+                createEmptyFile(translationUnitFile);
+                jsonWriter.beginObject();
+                jsonWriter.name("directory").value(sourceDir.getAbsolutePath());
+                jsonWriter.name("command").value(String.format("cc -DNDEBUG -I%s -O2 -o tu_%d.o -c %s", projectIncludeDir.getAbsolutePath(), translationUnit, translationUnitFile.getAbsolutePath()));
+                jsonWriter.name("file").value(translationUnitFile.getAbsolutePath());
+                jsonWriter.endObject();
+            }
+            jsonWriter.endArray();
+        }
+    }
+
+    public File getRootDir() {
+        return rootDir;
+    }
+
+    public File getSourceDir() {
+        return sourceDir;
+    }
+
+    public File getCompileCommandsJsonFile() {
+        return new File(rootDir, "compile_commands.json");
+    }
+
+    public int getTranslationUnitCount() {
+        return translationUnitCount;
+    }
+
+    // The translation unit itself, then the headers it includes, as the compiler lists them in deps.mk
+    public List<String> getDependencyPaths(final String translationUnitPath) {
+        final int translationUnit = parseNumber(translationUnitPath, "tu_", ".c");
+        final Random random = new Random(seed + translationUnit);
+        final Set<Integer> projectHeaders = sampleDistinct(projectHeaderSampler, projectHeadersPerTranslationUnit, random);
+        final Set<Integer> systemHeaders = sampleDistinct(systemHeaderSampler, systemHeadersPerTranslationUnit, random);
+        final List<String> dependencyPaths = new ArrayList<>(1 + projectHeaders.size() + systemHeaders.size());
+        dependencyPaths.add(translationUnitPath);
+        for (final int header : projectHeaders) {
+            dependencyPaths.add(getProjectHeader(header).getAbsolutePath());
+        }
+        for (final int header : systemHeaders) {
+            dependencyPaths.add(getSystemHeader(header).getAbsolutePath());
+        }
+        return dependencyPaths;
+    }
+
+    // Only system headers are owned by packages, and not all of them
+    public Optional<String> getOwningPackageName(final String path) {
+        if (!path.startsWith(systemIncludePathPrefix)) {
+            return Optional.empty();
+        }
+        final int header = parseNumber(path, HEADER_FILE_PREFIX, HEADER_FILE_SUFFIX);
+        if (header < 0 || header >= systemHeaderCount || !ownedSystemHeaders[header]) {
+            return Optional.empty();
+        }
+        return Optional.of(String.format("libsynthetic%d-dev", packageNumberByLib[header / SYSTEM_HEADERS_PER_LIB]));
+    }
+
+    private File getTranslationUnit(final int translationUnit) {
+        return new File(sourceDir, String.format("module_%d/tu_%d.c", translationUnit / TRANSLATION_UNITS_PER_MODULE, translationUnit));
+    }
+
+    private File getProjectHeader(final int header) {
+        return new File(sourceDir, String.format("include/module_%d/%s%d%s", header / PROJECT_HEADERS_PER_MODULE, HEADER_FILE_PREFIX, header, HEADER_FILE_SUFFIX));
+    }
+
+    private File getSystemHeader(final int header) {
+        return new File(systemIncludeDir, String.format("lib_%d/%s%d%s", header / SYSTEM_HEADERS_PER_LIB, HEADER_FILE_PREFIX, header, HEADER_FILE_SUFFIX));
+    }
+
+    private Set<Integer> sampleDistinct(final ZipfSampler sampler, final int count, final Random random) {
+        final Set<Integer> samples = new LinkedHashSet<>(count * 2);
+        // The popular values repeat, so give up after a few tries each rather than insist on exactly count
+        for (int attempt = 0; attempt < count * 4 && samples.size() < count; attempt++) {
+            samples.add(sampler.sample(random));
+        }
+        return samples;
+    }
+
+    private int parseNumber(final String path, final String prefix, final String suffix) {
+        final int start = path.lastIndexOf(prefix);
+        final int end = path.lastIndexOf(suffix);
+        if (start < 0 || end < start + prefix.length()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(path.substring(start + prefix.length(), end));
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void createEmptyFile(final File file) throws IOException {
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+    }
+
+    // Draws 0..n-1 with the probability of k proportional to 1 / (k + 1)
+    private static class ZipfSampler {
+        private final double[] cumulativeWeights;
+
+        public ZipfSampler(final int n) {
+            cumulativeWeights = new double[n];
+            double total = 0.0;
+            for (int k = 0; k < n; k++) {
+                total += 1.0 / (k + 1);
+                cumulativeWeights[k] = total;
+            }
+        }
+
+        public int sample(final Random random) {
+            final double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+            final int index = Arrays.binarySearch(cumulativeWeights, target);
+            return Math.min(index >= 0 ? index : -index - 1, cumulativeWeights.length - 1);
+        }
+    }
+}
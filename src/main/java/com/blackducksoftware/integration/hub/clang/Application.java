@@ -33,6 +33,7 @@ import java.util.Set;
 import javax.annotation.PostConstruct;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,7 +45,11 @@ import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.bdio.BdioWriter;
 import com.blackducksoftware.integration.hub.bdio.SimpleBdioFactory;
 import com.blackducksoftware.integration.hub.bdio.model.SimpleBdioDocument;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+import com.blackducksoftware.integration.hub.clang.execute.ShellCoprocessExecutor;
 import com.blackducksoftware.integration.hub.clang.execute.SimpleExecutor;
+import com.blackducksoftware.integration.hub.clang.metrics.ExtractorMetrics;
+import com.blackducksoftware.integration.hub.clang.metrics.RunTracer;
 import com.google.gson.Gson;
 
 @SpringBootApplication
@@ -54,6 +59,12 @@ public class Application {
     @Autowired
     private ClangExtractor clangExtractor;
 
+    @Autowired
+    private ExtractorMetrics metrics;
+
+    @Autowired
+    private RunTracer tracer;
+
     @Value("${source.dir:.}")
     private String sourceDirPath;
 
@@ -75,22 +86,48 @@ public class Application {
     @Value("${hub.project.version:default}")
     private String projectVersion;
 
+    @Value("${shell.coprocess.count:0}")
+    private int shellCoprocessCount;
+
+    @Value("${discard.command.stderr:false}")
+    private boolean discardCommandStderr;
+
+    @Value("${command.timeout.seconds:0}")
+    private long commandTimeoutSeconds;
+
+    @Value("${run.summary.enabled:true}")
+    private boolean runSummaryEnabled;
+
     public static void main(final String[] args) {
         new SpringApplicationBuilder(Application.class).logStartupInfo(false).run(args);
     }
 
     @PostConstruct
     public void run() {
-        try {
+        try (ShellCoprocessExecutor shellCoprocessExecutor = shellCoprocessCount > 0 ? new ShellCoprocessExecutor(shellCoprocessCount, discardCommandStderr, commandTimeoutSeconds * 1000L) : null) {
             prepareWorkingDir();
+            final Executor executor = shellCoprocessExecutor == null ? new SimpleExecutor(discardCommandStderr, commandTimeoutSeconds * 1000L) : shellCoprocessExecutor;
+            // Don't leave compilers running if the extractor is interrupted
+            Runtime.getRuntime().addShutdownHook(new Thread(executor::cancelAll, "Command Cancellation Thread"));
             final Set<File> filesForIScan = new HashSet<>(64);
-            final SimpleBdioDocument bdioDocument = clangExtractor.extract(getSourceDir(), new SimpleExecutor(), compileCommandsJsonFilePath, workingDirPath, codeLocationName, projectName, projectVersion,
+            final SimpleBdioDocument bdioDocument = clangExtractor.extract(getSourceDir(), executor, compileCommandsJsonFilePath, workingDirPath, codeLocationName, projectName, projectVersion,
                     filesForIScan);
             logger.info(String.format("Generated BDIO document BOM spdxName: %s", bdioDocument.billOfMaterials.spdxName));
             logger.info(String.format("Found %d files that should be scanned by iScan", filesForIScan.size()));
-            writeBdioToFile(bdioDocument, new File(outputBomFilePath));
+            final long bdioWriteStartNanos = System.nanoTime();
+            try (RunTracer.Span span = tracer.startSpan("bdio", "write BDIO", "file", outputBomFilePath)) {
+                writeBdioToFile(bdioDocument, new File(outputBomFilePath));
+            }
+            metrics.recordBdioWrite(System.nanoTime() - bdioWriteStartNanos);
+            if (runSummaryEnabled) {
+                final File runSummaryFile = new File(String.format("%s-run-summary.json", FilenameUtils.removeExtension(outputBomFilePath)));
+                metrics.writeRunSummary(runSummaryFile);
+                logger.info(String.format("Wrote run summary to %s", runSummaryFile.getAbsolutePath()));
+            }
         } catch (final Exception e) {
             logger.error(String.format("Error: %s", e.getMessage()), e);
+        } finally {
+            tracer.close();
         }
     }
 
@@ -0,0 +1,105 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Finds the dependency (.d) file a compile command wrote when the project was built with -MD, so it can be used instead of recompiling
+public class BuildDependencyFileLocator {
+    private static final String WRITE_DEPS_AS_SIDE_EFFECT_OPTION = "-MD";
+    private static final String DEPS_FILE_OPTION = "-MF";
+    private static final String OUTPUT_FILE_OPTION = "-o";
+    private static final String DEPS_FILE_EXTENSION = ".d";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public Optional<File> find(final CompileCommand compileCommand) {
+        final List<String> commandParts = compileCommand.getArguments();
+        // -MMD leaves system headers out of the .d file, and those are the ones package managers own, so only -MD output is usable
+        if (!commandParts.contains(WRITE_DEPS_AS_SIDE_EFFECT_OPTION)) {
+            logger.trace(String.format("Compile command for %s was not run with %s", compileCommand.getFile(), WRITE_DEPS_AS_SIDE_EFFECT_OPTION));
+            return Optional.empty();
+        }
+        final File sourceFile = resolve(compileCommand.getDirectory(), compileCommand.getFile());
+        for (final File candidate : getCandidates(compileCommand.getDirectory(), commandParts)) {
+            if (!candidate.isFile()) {
+                continue;
+            }
+            if (candidate.lastModified() < sourceFile.lastModified()) {
+                logger.debug(String.format("Build dependency file %s is older than %s; ignoring it", candidate.getAbsolutePath(), sourceFile.getAbsolutePath()));
+                return Optional.empty();
+            }
+            logger.debug(String.format("Using build dependency file %s for %s", candidate.getAbsolutePath(), compileCommand.getFile()));
+            return Optional.of(candidate);
+        }
+        logger.debug(String.format("No build dependency file found for %s", compileCommand.getFile()));
+        return Optional.empty();
+    }
+
+    private List<File> getCandidates(final String directory, final List<String> commandParts) {
+        final List<File> candidates = new ArrayList<>(3);
+        final Optional<String> depsFilePath = getOptionValue(commandParts, DEPS_FILE_OPTION);
+        if (depsFilePath.isPresent()) {
+            candidates.add(resolve(directory, depsFilePath.get()));
+            return candidates;
+        }
+        final Optional<String> outputFilePath = getOptionValue(commandParts, OUTPUT_FILE_OPTION);
+        if (outputFilePath.isPresent()) {
+            // gcc and clang name the file <object>.d by default (e.g. foo.o -> foo.d); some generators append .d to the full object name instead
+            final String objectFilePath = outputFilePath.get();
+            final int extensionIndex = objectFilePath.lastIndexOf('.');
+            if (extensionIndex > objectFilePath.lastIndexOf('/')) {
+                candidates.add(resolve(directory, objectFilePath.substring(0, extensionIndex) + DEPS_FILE_EXTENSION));
+            }
+            candidates.add(resolve(directory, objectFilePath + DEPS_FILE_EXTENSION));
+        }
+        return candidates;
+    }
+
+    private Optional<String> getOptionValue(final List<String> commandParts, final String option) {
+        for (int i = 0; i < commandParts.size(); i++) {
+            final String commandPart = commandParts.get(i);
+            if (option.equals(commandPart) && i + 1 < commandParts.size()) {
+                return Optional.of(commandParts.get(i + 1));
+            }
+            if (commandPart.startsWith(option) && commandPart.length() > option.length()) {
+                return Optional.of(commandPart.substring(option.length()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private File resolve(final String directory, final String path) {
+        final File file = new File(path);
+        if (file.isAbsolute() || directory == null) {
+            return file;
+        }
+        return new File(directory, path);
+    }
+}
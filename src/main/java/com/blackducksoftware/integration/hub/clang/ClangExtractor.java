@@ -25,19 +25,25 @@ package com.blackducksoftware.integration.hub.clang;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
@@ -47,41 +53,188 @@ import com.blackducksoftware.integration.hub.bdio.model.Forge;
 import com.blackducksoftware.integration.hub.bdio.model.SimpleBdioDocument;
 import com.blackducksoftware.integration.hub.bdio.model.dependency.Dependency;
 import com.blackducksoftware.integration.hub.bdio.model.externalid.ExternalId;
+import com.blackducksoftware.integration.hub.clang.depfinder.DependencyFinder;
+import com.blackducksoftware.integration.hub.clang.execute.AdaptiveConcurrencyLimiter;
+import com.blackducksoftware.integration.hub.clang.execute.AsyncExecutor;
+import com.blackducksoftware.integration.hub.clang.execute.AsyncExecutor.Weight;
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
 import com.blackducksoftware.integration.hub.clang.execute.Executor;
+import com.blackducksoftware.integration.hub.clang.execute.PooledAsyncExecutor;
 import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
+import com.blackducksoftware.integration.hub.clang.metrics.ExtractorMetrics;
+import com.blackducksoftware.integration.hub.clang.metrics.RunTracer;
+import com.blackducksoftware.integration.hub.clang.pkgmgr.PackageCache;
+import com.blackducksoftware.integration.hub.clang.pkgmgr.PackageOwnershipResolver;
 import com.blackducksoftware.integration.hub.clang.pkgmgr.PkgMgr;
-import com.google.gson.Gson;
 
 @Component
 public class ClangExtractor {
     private static final String COMPILE_CMD_PATTERN_WITH_DEPENDENCY_OUTPUT_FILE = "%s -M -MF %s";
+    private static final String COMPILE_CMD_PATTERN_WITH_DEPENDENCY_OUTPUT_TO_STDOUT = "%s -M -MF -";
     public static final String DEPS_MK_PATH = "deps.mk";
+    private static final String DEPS_MK_PATH_PATTERN = "deps-%d.mk";
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final Set<File> processedDependencyFiles = new HashSet<>(200);
     private final Set<PackageDetails> processedDependencies = new HashSet<>(40);
+    private final BuildDependencyFileLocator buildDependencyFileLocator = new BuildDependencyFileLocator();
 
     @Autowired
     private List<PkgMgr> pkgMgrs;
 
+    @Autowired
+    private List<DependencyFinder> dependencyFinders;
+
+    @Autowired
+    private ExtractorMetrics metrics;
+
+    @Autowired
+    private RunTracer tracer;
+
+    @Value("${dependency.finder:}")
+    private String dependencyFinderName;
+
+    @Value("${compile.threads:1}")
+    private int compileThreads;
+
+    @Value("${adaptive.concurrency.enabled:false}")
+    private boolean adaptiveConcurrencyEnabled;
+
+    @Value("${adaptive.concurrency.min.threads:1}")
+    private int adaptiveConcurrencyMinThreads;
+
+    @Value("${proc.dir:/proc}")
+    private String procDirPath;
+
+    @Value("${dependency.cache.file:}")
+    private String dependencyCacheFilePath;
+
+    @Value("${shared.dependency.cache.dir:}")
+    private String sharedDependencyCacheDirPath;
+
+    @Value("${shared.dependency.cache.max.mb:1024}")
+    private long sharedDependencyCacheMaxMb;
+
+    @Value("${reuse.build.dependency.files:false}")
+    private boolean reuseBuildDependencyFiles;
+
+    @Value("${dependency.output.stdout:false}")
+    private boolean dependencyOutputToStdout;
+
+    @Value("${pipeline.enabled:false}")
+    private boolean pipelineEnabled;
+
+    @Value("${package.query.threads:1}")
+    private int packageQueryThreads;
+
+    @Value("${package.cache.file:}")
+    private String packageCacheFilePath;
+
+    @Value("${ownership.memo.enabled:false}")
+    private boolean ownershipMemoEnabled;
+
+    @Value("${ownership.memo.confirmations:3}")
+    private int ownershipMemoConfirmations;
+
+    @Value("${ownership.memo.min.depth:3}")
+    private int ownershipMemoMinDepth;
+
+    @Value("${include.scanner.enabled:false}")
+    private boolean includeScannerEnabled;
+
+    @Value("${include.scanner.system.dirs:}")
+    private String includeScannerSystemDirs;
+
     public SimpleBdioDocument extract(final File sourceDir, final Executor executor, final String compileCommandsJsonFilePath, final String workingDirPath, final String codeLocationName, final String projectName,
             final String projectVersion, final Set<File> filesForIScan)
             throws IOException, ExecutableRunnerException, IntegrationException {
+        final Optional<AdaptiveConcurrencyLimiter> compileLimiter = adaptiveConcurrencyEnabled
+                ? Optional.of(new AdaptiveConcurrencyLimiter(new File(procDirPath), adaptiveConcurrencyMinThreads, compileThreads)) : Optional.empty();
+        try (PooledAsyncExecutor asyncExecutor = new PooledAsyncExecutor(executor, compileThreads, packageQueryThreads, compileLimiter)) {
+            return extract(sourceDir, executor, asyncExecutor, compileCommandsJsonFilePath, workingDirPath, codeLocationName, projectName, projectVersion, filesForIScan);
+        }
+    }
+
+    public SimpleBdioDocument extract(final File sourceDir, final Executor executor, final AsyncExecutor asyncExecutor, final String compileCommandsJsonFilePath, final String workingDirPath,
+            final String codeLocationName, final String projectName, final String projectVersion, final Set<File> filesForIScan)
+            throws IOException, ExecutableRunnerException, IntegrationException {
         logger.debug(String.format("extract() called; compileCommandsJsonFilePath: %s", compileCommandsJsonFilePath));
+        processedDependencyFiles.clear();
+        processedDependencies.clear();
         final PkgMgr pkgMgr = selectPkgMgr(executor);
         final File workingDir = new File(workingDirPath);
         final ExternalId projectExternalId = new SimpleBdioFactory().createNameVersionExternalId(pkgMgr.getDefaultForge(), projectName, projectVersion);
         final SimpleBdioDocument bdioDocument = new SimpleBdioFactory().createSimpleBdioDocument(codeLocationName, projectName, projectVersion, projectExternalId);
         final MutableDependencyGraph dependencyGraph = new SimpleBdioFactory().createMutableDependencyGraph();
-        final List<CompileCommand> compileCommands = parseCompileCommandsFile(compileCommandsJsonFilePath);
-        final Set<String> dependencyFilePaths = getDependencyFilePaths(sourceDir, executor, pkgMgr, workingDir, dependencyGraph, filesForIScan, compileCommands);
+        final Optional<Set<String>> foundDependencyFilePaths = findDependencyFilePaths(executor, new File(compileCommandsJsonFilePath), workingDir);
+        final Set<String> dependencyFilePaths;
+        if (foundDependencyFilePaths.isPresent()) {
+            dependencyFilePaths = foundDependencyFilePaths.get();
+        } else {
+            final Optional<SharedDependencyCache> sharedDependencyCache = StringUtils.isBlank(sharedDependencyCacheDirPath) ? Optional.empty()
+                    : Optional.of(new SharedDependencyCache(new File(sharedDependencyCacheDirPath), sharedDependencyCacheMaxMb * 1024L * 1024L));
+            final DependencyCache dependencyCache = new DependencyCache(dependencyCacheFilePath, sharedDependencyCache);
+            dependencyCache.load();
+            final Optional<IncludeScanner> includeScanner = includeScannerEnabled ? Optional.of(createIncludeScanner(executor)) : Optional.empty();
+            try (CompileCommandsParser compileCommandsParser = new CompileCommandsParser(new File(compileCommandsJsonFilePath))) {
+                if (pipelineEnabled) {
+                    extractInPipeline(sourceDir, executor, asyncExecutor, pkgMgr, workingDir, dependencyGraph, filesForIScan, dependencyCache, includeScanner, compileCommandsParser);
+                    saveDependencyCache(dependencyCache, sharedDependencyCache);
+                    return finishBdioDocument(bdioDocument, projectExternalId, dependencyGraph, filesForIScan);
+                }
+                dependencyFilePaths = getDependencyFilePaths(sourceDir, executor, asyncExecutor, pkgMgr, workingDir, dependencyGraph, filesForIScan, dependencyCache, includeScanner, compileCommandsParser);
+            }
+            saveDependencyCache(dependencyCache, sharedDependencyCache);
+        }
         final Set<DependencyFile> dependencyFiles = getNewValidDependencyFiles(sourceDir, dependencyFilePaths);
         final Set<PackageDetails> packages = getPackages(executor, pkgMgr, dependencyFiles, filesForIScan);
         final List<Dependency> bdioComponents = getBdioComponents(pkgMgr, packages);
         populateGraph(dependencyGraph, bdioComponents);
+        return finishBdioDocument(bdioDocument, projectExternalId, dependencyGraph, filesForIScan);
+    }
+
+    private IncludeScanner createIncludeScanner(final Executor executor) {
+        if (StringUtils.isBlank(includeScannerSystemDirs)) {
+            return new IncludeScanner(new CompilerSearchPath(executor));
+        }
+        return new IncludeScanner(Arrays.asList(includeScannerSystemDirs.split(":")));
+    }
+
+    private SimpleBdioDocument finishBdioDocument(final SimpleBdioDocument bdioDocument, final ExternalId projectExternalId, final MutableDependencyGraph dependencyGraph, final Set<File> filesForIScan) {
         new SimpleBdioFactory().populateComponents(bdioDocument, projectExternalId, dependencyGraph);
+        metrics.recordIScanFallbacks(filesForIScan.size());
         return bdioDocument;
     }
 
+    private void saveDependencyCache(final DependencyCache dependencyCache, final Optional<SharedDependencyCache> sharedDependencyCache) {
+        dependencyCache.save();
+        metrics.recordCacheResults("dependency", dependencyCache.getHitCount(), dependencyCache.getMissCount());
+        sharedDependencyCache.ifPresent(cache -> metrics.recordCacheResults("shared.dependency", cache.getHitCount(), cache.getMissCount()));
+    }
+
+    // Compiles run on the async executor's heavy pool and package lookups on its light pool, so compile.threads and package.query.threads
+    // (and adaptive concurrency) apply just as they do outside the pipeline
+    private void extractInPipeline(final File sourceDir, final Executor executor, final AsyncExecutor asyncExecutor, final PkgMgr pkgMgr, final File workingDir,
+            final MutableDependencyGraph dependencyGraph, final Set<File> filesForIScan, final DependencyCache dependencyCache, final Optional<IncludeScanner> includeScanner,
+            final CompileCommandsParser compileCommandsParser) throws IOException, IntegrationException {
+        final PackageCache packageCache = createPackageCache(pkgMgr);
+        final Optional<PackageOwnershipResolver> packageOwnershipResolver = createPackageOwnershipResolver();
+        final ExtractionPipeline pipeline = new ExtractionPipeline(
+                (compileCommand, workerIndex) -> asyncExecutor.supplyAsync(Weight.HEAVY, () -> {
+                    final String depsMkFilename = String.format(DEPS_MK_PATH_PATTERN, workerIndex);
+                    final List<String> dependencyFilePaths = getDependencyFilePaths(executor, workingDir, dependencyCache, includeScanner, compileCommand, depsMkFilename);
+                    FileUtils.deleteQuietly(new File(workingDir, depsMkFilename));
+                    return dependencyFilePaths;
+                }).join(),
+                compileThreads,
+                dependencyFilePaths -> getNewValidDependencyFiles(sourceDir, dependencyFilePaths),
+                (dependencyFiles, batchFilesForIScan) -> asyncExecutor
+                        .supplyAsync(Weight.LIGHT, () -> resolvePackages(executor, pkgMgr, packageCache, packageOwnershipResolver, dependencyFiles, batchFilesForIScan)).join(),
+                packageQueryThreads,
+                packages -> populateGraph(dependencyGraph, getBdioComponents(pkgMgr, packages)));
+        pipeline.run(compileCommandsParser, filesForIScan);
+        savePackageCache(packageCache);
+    }
+
     private void populateGraph(final MutableDependencyGraph graph, final List<Dependency> bdioComponents) {
         for (final Dependency bdioComponent : bdioComponents) {
             graph.addChildToRoot(bdioComponent);
@@ -115,21 +268,117 @@ public class ClangExtractor {
         return dependencies;
     }
 
-    private List<CompileCommand> parseCompileCommandsFile(final String compileCommandsJsonFilePath) throws IOException {
-        final File compileCommandsJsonFile = new File(compileCommandsJsonFilePath);
-        final String compileCommandsJson = FileUtils.readFileToString(compileCommandsJsonFile, StandardCharsets.UTF_8);
-        final Gson gson = new Gson();
-        final CompileCommand[] compileCommands = gson.fromJson(compileCommandsJson, CompileCommand[].class);
-        return Arrays.asList(compileCommands);
+    private Optional<Set<String>> findDependencyFilePaths(final Executor executor, final File compileCommandsJsonFile, final File workingDir) {
+        if (StringUtils.isBlank(dependencyFinderName)) {
+            return Optional.empty();
+        }
+        for (final DependencyFinder dependencyFinder : dependencyFinders) {
+            if (!dependencyFinder.getDependencyFinderName().equals(dependencyFinderName)) {
+                continue;
+            }
+            if (!dependencyFinder.applies(executor)) {
+                logger.warn(String.format("Dependency finder %s is not available; falling back to compiling each compile command", dependencyFinderName));
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(dependencyFinder.getDependencyFilePaths(executor, compileCommandsJsonFile, workingDir));
+            } catch (ExecutableRunnerException | IntegrationException e) {
+                logger.warn(String.format("Error finding dependencies with %s; falling back to compiling each compile command: %s", dependencyFinderName, e.getMessage()));
+                return Optional.empty();
+            }
+        }
+        logger.warn(String.format("Unknown dependency finder %s; falling back to compiling each compile command", dependencyFinderName));
+        return Optional.empty();
     }
 
-    private Set<String> getDependencyFilePaths(final File sourceDir, final Executor executor, final PkgMgr pkgMgr, final File workingDir, final MutableDependencyGraph dependencyGraph, final Set<File> filesForIScan,
-            final List<CompileCommand> compileCommands) {
+    private Set<String> getDependencyFilePaths(final File sourceDir, final Executor executor, final AsyncExecutor asyncExecutor, final PkgMgr pkgMgr, final File workingDir,
+            final MutableDependencyGraph dependencyGraph, final Set<File> filesForIScan, final DependencyCache dependencyCache, final Optional<IncludeScanner> includeScanner,
+            final CompileCommandsParser compileCommandsParser) throws IOException, IntegrationException {
+        if (compileThreads > 1) {
+            return getDependencyFilePathsInParallel(executor, asyncExecutor, workingDir, dependencyCache, includeScanner, compileCommandsParser);
+        }
         final Set<String> dependencyFilePaths = new HashSet<>();
-        for (final CompileCommand compileCommand : compileCommands) {
-            logger.debug(String.format("compileCommand:\n\tdirectory: %s;\n\tcommand: %s;\n\tfile: %s", compileCommand.directory, compileCommand.command, compileCommand.file));
-            final Optional<File> depsMkFile = generateDependencyFileByCompiling(executor, workingDir, compileCommand);
-            dependencyFilePaths.addAll(parseDependencyFile(depsMkFile));
+        while (compileCommandsParser.hasNext()) {
+            final CompileCommand compileCommand = compileCommandsParser.next();
+            dependencyFilePaths.addAll(getDependencyFilePaths(executor, workingDir, dependencyCache, includeScanner, compileCommand, DEPS_MK_PATH));
+        }
+        return dependencyFilePaths;
+    }
+
+    private Set<String> getDependencyFilePathsInParallel(final Executor executor, final AsyncExecutor asyncExecutor, final File workingDir, final DependencyCache dependencyCache,
+            final Optional<IncludeScanner> includeScanner, final CompileCommandsParser compileCommandsParser) throws IOException, IntegrationException {
+        logger.info(String.format("Processing compile commands using %d threads", compileThreads));
+        final Set<String> dependencyFilePaths = ConcurrentHashMap.newKeySet();
+        // Only read a little ahead of the compile threads, so compile commands are processed as they're read instead of piling up in memory
+        final int maxPendingCompilations = compileThreads * 2;
+        final Semaphore pendingCompilations = new Semaphore(maxPendingCompilations);
+        final AtomicReference<Throwable> compilationError = new AtomicReference<>();
+        try {
+            int compileCommandIndex = 0;
+            while (compileCommandsParser.hasNext() && compilationError.get() == null) {
+                final CompileCommand compileCommand = compileCommandsParser.next();
+                // Each compile command gets its own dependency file so that concurrent compiles don't overwrite each other's output
+                final String depsMkFilename = String.format(DEPS_MK_PATH_PATTERN, compileCommandIndex++);
+                pendingCompilations.acquire();
+                asyncExecutor.supplyAsync(Weight.HEAVY, () -> getDependencyFilePaths(executor, workingDir, dependencyCache, includeScanner, compileCommand, depsMkFilename))
+                        .whenComplete((compiledDependencyFilePaths, e) -> {
+                            if (e == null) {
+                                dependencyFilePaths.addAll(compiledDependencyFilePaths);
+                            } else if (compilationError.compareAndSet(null, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e)) {
+                                // The run is failing, so there's no point waiting for the other compiles
+                                executor.cancelAll();
+                            }
+                            FileUtils.deleteQuietly(new File(workingDir, depsMkFilename));
+                            pendingCompilations.release();
+                        });
+            }
+            // All permits are back once every compilation has finished
+            pendingCompilations.acquire(maxPendingCompilations);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IntegrationException(String.format("Interrupted while processing compile commands: %s", e.getMessage()));
+        }
+        if (compilationError.get() != null) {
+            throw new IntegrationException(String.format("Error processing compile commands: %s", compilationError.get().getMessage()), compilationError.get());
+        }
+        return dependencyFilePaths;
+    }
+
+    private List<String> getDependencyFilePaths(final Executor executor, final File workingDir, final DependencyCache dependencyCache, final Optional<IncludeScanner> includeScanner,
+            final CompileCommand compileCommand, final String depsMkFilename) {
+        logger.debug(String.format("compileCommand:\n\tdirectory: %s;\n\tcommand: %s;\n\tfile: %s", compileCommand.getDirectory(), compileCommand.getCommand(), compileCommand.getFile()));
+        final Optional<List<String>> cachedDependencyFilePaths = dependencyCache.get(compileCommand);
+        if (cachedDependencyFilePaths.isPresent()) {
+            logger.debug(String.format("Using cached dependencies for %s", compileCommand.getFile()));
+            return cachedDependencyFilePaths.get();
+        }
+        Optional<File> depsMkFile = Optional.empty();
+        if (reuseBuildDependencyFiles) {
+            depsMkFile = buildDependencyFileLocator.find(compileCommand);
+        }
+        if (!depsMkFile.isPresent() && includeScanner.isPresent()) {
+            final Optional<List<String>> scannedDependencyFilePaths = includeScanner.get().scan(compileCommand);
+            if (scannedDependencyFilePaths.isPresent()) {
+                dependencyCache.put(compileCommand, scannedDependencyFilePaths.get());
+                return scannedDependencyFilePaths.get();
+            }
+        }
+        if (!depsMkFile.isPresent() && dependencyOutputToStdout) {
+            final Optional<List<String>> compiledDependencyFilePaths = getDependencyFilePathsByCompilingToStdout(executor, compileCommand);
+            if (!compiledDependencyFilePaths.isPresent()) {
+                return new ArrayList<>(0);
+            }
+            if (!compiledDependencyFilePaths.get().isEmpty()) {
+                dependencyCache.put(compileCommand, compiledDependencyFilePaths.get());
+            }
+            return compiledDependencyFilePaths.get();
+        }
+        if (!depsMkFile.isPresent()) {
+            depsMkFile = generateDependencyFileByCompiling(executor, workingDir, compileCommand, depsMkFilename);
+        }
+        final List<String> dependencyFilePaths = parseDependencyFile(depsMkFile);
+        if (depsMkFile.isPresent() && !dependencyFilePaths.isEmpty()) {
+            dependencyCache.put(compileCommand, dependencyFilePaths);
         }
         return dependencyFilePaths;
     }
@@ -149,41 +398,48 @@ public class ClangExtractor {
     }
 
     private Optional<File> generateDependencyFileByCompiling(final Executor executor, final File workingDir,
-            final CompileCommand compileCommand) {
+            final CompileCommand compileCommand, final String depsMkFilename) {
 
-        final File depsMkFile = new File(workingDir, DEPS_MK_PATH);
-        final String generateDependenciesFileCommand = String.format(COMPILE_CMD_PATTERN_WITH_DEPENDENCY_OUTPUT_FILE, compileCommand.command, depsMkFile.getAbsolutePath());
-        try {
-            executor.execute(new File(compileCommand.directory), null, generateDependenciesFileCommand);
+        final File depsMkFile = new File(workingDir, depsMkFilename);
+        final String generateDependenciesFileCommand = String.format(COMPILE_CMD_PATTERN_WITH_DEPENDENCY_OUTPUT_FILE, compileCommand.getCommand(), CommandLine.quote(depsMkFile.getAbsolutePath()));
+        final long startNanos = System.nanoTime();
+        try (RunTracer.Span span = tracer.startSpan("compile", "compile", "file", compileCommand.getFile())) {
+            executor.executeForEffect(new File(compileCommand.getDirectory()), null, generateDependenciesFileCommand);
         } catch (ExecutableRunnerException | IntegrationException e) {
             logger.debug(String.format("Error compiling with command '%s': %s", generateDependenciesFileCommand, e.getMessage()));
             return Optional.empty();
+        } finally {
+            metrics.recordCompile(System.nanoTime() - startNanos);
         }
         return Optional.of(depsMkFile);
     }
 
+    private Optional<List<String>> getDependencyFilePathsByCompilingToStdout(final Executor executor, final CompileCommand compileCommand) {
+        final String generateDependenciesCommand = String.format(COMPILE_CMD_PATTERN_WITH_DEPENDENCY_OUTPUT_TO_STDOUT, compileCommand.getCommand());
+        final List<String> dependencyFilePaths = new ArrayList<>();
+        final DependencyFileParser dependencyFileParser = new DependencyFileParser(dependencyFilePaths::add);
+        final long startNanos = System.nanoTime();
+        try (RunTracer.Span span = tracer.startSpan("compile", "compile", "file", compileCommand.getFile())) {
+            executor.execute(new File(compileCommand.getDirectory()), null, generateDependenciesCommand, dependencyFileParser::feedLine);
+        } catch (ExecutableRunnerException | IntegrationException e) {
+            logger.debug(String.format("Error compiling with command '%s': %s", generateDependenciesCommand, e.getMessage()));
+            return Optional.empty();
+        } finally {
+            metrics.recordCompile(System.nanoTime() - startNanos);
+        }
+        dependencyFileParser.finish();
+        metrics.recordDependencyRulesParsed(dependencyFileParser.getByteCount());
+        return Optional.of(dependencyFilePaths);
+    }
+
     private List<String> parseDependencyFile(final Optional<File> depsMkFile) {
         if (!depsMkFile.isPresent()) {
             return new ArrayList<>(0);
         }
-        List<String> dependencyFilePaths;
-        try {
-            final String depsDecl = FileUtils.readFileToString(depsMkFile.get(), StandardCharsets.UTF_8);
-            final String[] depsDeclParts = depsDecl.split(": ");
-            String depsListString = depsDeclParts[1];
-            logger.trace(String.format("dependencies: %s", depsListString));
-
-            depsListString = depsListString.replaceAll("\n", " ");
-            logger.trace(String.format("dependencies, newlines removed: %s", depsListString));
-
-            depsListString = depsListString.replaceAll("\\\\", " ");
-            logger.trace(String.format("dependencies, backslashes removed: %s", depsListString));
-
-            final String[] deps = depsListString.split("\\s+");
-            for (final String includeFile : deps) {
-                logger.trace(String.format("\t%s", includeFile));
-            }
-            dependencyFilePaths = Arrays.asList(deps);
+        final List<String> dependencyFilePaths = new ArrayList<>();
+        try (RunTracer.Span span = tracer.startSpan("parse", "parse dependency file", "file", depsMkFile.get())) {
+            DependencyFileParser.parse(depsMkFile.get(), dependencyFilePaths);
+            metrics.recordDependencyRulesParsed(depsMkFile.get().length());
         } catch (final IOException e) {
             logger.warn(String.format("Error getting dependency file paths from '%s': %s", depsMkFile.get().getAbsolutePath(), e.getMessage()));
             return new ArrayList<>(0);
@@ -192,14 +448,63 @@ public class ClangExtractor {
     }
 
     private Set<PackageDetails> getPackages(final Executor executor, final PkgMgr pkgMgr, final Set<DependencyFile> dependencyFiles, final Set<File> filesForIScan) {
+        final PackageCache packageCache = createPackageCache(pkgMgr);
+        final Set<PackageDetails> packages = resolvePackages(executor, pkgMgr, packageCache, createPackageOwnershipResolver(), dependencyFiles, filesForIScan);
+        savePackageCache(packageCache);
+        return packages;
+    }
+
+    private void savePackageCache(final PackageCache packageCache) {
+        packageCache.save();
+        metrics.recordCacheResults("package", packageCache.getHitCount(), packageCache.getMissCount());
+    }
+
+    private PackageCache createPackageCache(final PkgMgr pkgMgr) {
+        final PackageCache packageCache = new PackageCache(packageCacheFilePath, pkgMgr.getPkgMgrName(), pkgMgr.getDatabaseFiles());
+        packageCache.load();
+        return packageCache;
+    }
+
+    private Optional<PackageOwnershipResolver> createPackageOwnershipResolver() {
+        return ownershipMemoEnabled ? Optional.of(new PackageOwnershipResolver(ownershipMemoConfirmations, ownershipMemoMinDepth)) : Optional.empty();
+    }
+
+    private Set<PackageDetails> resolvePackages(final Executor executor, final PkgMgr pkgMgr, final PackageCache packageCache, final Optional<PackageOwnershipResolver> packageOwnershipResolver,
+            final Collection<DependencyFile> dependencyFiles, final Set<File> filesForIScan) {
         final Set<PackageDetails> packages = new HashSet<>();
+        final List<DependencyFile> uncachedDependencyFiles = new ArrayList<>(dependencyFiles.size());
         for (final DependencyFile dependencyFile : dependencyFiles) {
-            packages.addAll(pkgMgr.getDependencyDetails(executor, filesForIScan, dependencyFile));
+            final Optional<List<PackageDetails>> cachedPackages = packageCache.get(dependencyFile);
+            if (!cachedPackages.isPresent()) {
+                uncachedDependencyFiles.add(dependencyFile);
+                continue;
+            }
+            if (cachedPackages.get().isEmpty() && !dependencyFile.isInBuildDir()) {
+                filesForIScan.add(dependencyFile.getFile());
+            }
+            packages.addAll(cachedPackages.get());
+        }
+        final Map<DependencyFile, List<PackageDetails>> packagesByDependencyFile;
+        final long startNanos = System.nanoTime();
+        try (RunTracer.Span span = tracer.startSpan("package", pkgMgr.getPkgMgrName(), "files", uncachedDependencyFiles.size())) {
+            if (packageOwnershipResolver.isPresent()) {
+                packagesByDependencyFile = packageOwnershipResolver.get().getDependencyDetails(executor, pkgMgr, filesForIScan, uncachedDependencyFiles);
+            } else {
+                packagesByDependencyFile = pkgMgr.getDependencyDetails(executor, filesForIScan, uncachedDependencyFiles);
+            }
+        }
+        if (!uncachedDependencyFiles.isEmpty()) {
+            metrics.recordPackageLookup(pkgMgr.getPkgMgrName(), uncachedDependencyFiles.size(), System.nanoTime() - startNanos);
+        }
+        // Files whose lookup failed are left out, so they're asked about again next run rather than cached as unowned
+        for (final Map.Entry<DependencyFile, List<PackageDetails>> dependencyFilePackages : packagesByDependencyFile.entrySet()) {
+            packageCache.put(dependencyFilePackages.getKey(), dependencyFilePackages.getValue());
+            packages.addAll(dependencyFilePackages.getValue());
         }
         return packages;
     }
 
-    private Set<DependencyFile> getNewValidDependencyFiles(final File sourceDir, final Set<String> dependencyFilePaths) {
+    private Set<DependencyFile> getNewValidDependencyFiles(final File sourceDir, final Collection<String> dependencyFilePaths) {
         final Set<DependencyFile> dependencyFiles = new HashSet<>(dependencyFilePaths.size());
         for (final String dependency : dependencyFilePaths) {
             if (StringUtils.isBlank(dependency)) {
@@ -217,6 +522,7 @@ public class ClangExtractor {
                 dependencyFiles.add(dependencyFileWrapper);
             }
         }
+        metrics.recordUniqueDependencyFiles(dependencyFiles.size());
         return dependencyFiles;
     }
 
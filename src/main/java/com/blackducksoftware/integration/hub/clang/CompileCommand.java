@@ -23,13 +23,53 @@
  */
 package com.blackducksoftware.integration.hub.clang;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.commons.lang3.builder.RecursiveToStringStyle;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
+
 public class CompileCommand {
-    public String directory;
-    public String command;
-    public String file;
+    private final String directory;
+    private final String file;
+    // Parsed once, since the include scanner and build dependency file locator look at individual arguments
+    private final String[] arguments;
+    // In /bin/sh syntax, as the command is run: the arguments quoted and joined, built on first use rather than kept alongside them from the start.
+    // Threads that race to build it build the same string.
+    private String command;
+
+    public CompileCommand(final String directory, final String command, final String file) {
+        this(directory, CommandLine.split(command), file);
+    }
+
+    public CompileCommand(final String directory, final String[] arguments, final String file) {
+        this.directory = directory;
+        this.arguments = arguments;
+        this.file = file;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public List<String> getArguments() {
+        return Arrays.asList(arguments);
+    }
+
+    public String getCommand() {
+        String joinedCommand = command;
+        if (joinedCommand == null) {
+            joinedCommand = CommandLine.join(arguments);
+            command = joinedCommand;
+        }
+        return joinedCommand;
+    }
 
     @Override
     public String toString() {
@@ -0,0 +1,140 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+// Reads a JSON compilation database one entry at a time, so the whole file never has to be held in memory.
+// Entries can use either the "command" string form or the "arguments" array form.
+public class CompileCommandsParser implements Closeable {
+    private final JsonReader jsonReader;
+    // Directories, compilers and flags are repeated on nearly every entry; sharing one copy of each keeps memory from growing with the size of the database.
+    // Source and output paths are unique to each entry, so they aren't kept, and the cap bounds the rest (e.g. per-entry -MF flags).
+    private static final int MAX_INTERNED_STRINGS = 10000;
+    private final Map<String, String> internedStrings = new HashMap<>();
+    private boolean started = false;
+
+    public CompileCommandsParser(final File compileCommandsJsonFile) throws IOException {
+        this(new BufferedReader(new InputStreamReader(new FileInputStream(compileCommandsJsonFile), StandardCharsets.UTF_8)));
+    }
+
+    public CompileCommandsParser(final Reader compileCommandsJsonReader) {
+        this.jsonReader = new JsonReader(compileCommandsJsonReader);
+    }
+
+    public boolean hasNext() throws IOException {
+        if (!started) {
+            jsonReader.beginArray();
+            started = true;
+        }
+        return jsonReader.hasNext();
+    }
+
+    public CompileCommand next() throws IOException {
+        if (!hasNext()) {
+            throw new IOException("No more compile commands");
+        }
+        String directory = null;
+        String command = null;
+        List<String> arguments = null;
+        String file = null;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            final String name = jsonReader.nextName();
+            if ("directory".equals(name)) {
+                directory = intern(jsonReader.nextString());
+            } else if ("command".equals(name)) {
+                command = jsonReader.nextString();
+            } else if ("arguments".equals(name)) {
+                arguments = readArguments();
+            } else if ("file".equals(name)) {
+                file = jsonReader.nextString();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        if (directory == null || file == null || (command == null && arguments == null)) {
+            throw new IOException(String.format("Invalid compile command at %s: directory, file, and either command or arguments are required", jsonReader.getPath()));
+        }
+        if (command != null) {
+            return new CompileCommand(directory, tokenize(command), file);
+        }
+        return new CompileCommand(directory, arguments.toArray(new String[arguments.size()]), file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        internedStrings.clear();
+        jsonReader.close();
+    }
+
+    private List<String> readArguments() throws IOException {
+        final List<String> arguments = new ArrayList<>();
+        jsonReader.beginArray();
+        while (jsonReader.peek() != JsonToken.END_ARRAY) {
+            arguments.add(internArgument(arguments.size(), jsonReader.nextString()));
+        }
+        jsonReader.endArray();
+        return arguments;
+    }
+
+    private String[] tokenize(final String command) {
+        final String[] arguments = CommandLine.split(command);
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = internArgument(i, arguments[i]);
+        }
+        return arguments;
+    }
+
+    private String internArgument(final int index, final String argument) {
+        return index == 0 || argument.startsWith("-") ? intern(argument) : argument;
+    }
+
+    private String intern(final String value) {
+        final String internedValue = internedStrings.get(value);
+        if (internedValue != null) {
+            return internedValue;
+        }
+        if (internedStrings.size() < MAX_INTERNED_STRINGS) {
+            internedStrings.put(value, value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
+
+// Asks each distinct compiler for its built-in #include search path (gcc's internal include dir, the multiarch dirs, libstdc++'s dirs...),
+// once per compiler, language and target, by running it on an empty file with -v. The probe goes through the extractor's Executor like any other command,
+// in a shell that sends its stderr, where the search path is printed, to stdout.
+public class CompilerSearchPath implements Function<CompileCommand, Optional<List<String>>> {
+    private static final String SEARCH_LIST_START = "#include <...> search starts here:";
+    private static final String SEARCH_LIST_END = "End of search list.";
+    private static final String FRAMEWORK_DIR_SUFFIX = " (framework directory)";
+    private static final Set<String> CXX_EXTENSIONS = new HashSet<>(Arrays.asList("cc", "cp", "cxx", "cpp", "CPP", "c++", "C", "hh", "hpp", "hxx", "h++", "H", "ii"));
+    // Options that change which dirs the compiler searches
+    private static final List<String> TARGET_OPTION_PREFIXES = Arrays.asList("-m32", "-m64", "-mx32", "--target=", "-stdlib=");
+    private static final String TARGET_OPTION = "-target";
+    private static final String LANGUAGE_OPTION = "-x";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Executor executor;
+    private final Map<List<String>, Optional<List<String>>> searchPathsByProbe = new ConcurrentHashMap<>();
+
+    public CompilerSearchPath(final Executor executor) {
+        this.executor = executor;
+    }
+
+    // Empty if the compiler couldn't be asked, in which case the command has to be compiled instead
+    @Override
+    public Optional<List<String>> apply(final CompileCommand compileCommand) {
+        final List<String> probe = getProbe(compileCommand);
+        return searchPathsByProbe.computeIfAbsent(probe, key -> runProbe(compileCommand.getDirectory(), key));
+    }
+
+    private List<String> getProbe(final CompileCommand compileCommand) {
+        final List<String> arguments = compileCommand.getArguments();
+        String compiler = arguments.get(0);
+        if (compiler.contains("/")) {
+            compiler = FilenameUtils.normalize(new File(compileCommand.getDirectory()).toPath().resolve(compiler).toString());
+        }
+        String language = compiler.endsWith("++") ? "c++" : "c";
+        final String extension = FilenameUtils.getExtension(compileCommand.getFile());
+        if (CXX_EXTENSIONS.contains(extension)) {
+            language = "c++";
+        }
+        final List<String> probe = new ArrayList<>();
+        probe.add(compiler);
+        for (int i = 1; i < arguments.size(); i++) {
+            final String argument = arguments.get(i);
+            if (LANGUAGE_OPTION.equals(argument) && i + 1 < arguments.size()) {
+                language = arguments.get(++i);
+            } else if (argument.startsWith(LANGUAGE_OPTION) && argument.length() > LANGUAGE_OPTION.length()) {
+                language = argument.substring(LANGUAGE_OPTION.length());
+            } else if (TARGET_OPTION.equals(argument) && i + 1 < arguments.size()) {
+                probe.add(argument);
+                probe.add(arguments.get(++i));
+            } else if (isTargetOption(argument)) {
+                probe.add(argument);
+            }
+        }
+        probe.addAll(Arrays.asList("-E", "-v", LANGUAGE_OPTION, language, "/dev/null"));
+        return probe;
+    }
+
+    private boolean isTargetOption(final String argument) {
+        for (final String prefix : TARGET_OPTION_PREFIXES) {
+            if (argument.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Optional<List<String>> runProbe(final String directory, final List<String> probe) {
+        final String probeCommand = CommandLine.join(probe.toArray(new String[probe.size()]));
+        final String shellCommand = CommandLine.join(new String[] { "sh", "-c", String.format("%s 2>&1", probeCommand) });
+        try {
+            final String output = executor.execute(new File(directory), null, shellCommand);
+            final Optional<List<String>> searchPath = parse(Arrays.asList(output.split("\\r?\\n")));
+            if (searchPath.isPresent()) {
+                logger.info(String.format("Include search path of %s: %s", probe.get(0), searchPath.get()));
+            } else {
+                logger.warn(String.format("Unable to find the include search path in the output of '%s'", probeCommand));
+            }
+            return searchPath;
+        } catch (ExecutableRunnerException | IntegrationException e) {
+            logger.warn(String.format("Unable to get the include search path from '%s': %s", probeCommand, e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    // The dirs are listed one per line, indented, between the two markers; dirs for #include "..." only come before the start marker
+    static Optional<List<String>> parse(final List<String> outputLines) {
+        final int startIndex = outputLines.indexOf(SEARCH_LIST_START);
+        if (startIndex < 0) {
+            return Optional.empty();
+        }
+        final List<String> searchPath = new ArrayList<>();
+        for (int i = startIndex + 1; i < outputLines.size(); i++) {
+            final String line = outputLines.get(i);
+            if (SEARCH_LIST_END.equals(line)) {
+                return Optional.of(searchPath);
+            }
+            if (!line.endsWith(FRAMEWORK_DIR_SUFFIX)) {
+                searchPath.add(FilenameUtils.normalizeNoEndSeparator(line.trim()));
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+// An entry is reused as long as the compile command is unchanged and none of the files it depended on last time (including the source file) has changed size or mtime
+public class DependencyCache {
+    private static final int CACHE_FORMAT_VERSION = 1;
+    private static final long MISSING_FILE = -1L;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final File cacheFile;
+    private final Map<String, CacheEntry> previousEntries = new ConcurrentHashMap<>();
+    private final Map<String, CacheEntry> currentEntries = new ConcurrentHashMap<>();
+    private final Map<String, FileStamp> fileStamps = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final Optional<SharedDependencyCache> sharedCache;
+
+    public DependencyCache(final String cacheFilePath) {
+        this(cacheFilePath, Optional.empty());
+    }
+
+    // Local misses fall through to the shared cache, if any, before the caller has to compile
+    public DependencyCache(final String cacheFilePath, final Optional<SharedDependencyCache> sharedCache) {
+        this.cacheFile = StringUtils.isBlank(cacheFilePath) ? null : new File(cacheFilePath);
+        this.sharedCache = sharedCache;
+    }
+
+    public boolean isEnabled() {
+        return cacheFile != null;
+    }
+
+    public void load() {
+        if (!isEnabled() || !cacheFile.exists()) {
+            return;
+        }
+        try {
+            final String cacheJson = FileUtils.readFileToString(cacheFile, StandardCharsets.UTF_8);
+            final CacheContents cacheContents = new Gson().fromJson(cacheJson, CacheContents.class);
+            if (cacheContents == null || cacheContents.version != CACHE_FORMAT_VERSION || cacheContents.entries == null) {
+                logger.info(String.format("Ignoring dependency cache %s; it was written in an unsupported format", cacheFile.getAbsolutePath()));
+                return;
+            }
+            for (final CacheEntry entry : cacheContents.entries) {
+                previousEntries.put(entry.key, entry);
+            }
+            logger.debug(String.format("Loaded %d entries from dependency cache %s", previousEntries.size(), cacheFile.getAbsolutePath()));
+        } catch (IOException | JsonParseException e) {
+            logger.warn(String.format("Error reading dependency cache %s; ignoring it: %s", cacheFile.getAbsolutePath(), e.getMessage()));
+        }
+    }
+
+    public Optional<List<String>> get(final CompileCommand compileCommand) {
+        final Optional<List<String>> localDependencyFilePaths = getLocal(compileCommand);
+        if (localDependencyFilePaths.isPresent() || !sharedCache.isPresent()) {
+            return localDependencyFilePaths;
+        }
+        final Optional<List<String>> sharedDependencyFilePaths = sharedCache.get().get(compileCommand);
+        sharedDependencyFilePaths.ifPresent(dependencyFilePaths -> putLocal(compileCommand, dependencyFilePaths));
+        return sharedDependencyFilePaths;
+    }
+
+    public void put(final CompileCommand compileCommand, final List<String> dependencyFilePaths) {
+        putLocal(compileCommand, dependencyFilePaths);
+        sharedCache.ifPresent(cache -> cache.put(compileCommand, dependencyFilePaths));
+    }
+
+    private Optional<List<String>> getLocal(final CompileCommand compileCommand) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        final String key = createKey(compileCommand);
+        final CacheEntry entry = previousEntries.get(key);
+        if (entry == null || !isUnchanged(entry)) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        logger.trace(String.format("Dependency cache hit for %s", compileCommand.getFile()));
+        hits.incrementAndGet();
+        currentEntries.put(key, entry);
+        return Optional.of(entry.dependencyFilePaths);
+    }
+
+    private void putLocal(final CompileCommand compileCommand, final List<String> dependencyFilePaths) {
+        if (!isEnabled()) {
+            return;
+        }
+        final CacheEntry entry = new CacheEntry();
+        entry.key = createKey(compileCommand);
+        entry.dependencyFilePaths = new ArrayList<>(dependencyFilePaths);
+        entry.inputs = new ArrayList<>(dependencyFilePaths.size() + 1);
+        entry.inputs.add(getFileStamp(compileCommand.getDirectory(), compileCommand.getFile()));
+        for (final String dependencyFilePath : dependencyFilePaths) {
+            if (StringUtils.isNotBlank(dependencyFilePath)) {
+                entry.inputs.add(getFileStamp(compileCommand.getDirectory(), dependencyFilePath));
+            }
+        }
+        currentEntries.put(entry.key, entry);
+    }
+
+    // Only entries used or added during this run are written, so compile commands that have left the compilation database drop out
+    public void save() {
+        sharedCache.ifPresent(SharedDependencyCache::evict);
+        if (!isEnabled()) {
+            return;
+        }
+        logger.info(String.format("Dependency cache: %d hits, %d misses", hits.get(), misses.get()));
+        final CacheContents cacheContents = new CacheContents();
+        cacheContents.version = CACHE_FORMAT_VERSION;
+        cacheContents.entries = new ArrayList<>(currentEntries.values());
+        final File tempCacheFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+        try {
+            FileUtils.writeStringToFile(tempCacheFile, new Gson().toJson(cacheContents), StandardCharsets.UTF_8);
+            Files.move(tempCacheFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            logger.warn(String.format("Error writing dependency cache %s: %s", cacheFile.getAbsolutePath(), e.getMessage()));
+            FileUtils.deleteQuietly(tempCacheFile);
+        }
+    }
+
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    private String createKey(final CompileCommand compileCommand) {
+        return String.format("%s\n%s\n%s", compileCommand.getDirectory(), compileCommand.getCommand(), compileCommand.getFile());
+    }
+
+    private boolean isUnchanged(final CacheEntry entry) {
+        for (final FileStamp previousStamp : entry.inputs) {
+            final FileStamp currentStamp = getFileStamp(null, previousStamp.path);
+            if (currentStamp.lastModified != previousStamp.lastModified || currentStamp.length != previousStamp.length) {
+                logger.trace(String.format("%s has changed since the dependency cache entry was written", previousStamp.path));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Files don't change during a run, so each one only needs to be stat'ed once no matter how many compile commands depend on it
+    private FileStamp getFileStamp(final String directory, final String path) {
+        File file = new File(path);
+        if (!file.isAbsolute() && directory != null) {
+            file = new File(directory, path);
+        }
+        return fileStamps.computeIfAbsent(file.getAbsolutePath(), absolutePath -> {
+            final File stampedFile = new File(absolutePath);
+            final FileStamp stamp = new FileStamp();
+            stamp.path = absolutePath;
+            stamp.lastModified = stampedFile.exists() ? stampedFile.lastModified() : MISSING_FILE;
+            stamp.length = stampedFile.exists() ? stampedFile.length() : MISSING_FILE;
+            return stamp;
+        });
+    }
+
+    private static class CacheContents {
+        private int version;
+        private List<CacheEntry> entries;
+    }
+
+    private static class CacheEntry {
+        private String key;
+        private List<FileStamp> inputs;
+        private List<String> dependencyFilePaths;
+    }
+
+    private static class FileStamp {
+        private String path;
+        private long lastModified;
+        private long length;
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Single-pass scanner for make-style dependency rules (the output of -M / -MD and clang-scan-deps -format make).
+// Handles continuation lines, escaped spaces and #s, $$, and any number of rules with any number of targets; only prerequisites are emitted.
+// Input can be fed in chunks of any size, so it works on a pipe as well as a file.
+public class DependencyFileParser {
+    private static final long MAPPED_FILE_THRESHOLD = 1024 * 1024;
+    private static final String ORDER_ONLY_SEPARATOR = "|";
+    private final Consumer<String> dependencySink;
+    private byte[] token = new byte[256];
+    private int tokenLength = 0;
+    private boolean inTargets = true;
+    private boolean inComment = false;
+    private boolean pendingBackslash = false;
+    private boolean pendingCarriageReturn = false;
+    private boolean pendingDollar = false;
+    private boolean pendingColon = false;
+    private long byteCount = 0L;
+
+    public DependencyFileParser(final Consumer<String> dependencySink) {
+        this.dependencySink = dependencySink;
+    }
+
+    public static List<String> parse(final String depsDecl) {
+        final List<String> dependencyFilePaths = new ArrayList<>();
+        final DependencyFileParser parser = new DependencyFileParser(dependencyFilePaths::add);
+        final byte[] depsDeclBytes = depsDecl.getBytes(StandardCharsets.UTF_8);
+        parser.feed(depsDeclBytes, 0, depsDeclBytes.length);
+        parser.finish();
+        return dependencyFilePaths;
+    }
+
+    public static void parse(final File depsMkFile, final Collection<String> dependencyFilePaths) throws IOException {
+        final DependencyFileParser parser = new DependencyFileParser(dependencyFilePaths::add);
+        if (depsMkFile.length() < MAPPED_FILE_THRESHOLD) {
+            final byte[] depsDeclBytes = Files.readAllBytes(depsMkFile.toPath());
+            parser.feed(depsDeclBytes, 0, depsDeclBytes.length);
+        } else {
+            try (FileChannel channel = FileChannel.open(depsMkFile.toPath(), StandardOpenOption.READ)) {
+                parser.feed(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+        parser.finish();
+    }
+
+    public void feed(final byte[] bytes, final int offset, final int length) {
+        for (int i = offset; i < offset + length; i++) {
+            accept(bytes[i]);
+        }
+    }
+
+    public void feed(final ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            accept(bytes.get());
+        }
+    }
+
+    // For text that has already been split into lines, e.g. compiler output read from a pipe
+    public void feedLine(final CharSequence line) {
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c < 0x80) {
+                accept((byte) c);
+            } else {
+                final byte[] remainingBytes = line.subSequence(i, line.length()).toString().getBytes(StandardCharsets.UTF_8);
+                feed(remainingBytes, 0, remainingBytes.length);
+                break;
+            }
+        }
+        accept((byte) '\n');
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    public void finish() {
+        if (pendingBackslash) {
+            appendToToken((byte) '\\');
+            pendingBackslash = false;
+        }
+        if (pendingDollar) {
+            appendToToken((byte) '$');
+            pendingDollar = false;
+        }
+        if (pendingColon) {
+            pendingColon = false;
+            endTargets();
+        }
+        endToken();
+        inTargets = true;
+        inComment = false;
+        pendingCarriageReturn = false;
+    }
+
+    private void accept(final byte b) {
+        byteCount++;
+        if (inComment) {
+            if (b == '\n') {
+                inComment = false;
+                endLine();
+            }
+            return;
+        }
+        if (pendingBackslash) {
+            pendingBackslash = false;
+            if (acceptEscaped(b)) {
+                return;
+            }
+        }
+        if (pendingDollar) {
+            pendingDollar = false;
+            appendToToken((byte) '$');
+            if (b == '$') {
+                return;
+            }
+        }
+        if (pendingColon) {
+            pendingColon = false;
+            if (tokenLength == 1 && b != '\\' && !isWhitespace(b) && b != '\n' && b != '\r') {
+                // A drive letter, not a rule separator; keep it as part of the target
+                appendToToken((byte) ':');
+            } else {
+                endTargets();
+            }
+        }
+        switch (b) {
+        case '\\':
+            pendingBackslash = true;
+            break;
+        case '$':
+            pendingDollar = true;
+            break;
+        case '\n':
+            endLine();
+            break;
+        case ':':
+            if (inTargets) {
+                pendingColon = true;
+            } else {
+                appendToToken(b);
+            }
+            break;
+        case '#':
+            if (tokenLength == 0) {
+                endToken();
+                inComment = true;
+            } else {
+                appendToToken(b);
+            }
+            break;
+        default:
+            if (isWhitespace(b) || b == '\r') {
+                endToken();
+            } else {
+                appendToToken(b);
+            }
+        }
+    }
+
+    // Returns true if the byte after a backslash has been fully handled
+    private boolean acceptEscaped(final byte b) {
+        if (pendingCarriageReturn) {
+            pendingCarriageReturn = false;
+            if (b == '\n') {
+                endToken();
+                return true;
+            }
+            endToken();
+            return false;
+        }
+        if (b == '\n') {
+            // Continuation line: the rule carries on, and the backslash just separates prerequisites
+            endToken();
+            return true;
+        }
+        if (b == '\r') {
+            pendingBackslash = true;
+            pendingCarriageReturn = true;
+            return true;
+        }
+        if (b == ' ' || b == '#') {
+            appendToToken(b);
+            return true;
+        }
+        appendToToken((byte) '\\');
+        return false;
+    }
+
+    private void endTargets() {
+        endToken();
+        inTargets = false;
+    }
+
+    private void endLine() {
+        endToken();
+        inTargets = true;
+    }
+
+    private void endToken() {
+        if (tokenLength == 0) {
+            return;
+        }
+        if (!inTargets) {
+            final String dependency = new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+            if (!ORDER_ONLY_SEPARATOR.equals(dependency)) {
+                dependencySink.accept(dependency);
+            }
+        }
+        tokenLength = 0;
+    }
+
+    private void appendToToken(final byte b) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, token.length * 2);
+        }
+        token[tokenLength++] = b;
+    }
+
+    private boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+
+// Streams compile commands through the extraction stages instead of running each stage over everything before starting the next:
+// read compile commands -> generate dependencies -> dedup dependency files -> resolve packages -> emit packages.
+// Stages run in their own threads and are connected by bounded queues, so a stage that gets ahead blocks instead of piling up work,
+// and package lookups start while compiles are still running. Dedup and emit are single threaded, so the state they keep needs no locking.
+// Each queue carries Optional.empty() as its end-of-stream marker, one per consuming thread.
+public class ExtractionPipeline {
+    private static final int QUEUE_CAPACITY_PER_THREAD = 2;
+    private static final int RESOLUTION_BATCH_SIZE = 512;
+    private static final long BATCH_FLUSH_MILLIS = 50L;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final DependencyGenerator dependencyGenerator;
+    private final int generatorThreads;
+    private final DependencyFileFilter dependencyFileFilter;
+    private final PackageResolver packageResolver;
+    private final int resolverThreads;
+    private final Consumer<Set<PackageDetails>> packageSink;
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    public interface DependencyGenerator {
+        // workerIndex identifies the calling generator thread, e.g. to give each one its own scratch file
+        List<String> generate(CompileCommand compileCommand, int workerIndex);
+    }
+
+    public interface DependencyFileFilter {
+        // Returns the dependency files not seen before
+        Set<DependencyFile> filter(List<String> dependencyFilePaths);
+    }
+
+    public interface PackageResolver {
+        Set<PackageDetails> resolve(List<DependencyFile> dependencyFiles, Set<File> filesForIScan);
+    }
+
+    public ExtractionPipeline(final DependencyGenerator dependencyGenerator, final int generatorThreads, final DependencyFileFilter dependencyFileFilter, final PackageResolver packageResolver,
+            final int resolverThreads, final Consumer<Set<PackageDetails>> packageSink) {
+        this.dependencyGenerator = dependencyGenerator;
+        this.generatorThreads = Math.max(1, generatorThreads);
+        this.dependencyFileFilter = dependencyFileFilter;
+        this.packageResolver = packageResolver;
+        this.resolverThreads = Math.max(1, resolverThreads);
+        this.packageSink = packageSink;
+    }
+
+    public void run(final CompileCommandsParser compileCommandsParser, final Set<File> filesForIScan) throws IOException, IntegrationException {
+        logger.info(String.format("Processing compile commands in a pipeline using %d compile threads and %d package lookup threads", generatorThreads, resolverThreads));
+        final BlockingQueue<Optional<CompileCommand>> compileCommands = new ArrayBlockingQueue<>(generatorThreads * QUEUE_CAPACITY_PER_THREAD);
+        final BlockingQueue<Optional<List<String>>> dependencyFilePaths = new ArrayBlockingQueue<>(generatorThreads * QUEUE_CAPACITY_PER_THREAD);
+        final BlockingQueue<Optional<List<DependencyFile>>> dependencyFileBatches = new ArrayBlockingQueue<>(resolverThreads * QUEUE_CAPACITY_PER_THREAD);
+        final BlockingQueue<Optional<Set<PackageDetails>>> packages = new ArrayBlockingQueue<>(resolverThreads * QUEUE_CAPACITY_PER_THREAD);
+        final Set<File> concurrentFilesForIScan = ConcurrentHashMap.newKeySet();
+        final ExecutorService stageThreads = Executors.newFixedThreadPool(generatorThreads + resolverThreads + 2);
+        try {
+            final AtomicInteger runningGenerators = new AtomicInteger(generatorThreads);
+            for (int i = 0; i < generatorThreads; i++) {
+                final int workerIndex = i;
+                stageThreads.execute(() -> runStage(() -> generateDependencies(workerIndex, compileCommands, dependencyFilePaths, runningGenerators)));
+            }
+            stageThreads.execute(() -> runStage(() -> dedupDependencyFiles(dependencyFilePaths, dependencyFileBatches)));
+            final AtomicInteger runningResolvers = new AtomicInteger(resolverThreads);
+            for (int i = 0; i < resolverThreads; i++) {
+                stageThreads.execute(() -> runStage(() -> resolvePackages(dependencyFileBatches, packages, concurrentFilesForIScan, runningResolvers)));
+            }
+            stageThreads.execute(() -> runStage(() -> emitPackages(packages)));
+            boolean failed = false;
+            while (!failed && compileCommandsParser.hasNext()) {
+                failed = !putUnlessFailed(compileCommands, Optional.of(compileCommandsParser.next()));
+            }
+            for (int i = 0; !failed && i < generatorThreads; i++) {
+                failed = !putUnlessFailed(compileCommands, Optional.empty());
+            }
+            stageThreads.shutdown();
+            while (!stageThreads.awaitTermination(1L, TimeUnit.SECONDS)) {
+                if (error.get() != null) {
+                    // Stages blocked on a queue whose other end has failed are interrupted out of it
+                    stageThreads.shutdownNow();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IntegrationException(String.format("Interrupted while processing compile commands: %s", e.getMessage()));
+        } finally {
+            stageThreads.shutdownNow();
+            filesForIScan.addAll(concurrentFilesForIScan);
+        }
+        if (error.get() != null) {
+            throw new IntegrationException(String.format("Error processing compile commands: %s", error.get().getMessage()), error.get());
+        }
+    }
+
+    private void generateDependencies(final int workerIndex, final BlockingQueue<Optional<CompileCommand>> input, final BlockingQueue<Optional<List<String>>> output,
+            final AtomicInteger runningGenerators) throws InterruptedException {
+        Optional<CompileCommand> compileCommand;
+        while ((compileCommand = input.take()).isPresent()) {
+            output.put(Optional.of(dependencyGenerator.generate(compileCommand.get(), workerIndex)));
+        }
+        if (runningGenerators.decrementAndGet() == 0) {
+            output.put(Optional.empty());
+        }
+    }
+
+    // Batches are handed on when full, or as soon as no more paths arrive for a moment, so package lookups don't wait on slow compiles
+    private void dedupDependencyFiles(final BlockingQueue<Optional<List<String>>> input, final BlockingQueue<Optional<List<DependencyFile>>> output) throws InterruptedException {
+        List<DependencyFile> batch = new ArrayList<>();
+        while (true) {
+            final Optional<List<String>> dependencyFilePaths = input.poll(BATCH_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+            if (dependencyFilePaths == null || !dependencyFilePaths.isPresent() || batch.size() >= RESOLUTION_BATCH_SIZE) {
+                if (!batch.isEmpty()) {
+                    output.put(Optional.of(batch));
+                    batch = new ArrayList<>();
+                }
+            }
+            if (dependencyFilePaths == null) {
+                continue;
+            }
+            if (!dependencyFilePaths.isPresent()) {
+                break;
+            }
+            batch.addAll(dependencyFileFilter.filter(dependencyFilePaths.get()));
+        }
+        for (int i = 0; i < resolverThreads; i++) {
+            output.put(Optional.empty());
+        }
+    }
+
+    private void resolvePackages(final BlockingQueue<Optional<List<DependencyFile>>> input, final BlockingQueue<Optional<Set<PackageDetails>>> output, final Set<File> filesForIScan,
+            final AtomicInteger runningResolvers) throws InterruptedException {
+        Optional<List<DependencyFile>> dependencyFiles;
+        while ((dependencyFiles = input.take()).isPresent()) {
+            // Package managers add to the set they're given without locking, so each batch gets its own
+            final Set<File> batchFilesForIScan = new HashSet<>();
+            output.put(Optional.of(packageResolver.resolve(dependencyFiles.get(), batchFilesForIScan)));
+            filesForIScan.addAll(batchFilesForIScan);
+        }
+        if (runningResolvers.decrementAndGet() == 0) {
+            output.put(Optional.empty());
+        }
+    }
+
+    private void emitPackages(final BlockingQueue<Optional<Set<PackageDetails>>> input) throws InterruptedException {
+        Optional<Set<PackageDetails>> packages;
+        while ((packages = input.take()).isPresent()) {
+            packageSink.accept(packages.get());
+        }
+    }
+
+    // A failed generator stage stops taking compile commands, so this gives up rather than waiting forever for room
+    private <T> boolean putUnlessFailed(final BlockingQueue<T> queue, final T item) throws InterruptedException {
+        while (error.get() == null) {
+            if (queue.offer(item, BATCH_FLUSH_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void runStage(final Stage stage) {
+        try {
+            stage.run();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final Throwable e) {
+            // Errors too: a stage that dies without recording it leaves the stages after it waiting on their queues forever
+            if (error.compareAndSet(null, e)) {
+                logger.error(String.format("Extraction pipeline stage failed: %s", e.getMessage()));
+            }
+        }
+    }
+
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+}
@@ -0,0 +1,401 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Finds a compile command's dependencies by following its #include directives, without running the compiler.
+// Returns nothing (so the caller can compile instead) whenever the result might differ from the compiler's: computed includes,
+// includes that can't be resolved, unsupported preprocessor options, and includes inside #if blocks (other than include guards), in project and system headers alike,
+// since which of them the compiler follows depends on macros the scanner doesn't evaluate.
+public class IncludeScanner {
+    // Matched by prefix, since most of them also come joined to their value (--sysroot=/x, -isysroot/x); these also keep the sysroot out of CompilerSearchPath's probe
+    private static final List<String> UNSUPPORTED_OPTION_PREFIXES = Arrays.asList("-I-", "-imacros", "--sysroot", "-isysroot", "-iprefix", "-iwithprefix", "-nostdinc++", "-nostdlibinc",
+            "-nobuiltininc", "--gcc-toolchain", "-B");
+    private static final String NO_SYSTEM_INCLUDE_DIRS_OPTION = "-nostdinc";
+    private static final String FORCED_INCLUDE_OPTION = "-include";
+    private static final String QUOTE_DIR_OPTION = "-iquote";
+    private static final String SYSTEM_DIR_OPTION = "-isystem";
+    private static final String AFTER_DIR_OPTION = "-idirafter";
+    private static final String INCLUDE_DIR_OPTION = "-I";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Function<CompileCommand, Optional<List<String>>> systemIncludeDirs;
+    // Shared by all compile commands: each file is only read once, and each include is only looked up once per distinct search path
+    private final Map<String, Optional<ParsedFile>> parsedFiles = new ConcurrentHashMap<>();
+    private final Map<String, Optional<ResolvedInclude>> resolvedIncludes = new ConcurrentHashMap<>();
+    private final Map<List<SearchDir>, Integer> searchPathIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSearchPathId = new AtomicInteger();
+
+    public IncludeScanner(final List<String> systemIncludeDirs) {
+        this(compileCommand -> Optional.of(systemIncludeDirs));
+    }
+
+    // Gets the system include dirs for each compile command, e.g. from the compiler itself (see CompilerSearchPath); empty means they aren't known
+    public IncludeScanner(final Function<CompileCommand, Optional<List<String>>> systemIncludeDirs) {
+        this.systemIncludeDirs = systemIncludeDirs;
+    }
+
+    public Optional<List<String>> scan(final CompileCommand compileCommand) {
+        final File directory = new File(compileCommand.getDirectory());
+        final List<SearchDir> searchPath = new ArrayList<>();
+        final List<String> forcedIncludes = new ArrayList<>();
+        if (!parseOptions(compileCommand, directory, searchPath, forcedIncludes)) {
+            return Optional.empty();
+        }
+        final int searchPathId = searchPathIds.computeIfAbsent(searchPath, key -> nextSearchPathId.getAndIncrement());
+        final File sourceFile = resolve(directory, compileCommand.getFile());
+        final Set<String> dependencyFilePaths = new LinkedHashSet<>();
+        dependencyFilePaths.add(sourceFile.getPath());
+        final Deque<ResolvedInclude> filesToScan = new ArrayDeque<>();
+        filesToScan.add(new ResolvedInclude(sourceFile, -1));
+        for (final String forcedInclude : forcedIncludes) {
+            final Optional<ResolvedInclude> resolvedForcedInclude = resolveInclude(searchPath, searchPathId, directory, forcedInclude, false, 0);
+            if (!resolvedForcedInclude.isPresent()) {
+                logger.debug(String.format("Unable to resolve forced include %s for %s; it will be compiled instead", forcedInclude, compileCommand.getFile()));
+                return Optional.empty();
+            }
+            if (dependencyFilePaths.add(resolvedForcedInclude.get().file.getPath())) {
+                filesToScan.add(resolvedForcedInclude.get());
+            }
+        }
+        while (!filesToScan.isEmpty()) {
+            final ResolvedInclude includingFile = filesToScan.pop();
+            final Optional<ParsedFile> parsedFile = getParsedFile(includingFile.file);
+            if (!parsedFile.isPresent() || parsedFile.get().hasComputedInclude) {
+                logger.debug(String.format("Unable to scan %s; %s will be compiled instead", includingFile.file.getPath(), compileCommand.getFile()));
+                return Optional.empty();
+            }
+            for (final IncludeDirective include : parsedFile.get().includes) {
+                if (include.conditional) {
+                    logger.debug(String.format("%s conditionally includes %s; %s will be compiled instead", includingFile.file.getPath(), include.name, compileCommand.getFile()));
+                    return Optional.empty();
+                }
+                final File includingDir = include.angled ? null : includingFile.file.getParentFile();
+                final int firstSearchDirIndex = include.next ? includingFile.searchDirIndex + 1 : 0;
+                final Optional<ResolvedInclude> resolvedInclude = resolveInclude(searchPath, searchPathId, includingDir, include.name, include.angled, firstSearchDirIndex);
+                if (!resolvedInclude.isPresent()) {
+                    logger.debug(String.format("Unable to resolve %s (included by %s); %s will be compiled instead", include.name, includingFile.file.getPath(), compileCommand.getFile()));
+                    return Optional.empty();
+                }
+                if (dependencyFilePaths.add(resolvedInclude.get().file.getPath())) {
+                    filesToScan.add(resolvedInclude.get());
+                }
+            }
+        }
+        logger.debug(String.format("Scanned %d dependencies for %s", dependencyFilePaths.size(), compileCommand.getFile()));
+        return Optional.of(new ArrayList<>(dependencyFilePaths));
+    }
+
+    // Builds the search path in the order gcc and clang use: -iquote, -I, -isystem, the system include dirs, then -idirafter
+    private boolean parseOptions(final CompileCommand compileCommand, final File directory, final List<SearchDir> searchPath, final List<String> forcedIncludes) {
+        final List<SearchDir> quoteDirs = new ArrayList<>();
+        final List<SearchDir> includeDirs = new ArrayList<>();
+        final List<SearchDir> userSystemDirs = new ArrayList<>();
+        final List<SearchDir> afterDirs = new ArrayList<>();
+        boolean useSystemIncludeDirs = true;
+        final List<String> commandParts = compileCommand.getArguments();
+        for (int i = 1; i < commandParts.size(); i++) {
+            final String commandPart = commandParts.get(i);
+            if (isUnsupportedOption(commandPart)) {
+                logger.debug(String.format("Compile command for %s uses %s; it will be compiled instead", compileCommand.getFile(), commandPart));
+                return false;
+            }
+            if (NO_SYSTEM_INCLUDE_DIRS_OPTION.equals(commandPart)) {
+                useSystemIncludeDirs = false;
+                continue;
+            }
+            final String option = getPathOption(commandPart);
+            if (option == null) {
+                continue;
+            }
+            String value = commandPart.substring(option.length());
+            if (value.isEmpty() && i + 1 < commandParts.size()) {
+                value = commandParts.get(++i);
+            }
+            if (FORCED_INCLUDE_OPTION.equals(option)) {
+                forcedIncludes.add(value);
+            } else if (QUOTE_DIR_OPTION.equals(option)) {
+                quoteDirs.add(new SearchDir(resolve(directory, value), true));
+            } else if (SYSTEM_DIR_OPTION.equals(option)) {
+                userSystemDirs.add(new SearchDir(resolve(directory, value), false));
+            } else if (AFTER_DIR_OPTION.equals(option)) {
+                afterDirs.add(new SearchDir(resolve(directory, value), false));
+            } else {
+                includeDirs.add(new SearchDir(resolve(directory, value), false));
+            }
+        }
+        searchPath.addAll(quoteDirs);
+        searchPath.addAll(includeDirs);
+        searchPath.addAll(userSystemDirs);
+        if (useSystemIncludeDirs) {
+            final Optional<List<String>> compilerSystemIncludeDirs = systemIncludeDirs.apply(compileCommand);
+            if (!compilerSystemIncludeDirs.isPresent()) {
+                logger.debug(String.format("System include dirs for %s are unknown; it will be compiled instead", compileCommand.getFile()));
+                return false;
+            }
+            for (final String systemIncludeDir : compilerSystemIncludeDirs.get()) {
+                searchPath.add(new SearchDir(new File(systemIncludeDir), false));
+            }
+        }
+        searchPath.addAll(afterDirs);
+        return true;
+    }
+
+    private boolean isUnsupportedOption(final String commandPart) {
+        for (final String prefix : UNSUPPORTED_OPTION_PREFIXES) {
+            if (commandPart.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String getPathOption(final String commandPart) {
+        for (final String option : Arrays.asList(FORCED_INCLUDE_OPTION, QUOTE_DIR_OPTION, SYSTEM_DIR_OPTION, AFTER_DIR_OPTION, INCLUDE_DIR_OPTION)) {
+            if (commandPart.startsWith(option)) {
+                return option;
+            }
+        }
+        return null;
+    }
+
+    private Optional<ResolvedInclude> resolveInclude(final List<SearchDir> searchPath, final int searchPathId, final File includingDir, final String name, final boolean angled,
+            final int firstSearchDirIndex) {
+        final String key = String.format("%d|%d|%s|%s", searchPathId, firstSearchDirIndex, includingDir == null ? "" : includingDir.getPath(), name);
+        return resolvedIncludes.computeIfAbsent(key, k -> lookUpInclude(searchPath, includingDir, name, angled, firstSearchDirIndex));
+    }
+
+    private Optional<ResolvedInclude> lookUpInclude(final List<SearchDir> searchPath, final File includingDir, final String name, final boolean angled, final int firstSearchDirIndex) {
+        final File nameAsFile = new File(name);
+        if (nameAsFile.isAbsolute()) {
+            return nameAsFile.isFile() ? Optional.of(new ResolvedInclude(nameAsFile, -1)) : Optional.empty();
+        }
+        if (!angled && includingDir != null && firstSearchDirIndex == 0) {
+            final File candidate = resolve(includingDir, name);
+            if (candidate.isFile()) {
+                return Optional.of(new ResolvedInclude(candidate, -1));
+            }
+        }
+        for (int i = firstSearchDirIndex; i < searchPath.size(); i++) {
+            final SearchDir searchDir = searchPath.get(i);
+            if (angled && searchDir.quoteOnly) {
+                continue;
+            }
+            final File candidate = resolve(searchDir.dir, name);
+            if (candidate.isFile()) {
+                return Optional.of(new ResolvedInclude(candidate, i));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Optional<ParsedFile> getParsedFile(final File file) {
+        final Optional<ParsedFile> parsedFile = parsedFiles.get(file.getPath());
+        if (parsedFile != null) {
+            return parsedFile;
+        }
+        // Parse outside of computeIfAbsent so that threads reading different files don't block each other
+        final Optional<ParsedFile> newParsedFile = parse(file);
+        parsedFiles.putIfAbsent(file.getPath(), newParsedFile);
+        return newParsedFile;
+    }
+
+    private Optional<ParsedFile> parse(final File file) {
+        final String contents;
+        try {
+            contents = FileUtils.readFileToString(file, StandardCharsets.ISO_8859_1);
+        } catch (final IOException e) {
+            logger.debug(String.format("Error reading %s: %s", file.getPath(), e.getMessage()));
+            return Optional.empty();
+        }
+        final ParsedFile parsedFile = new ParsedFile();
+        int conditionalDepth = 0;
+        int guardDepth = 0;
+        int directiveCount = 0;
+        String guardMacro = null;
+        for (final String line : removeComments(contents.replace("\\\r\n", "").replace("\\\n", "")).split("\n")) {
+            final String trimmedLine = line.trim();
+            if (!trimmedLine.startsWith("#")) {
+                continue;
+            }
+            final String directiveLine = trimmedLine.substring(1).trim();
+            final String directive = directiveLine.split("[\\s<\"(]", 2)[0];
+            final String argument = directiveLine.substring(directive.length()).trim();
+            directiveCount++;
+            if ("include".equals(directive) || "import".equals(directive) || "include_next".equals(directive)) {
+                addInclude(parsedFile, argument, conditionalDepth > guardDepth, "include_next".equals(directive));
+            } else if ("if".equals(directive) || "ifdef".equals(directive) || "ifndef".equals(directive)) {
+                conditionalDepth++;
+                if (directiveCount == 1 && "ifndef".equals(directive)) {
+                    guardMacro = argument;
+                }
+            } else if ("define".equals(directive) && directiveCount == 2 && guardMacro != null && argument.equals(guardMacro)) {
+                // The usual include guard (#ifndef X / #define X ... #endif) wraps the whole file, so it doesn't make the includes inside it conditional
+                guardDepth = 1;
+            } else if ("endif".equals(directive)) {
+                conditionalDepth--;
+                if (conditionalDepth < guardDepth) {
+                    guardDepth = 0;
+                }
+            }
+        }
+        return Optional.of(parsedFile);
+    }
+
+    private void addInclude(final ParsedFile parsedFile, final String argument, final boolean conditional, final boolean next) {
+        final char delimiter = argument.isEmpty() ? ' ' : argument.charAt(0);
+        final int endIndex = delimiter == '<' ? argument.indexOf('>', 1) : delimiter == '"' ? argument.indexOf('"', 1) : -1;
+        if (endIndex < 0) {
+            parsedFile.hasComputedInclude = true;
+            return;
+        }
+        parsedFile.includes.add(new IncludeDirective(argument.substring(1, endIndex), delimiter == '<', conditional, next));
+    }
+
+    private String removeComments(final String contents) {
+        final StringBuilder uncommented = new StringBuilder(contents.length());
+        int i = 0;
+        while (i < contents.length()) {
+            final char c = contents.charAt(i);
+            if (c == '/' && i + 1 < contents.length() && contents.charAt(i + 1) == '*') {
+                final int commentEnd = contents.indexOf("*/", i + 2);
+                final int end = commentEnd < 0 ? contents.length() : commentEnd + 2;
+                // Keep the newlines so that a directive after a multi-line comment still starts its own line
+                for (int j = i; j < end; j++) {
+                    if (contents.charAt(j) == '\n') {
+                        uncommented.append('\n');
+                    }
+                }
+                uncommented.append(' ');
+                i = end;
+            } else if (c == '/' && i + 1 < contents.length() && contents.charAt(i + 1) == '/') {
+                final int lineEnd = contents.indexOf('\n', i);
+                i = lineEnd < 0 ? contents.length() : lineEnd;
+            } else if (c == '"' || c == '\'') {
+                final int literalEnd = findLiteralEnd(contents, i);
+                uncommented.append(contents, i, literalEnd);
+                i = literalEnd;
+            } else {
+                uncommented.append(c);
+                i++;
+            }
+        }
+        return uncommented.toString();
+    }
+
+    private int findLiteralEnd(final String contents, final int start) {
+        final char quote = contents.charAt(start);
+        int i = start + 1;
+        while (i < contents.length()) {
+            final char c = contents.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote || c == '\n') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return contents.length();
+    }
+
+    private File resolve(final File dir, final String path) {
+        final File file = new File(path);
+        if (file.isAbsolute()) {
+            return file.toPath().normalize().toFile();
+        }
+        return new File(dir, path).toPath().toAbsolutePath().normalize().toFile();
+    }
+
+    private static class SearchDir {
+        private final File dir;
+        private final boolean quoteOnly;
+
+        private SearchDir(final File dir, final boolean quoteOnly) {
+            this.dir = dir;
+            this.quoteOnly = quoteOnly;
+        }
+
+        @Override
+        public int hashCode() {
+            return dir.hashCode() * 2 + (quoteOnly ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof SearchDir)) {
+                return false;
+            }
+            final SearchDir other = (SearchDir) obj;
+            return dir.equals(other.dir) && quoteOnly == other.quoteOnly;
+        }
+    }
+
+    private static class ResolvedInclude {
+        private final File file;
+        private final int searchDirIndex;
+
+        private ResolvedInclude(final File file, final int searchDirIndex) {
+            this.file = file;
+            this.searchDirIndex = searchDirIndex;
+        }
+    }
+
+    private static class IncludeDirective {
+        private final String name;
+        private final boolean angled;
+        private final boolean conditional;
+        private final boolean next;
+
+        private IncludeDirective(final String name, final boolean angled, final boolean conditional, final boolean next) {
+            this.name = name;
+            this.angled = angled;
+            this.conditional = conditional;
+            this.next = next;
+        }
+    }
+
+    private static class ParsedFile {
+        private final List<IncludeDirective> includes = new ArrayList<>();
+        private boolean hasComputedInclude;
+    }
+}
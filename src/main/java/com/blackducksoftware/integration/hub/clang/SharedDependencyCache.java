@@ -0,0 +1,269 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+// A dependency cache in a directory shared by many machines (e.g. an NFS mount), addressed by content rather than by mtime.
+// Each compile command (plus its source file's content) hashes to a manifest listing the dependency lists seen for it, each with the content hashes
+// of the headers it was computed from; a list is reused when all of those headers still have the same content.
+// Manifests are replaced by atomic rename, so concurrent writers can lose each other's entries but never corrupt one.
+public class SharedDependencyCache {
+    private static final int CACHE_FORMAT_VERSION = 1;
+    private static final int MAX_ENTRIES_PER_MANIFEST = 8;
+    private static final String MANIFEST_SUFFIX = ".json";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final long STALE_TEMP_FILE_AGE_MILLIS = 60L * 60L * 1000L;
+    private static final String MISSING_FILE_HASH = "missing";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final File cacheDir;
+    private final long maxSizeBytes;
+    private final Map<String, String> contentHashes = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public SharedDependencyCache(final File cacheDir, final long maxSizeBytes) {
+        this.cacheDir = cacheDir;
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    public Optional<List<String>> get(final CompileCommand compileCommand) {
+        final File manifestFile = getManifestFile(compileCommand);
+        final Optional<Manifest> manifest = readManifest(manifestFile);
+        if (manifest.isPresent()) {
+            for (final ManifestEntry entry : manifest.get().entries) {
+                if (inputsUnchanged(compileCommand, entry)) {
+                    hits.incrementAndGet();
+                    // Recently used manifests survive eviction
+                    manifestFile.setLastModified(System.currentTimeMillis());
+                    return Optional.of(entry.dependencyFilePaths);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    public void put(final CompileCommand compileCommand, final List<String> dependencyFilePaths) {
+        final ManifestEntry newEntry = new ManifestEntry();
+        newEntry.dependencyFilePaths = new ArrayList<>(dependencyFilePaths);
+        newEntry.inputs = new ArrayList<>(dependencyFilePaths.size());
+        for (final String dependencyFilePath : dependencyFilePaths) {
+            if (StringUtils.isNotBlank(dependencyFilePath)) {
+                final ContentHash input = new ContentHash();
+                input.path = dependencyFilePath;
+                input.sha256 = getContentHash(compileCommand.getDirectory(), dependencyFilePath);
+                newEntry.inputs.add(input);
+            }
+        }
+        final File manifestFile = getManifestFile(compileCommand);
+        final Manifest manifest = readManifest(manifestFile).orElseGet(Manifest::new);
+        manifest.version = CACHE_FORMAT_VERSION;
+        manifest.entries.add(0, newEntry);
+        while (manifest.entries.size() > MAX_ENTRIES_PER_MANIFEST) {
+            manifest.entries.remove(manifest.entries.size() - 1);
+        }
+        writeAtomically(manifestFile, new Gson().toJson(manifest));
+    }
+
+    // Deletes the least recently used manifests until the cache fits in its size limit
+    public void evict() {
+        logger.info(String.format("Shared dependency cache: %d hits, %d misses", hits.get(), misses.get()));
+        final Collection<File> cacheFiles = FileUtils.listFiles(cacheDir, null, true);
+        final List<File> manifestFiles = new ArrayList<>(cacheFiles.size());
+        long totalSize = 0L;
+        final long now = System.currentTimeMillis();
+        for (final File cacheFile : cacheFiles) {
+            if (cacheFile.getName().endsWith(TEMP_FILE_SUFFIX)) {
+                // Left behind by a writer that died before renaming it
+                if (now - cacheFile.lastModified() > STALE_TEMP_FILE_AGE_MILLIS) {
+                    FileUtils.deleteQuietly(cacheFile);
+                }
+            } else if (cacheFile.getName().endsWith(MANIFEST_SUFFIX)) {
+                manifestFiles.add(cacheFile);
+                totalSize += cacheFile.length();
+            }
+        }
+        if (totalSize <= maxSizeBytes) {
+            return;
+        }
+        manifestFiles.sort(Comparator.comparingLong(File::lastModified));
+        int evictedCount = 0;
+        for (final File manifestFile : manifestFiles) {
+            if (totalSize <= maxSizeBytes) {
+                break;
+            }
+            totalSize -= manifestFile.length();
+            FileUtils.deleteQuietly(manifestFile);
+            evictedCount++;
+        }
+        logger.info(String.format("Evicted %d entries from shared dependency cache %s", evictedCount, cacheDir.getAbsolutePath()));
+    }
+
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    private File getManifestFile(final CompileCommand compileCommand) {
+        final String sourceHash = getContentHash(compileCommand.getDirectory(), compileCommand.getFile());
+        final String key = sha256(String.format("%s\n%s\n%s\n%s", compileCommand.getDirectory(), compileCommand.getCommand(), compileCommand.getFile(), sourceHash).getBytes(StandardCharsets.UTF_8));
+        return new File(new File(cacheDir, key.substring(0, 2)), key + MANIFEST_SUFFIX);
+    }
+
+    private Optional<Manifest> readManifest(final File manifestFile) {
+        if (!manifestFile.exists()) {
+            return Optional.empty();
+        }
+        try {
+            final Manifest manifest = new Gson().fromJson(FileUtils.readFileToString(manifestFile, StandardCharsets.UTF_8), Manifest.class);
+            if (manifest == null || manifest.version != CACHE_FORMAT_VERSION || manifest.entries == null) {
+                return Optional.empty();
+            }
+            return Optional.of(manifest);
+        } catch (IOException | JsonParseException e) {
+            // Possibly evicted by another machine between the exists check and the read
+            logger.debug(String.format("Error reading shared dependency cache entry %s: %s", manifestFile.getAbsolutePath(), e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    private boolean inputsUnchanged(final CompileCommand compileCommand, final ManifestEntry entry) {
+        if (entry.inputs == null || entry.dependencyFilePaths == null) {
+            return false;
+        }
+        for (final ContentHash input : entry.inputs) {
+            if (!getContentHash(compileCommand.getDirectory(), input.path).equals(input.sha256)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeAtomically(final File file, final String contents) {
+        final File tempFile = new File(file.getParentFile(), String.format("%s.%s%s", file.getName(), UUID.randomUUID(), TEMP_FILE_SUFFIX));
+        try {
+            FileUtils.writeStringToFile(tempFile, contents, StandardCharsets.UTF_8);
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (final IOException e) {
+            logger.warn(String.format("Error writing shared dependency cache entry %s: %s", file.getAbsolutePath(), e.getMessage()));
+            FileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    // Headers are shared by many compile commands, so each is hashed at most once per run
+    private String getContentHash(final String directory, final String path) {
+        File file = new File(path);
+        if (!file.isAbsolute() && directory != null) {
+            file = new File(directory, path);
+        }
+        return contentHashes.computeIfAbsent(file.getAbsolutePath(), absolutePath -> {
+            final File hashedFile = new File(absolutePath);
+            if (!hashedFile.isFile()) {
+                return MISSING_FILE_HASH;
+            }
+            try (InputStream inputStream = new FileInputStream(hashedFile)) {
+                final MessageDigest digest = createDigest();
+                final byte[] buffer = new byte[64 * 1024];
+                int bytesRead;
+                while ((bytesRead = inputStream.read(buffer)) != -1) {
+                    digest.update(buffer, 0, bytesRead);
+                }
+                return toHex(digest.digest());
+            } catch (final IOException e) {
+                logger.debug(String.format("Error hashing %s: %s", absolutePath, e.getMessage()));
+                return MISSING_FILE_HASH;
+            }
+        });
+    }
+
+    private String sha256(final byte[] bytes) {
+        return toHex(createDigest().digest(bytes));
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static class Manifest {
+        private int version;
+        private List<ManifestEntry> entries = new ArrayList<>();
+    }
+
+    private static class ManifestEntry {
+        private List<ContentHash> inputs;
+        private List<String> dependencyFilePaths;
+    }
+
+    private static class ContentHash {
+        private String path;
+        private String sha256;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.depfinder;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.DependencyFileParser;
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
+
+@Component
+public class ClangScanDeps implements DependencyFinder {
+    private static final String DEPENDENCY_FINDER_NAME = "clang-scan-deps";
+    private static final String VERSION_COMMAND = "clang-scan-deps --version";
+    private static final String EXPECTED_TEXT = "LLVM version";
+    private static final String SCAN_COMMAND_PATTERN = "clang-scan-deps -compilation-database %s -format make";
+    private static final String THREADS_OPTION_PATTERN = " -j %d";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Value("${compile.threads:1}")
+    private int compileThreads;
+
+    @Override
+    public String getDependencyFinderName() {
+        return DEPENDENCY_FINDER_NAME;
+    }
+
+    @Override
+    public Set<String> getDependencyFilePaths(final Executor executor, final File compileCommandsJsonFile, final File workingDir) throws ExecutableRunnerException, IntegrationException {
+        String scanCommand = String.format(SCAN_COMMAND_PATTERN, CommandLine.quote(compileCommandsJsonFile.getAbsolutePath()));
+        if (compileThreads > 1) {
+            scanCommand += String.format(THREADS_OPTION_PATTERN, compileThreads);
+        }
+        final String scanOutput = executor.execute(workingDir, null, scanCommand);
+        logger.trace(String.format("scanOutput: %s", scanOutput));
+        return new HashSet<>(DependencyFileParser.parse(scanOutput));
+    }
+
+    @Override
+    public String getCheckPresenceCommand() {
+        return VERSION_COMMAND;
+    }
+
+    @Override
+    public String getCheckPresenceCommandOutputExpectedText() {
+        return EXPECTED_TEXT;
+    }
+
+    @Override
+    public Logger getLogger() {
+        return logger;
+    }
+}
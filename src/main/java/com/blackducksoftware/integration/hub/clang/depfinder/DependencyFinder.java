@@ -0,0 +1,63 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.depfinder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Set;
+
+import org.slf4j.Logger;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
+
+// Finds the dependencies of every compile command in a compilation database in one go, as an alternative to compiling each command with -M
+public interface DependencyFinder {
+
+    default boolean applies(final Executor executor) {
+        try {
+            final String versionOutput = executor.execute(new File("."), new HashMap<String, String>(), getCheckPresenceCommand());
+            getLogger().debug(String.format("versionOutput: %s", versionOutput));
+            if (versionOutput.contains(getCheckPresenceCommandOutputExpectedText())) {
+                getLogger().info(String.format("Found dependency finder %s", getDependencyFinderName()));
+                return true;
+            }
+            getLogger().debug(String.format("Output of %s does not look right; concluding that %s is not present. The output: %s", getCheckPresenceCommand(), getDependencyFinderName(), versionOutput));
+        } catch (ExecutableRunnerException | IntegrationException e) {
+            getLogger().debug(String.format("Error executing %s; concluding that %s is not present. The error: %s", getCheckPresenceCommand(), getDependencyFinderName(), e.getMessage()));
+        }
+        return false;
+    }
+
+    String getDependencyFinderName();
+
+    Set<String> getDependencyFilePaths(Executor executor, File compileCommandsJsonFile, File workingDir) throws ExecutableRunnerException, IntegrationException;
+
+    String getCheckPresenceCommand();
+
+    String getCheckPresenceCommandOutputExpectedText();
+
+    Logger getLogger();
+}
@@ -0,0 +1,158 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.execute;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Limits how many heavy commands run at once, between minLimit and maxLimit, following the host's load.
+// At most once per sample interval it reads the 1 minute load average and available memory from /proc (procDir):
+// the limit drops by one while load per CPU is above HIGH_LOAD_PER_CPU or available memory is below LOW_MEMORY_FRACTION,
+// and rises by one while both are comfortably clear of those marks. Without readable /proc files the limit stays where it is.
+public class AdaptiveConcurrencyLimiter {
+    private static final long SAMPLE_INTERVAL_MILLIS = 2000L;
+    private static final double HIGH_LOAD_PER_CPU = 1.0;
+    private static final double LOW_LOAD_PER_CPU = 0.75;
+    private static final double LOW_MEMORY_FRACTION = 0.1;
+    private static final double COMFORTABLE_MEMORY_FRACTION = 0.2;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final File procDir;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int cpuCount;
+    private int limit;
+    private int inFlight;
+    private long lastSampleMillis = Long.MIN_VALUE;
+
+    public AdaptiveConcurrencyLimiter(final File procDir, final int minLimit, final int maxLimit) {
+        this(procDir, minLimit, maxLimit, Runtime.getRuntime().availableProcessors());
+    }
+
+    AdaptiveConcurrencyLimiter(final File procDir, final int minLimit, final int maxLimit, final int cpuCount) {
+        this.procDir = procDir;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.cpuCount = Math.max(1, cpuCount);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, this.cpuCount));
+    }
+
+    public synchronized void acquire() throws InterruptedException {
+        adjust(System.currentTimeMillis());
+        while (inFlight >= limit) {
+            wait(SAMPLE_INTERVAL_MILLIS);
+            adjust(System.currentTimeMillis());
+        }
+        inFlight++;
+    }
+
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    synchronized void adjust(final long nowMillis) {
+        if (lastSampleMillis != Long.MIN_VALUE && nowMillis - lastSampleMillis < SAMPLE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastSampleMillis = nowMillis;
+        final Optional<Double> loadPerCpu = readLoadAverage().map(loadAverage -> loadAverage / cpuCount);
+        final Optional<Double> availableMemoryFraction = readAvailableMemoryFraction();
+        if (!loadPerCpu.isPresent() && !availableMemoryFraction.isPresent()) {
+            return;
+        }
+        final boolean overloaded = loadPerCpu.orElse(0.0) > HIGH_LOAD_PER_CPU || availableMemoryFraction.orElse(1.0) < LOW_MEMORY_FRACTION;
+        final boolean underloaded = loadPerCpu.orElse(0.0) < LOW_LOAD_PER_CPU && availableMemoryFraction.orElse(1.0) > COMFORTABLE_MEMORY_FRACTION;
+        final int previousLimit = limit;
+        if (overloaded && limit > minLimit) {
+            limit--;
+        } else if (underloaded && limit < maxLimit) {
+            limit++;
+            notifyAll();
+        }
+        if (limit != previousLimit) {
+            logger.debug(String.format("Concurrency limit %d -> %d (load per CPU: %s; available memory: %s)", previousLimit, limit, loadPerCpu.map(String::valueOf).orElse("unknown"),
+                    availableMemoryFraction.map(String::valueOf).orElse("unknown")));
+        }
+    }
+
+    private Optional<Double> readLoadAverage() {
+        final Optional<List<String>> lines = readProcFile("loadavg");
+        if (!lines.isPresent() || lines.get().isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Double.parseDouble(StringUtils.split(lines.get().get(0))[0]));
+        } catch (final NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return Optional.empty();
+        }
+    }
+
+    private Optional<Double> readAvailableMemoryFraction() {
+        final Optional<List<String>> lines = readProcFile("meminfo");
+        if (!lines.isPresent()) {
+            return Optional.empty();
+        }
+        long totalKb = -1L;
+        long availableKb = -1L;
+        for (final String line : lines.get()) {
+            final String[] fields = StringUtils.split(line);
+            if (fields.length < 2) {
+                continue;
+            }
+            try {
+                if ("MemTotal:".equals(fields[0])) {
+                    totalKb = Long.parseLong(fields[1]);
+                } else if ("MemAvailable:".equals(fields[0])) {
+                    availableKb = Long.parseLong(fields[1]);
+                }
+            } catch (final NumberFormatException e) {
+                return Optional.empty();
+            }
+        }
+        if (totalKb <= 0L || availableKb < 0L) {
+            return Optional.empty();
+        }
+        return Optional.of((double) availableKb / totalKb);
+    }
+
+    private Optional<List<String>> readProcFile(final String name) {
+        try {
+            return Optional.of(FileUtils.readLines(new File(procDir, name), StandardCharsets.UTF_8));
+        } catch (final IOException e) {
+            return Optional.empty();
+        }
+    }
+}
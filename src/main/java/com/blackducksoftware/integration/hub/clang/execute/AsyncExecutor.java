@@ -0,0 +1,49 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.execute;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Non-blocking counterpart to Executor. Commands are run with bounded concurrency, limited separately for heavy work (compiles)
+// and light work (package manager queries) so that a backlog of one doesn't hold up the other.
+// Failures complete the future exceptionally with the ExecutableRunnerException or IntegrationException as the cause.
+public interface AsyncExecutor {
+
+    enum Weight {
+        HEAVY,
+        LIGHT
+    }
+
+    CompletableFuture<String> executeAsync(Weight weight, File workingDir, Map<String, String> environmentVariables, String cmd);
+
+    CompletableFuture<Void> executeAsync(Weight weight, File workingDir, Map<String, String> environmentVariables, String cmd, Consumer<String> standardOutputLineConsumer);
+
+    // For work that runs commands through a blocking Executor along with processing of its own
+    <T> CompletableFuture<T> supplyAsync(Weight weight, Supplier<T> task);
+
+}
@@ -0,0 +1,105 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.execute;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Commands are passed around as strings in /bin/sh syntax, the form compile_commands.json's "command" uses: split splits one into arguments
+// the way sh would for a simple command (quotes and backslashes; no expansions), and quote makes an argument survive that split
+public class CommandLine {
+    private static final Pattern SAFE_ARGUMENT = Pattern.compile("[A-Za-z0-9_@%+=:,./-]+");
+    private static final String DOUBLE_QUOTE_ESCAPABLE = "$`\"\\\n";
+
+    private CommandLine() {
+    }
+
+    public static String[] split(final String command) {
+        final List<String> arguments = new ArrayList<>();
+        final StringBuilder argument = new StringBuilder();
+        boolean inArgument = false;
+        for (int i = 0; i < command.length(); i++) {
+            final char c = command.charAt(i);
+            if (c == '\'') {
+                final int end = command.indexOf('\'', i + 1);
+                final int closingIndex = end < 0 ? command.length() : end;
+                argument.append(command, i + 1, closingIndex);
+                i = closingIndex;
+                inArgument = true;
+            } else if (c == '"') {
+                i++;
+                while (i < command.length() && command.charAt(i) != '"') {
+                    if (command.charAt(i) == '\\' && i + 1 < command.length() && DOUBLE_QUOTE_ESCAPABLE.indexOf(command.charAt(i + 1)) >= 0) {
+                        i++;
+                    }
+                    argument.append(command.charAt(i++));
+                }
+                inArgument = true;
+            } else if (c == '\\') {
+                // A backslash before a newline continues the line
+                if (i + 1 < command.length() && command.charAt(i + 1) == '\n') {
+                    i++;
+                    continue;
+                }
+                if (i + 1 < command.length()) {
+                    argument.append(command.charAt(++i));
+                }
+                inArgument = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArgument) {
+                    arguments.add(argument.toString());
+                    argument.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                argument.append(c);
+                inArgument = true;
+            }
+        }
+        if (inArgument) {
+            arguments.add(argument.toString());
+        }
+        return arguments.toArray(new String[arguments.size()]);
+    }
+
+    // Arguments that need no quoting are left as they are, so most commands read the same either way
+    public static String quote(final String argument) {
+        if (SAFE_ARGUMENT.matcher(argument).matches()) {
+            return argument;
+        }
+        return String.format("'%s'", argument.replace("'", "'\\''"));
+    }
+
+    public static String join(final String[] arguments) {
+        final StringBuilder command = new StringBuilder();
+        for (final String argument : arguments) {
+            if (command.length() > 0) {
+                command.append(' ');
+            }
+            command.append(quote(argument));
+        }
+        return command.toString();
+    }
+}
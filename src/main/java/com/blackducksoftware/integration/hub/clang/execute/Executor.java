@@ -25,6 +25,7 @@ package com.blackducksoftware.integration.hub.clang.execute;
 
 import java.io.File;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
@@ -33,4 +34,22 @@ public interface Executor {
 
     String execute(File workingDir, Map<String, String> environmentVariables, String cmd) throws ExecutableRunnerException, IntegrationException;
 
+    // Hands each line of stdout to the consumer instead of returning it
+    default void execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final Consumer<String> standardOutputLineConsumer)
+            throws ExecutableRunnerException, IntegrationException {
+        final String output = execute(workingDir, environmentVariables, cmd);
+        for (final String line : output.split("\\r?\\n")) {
+            standardOutputLineConsumer.accept(line);
+        }
+    }
+
+    // For commands run only for what they do, such as compiling to a dependency file: their output is only wanted if they fail
+    default void executeForEffect(final File workingDir, final Map<String, String> environmentVariables, final String cmd) throws ExecutableRunnerException, IntegrationException {
+        execute(workingDir, environmentVariables, cmd);
+    }
+
+    // Stops the commands currently running, whose execute() calls then throw; later commands run normally
+    default void cancelAll() {
+    }
+
 }
@@ -0,0 +1,138 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.execute;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
+
+// Runs commands through an Executor on one fixed-size pool per Weight; the pool sizes are the concurrency limits.
+// Pools are started on first use, so a weight that's never used costs nothing.
+public class PooledAsyncExecutor implements AsyncExecutor, AutoCloseable {
+    private final Executor executor;
+    private final int heavyConcurrency;
+    private final int lightConcurrency;
+    private final Optional<AdaptiveConcurrencyLimiter> heavyLimiter;
+    private ExecutorService heavyPool;
+    private ExecutorService lightPool;
+
+    public PooledAsyncExecutor(final Executor executor, final int heavyConcurrency, final int lightConcurrency) {
+        this(executor, heavyConcurrency, lightConcurrency, Optional.empty());
+    }
+
+    // With a heavyLimiter, heavyConcurrency is the most heavy work that can run at once, and the limiter decides how much actually does
+    public PooledAsyncExecutor(final Executor executor, final int heavyConcurrency, final int lightConcurrency, final Optional<AdaptiveConcurrencyLimiter> heavyLimiter) {
+        this.executor = executor;
+        this.heavyConcurrency = Math.max(1, heavyConcurrency);
+        this.lightConcurrency = Math.max(1, lightConcurrency);
+        this.heavyLimiter = heavyLimiter;
+    }
+
+    @Override
+    public CompletableFuture<String> executeAsync(final Weight weight, final File workingDir, final Map<String, String> environmentVariables, final String cmd) {
+        return supplyAsync(weight, () -> {
+            try {
+                return executor.execute(workingDir, environmentVariables, cmd);
+            } catch (ExecutableRunnerException | IntegrationException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> executeAsync(final Weight weight, final File workingDir, final Map<String, String> environmentVariables, final String cmd, final Consumer<String> standardOutputLineConsumer) {
+        return supplyAsync(weight, () -> {
+            try {
+                executor.execute(workingDir, environmentVariables, cmd, standardOutputLineConsumer);
+                return null;
+            } catch (ExecutableRunnerException | IntegrationException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<T> supplyAsync(final Weight weight, final Supplier<T> task) {
+        if (weight != Weight.HEAVY || !heavyLimiter.isPresent()) {
+            return CompletableFuture.supplyAsync(task, getPool(weight));
+        }
+        final AdaptiveConcurrencyLimiter limiter = heavyLimiter.get();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                limiter.acquire();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return task.get();
+            } finally {
+                limiter.release();
+            }
+        }, getPool(weight));
+    }
+
+    // Work already submitted still runs
+    @Override
+    public synchronized void close() {
+        if (heavyPool != null) {
+            heavyPool.shutdown();
+        }
+        if (lightPool != null) {
+            lightPool.shutdown();
+        }
+    }
+
+    private synchronized ExecutorService getPool(final Weight weight) {
+        if (weight == Weight.HEAVY) {
+            if (heavyPool == null) {
+                heavyPool = createPool("Heavy Command Thread", heavyConcurrency);
+            }
+            return heavyPool;
+        }
+        if (lightPool == null) {
+            lightPool = createPool("Light Command Thread", lightConcurrency);
+        }
+        return lightPool;
+    }
+
+    private ExecutorService createPool(final String threadNamePrefix, final int threadCount) {
+        final AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(threadCount, runnable -> {
+            final Thread thread = new Thread(runnable, String.format("%s %d", threadNamePrefix, threadIndex.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
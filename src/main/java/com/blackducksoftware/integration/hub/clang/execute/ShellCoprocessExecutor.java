@@ -0,0 +1,303 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.execute;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.Executable.ErrorOutput;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunner;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
+
+// Runs commands in a small pool of long-lived /bin/sh processes instead of starting a new process from the JVM for each one.
+// Each command runs in a subshell with stdin from /dev/null, followed by marker lines on stdout (carrying the exit code) and on stderr
+// that show where its output ends. Commands are split into arguments by CommandLine, just as SimpleExecutor splits them, and each is quoted again.
+// Discarding stderr and timeouts work as they do in SimpleExecutor; a command that times out is killed along with its shell, which is replaced on its next use.
+public class ShellCoprocessExecutor implements Executor, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ShellCoprocessExecutor.class);
+    private static final long STDERR_MARKER_TIMEOUT_SECONDS = 60L;
+    private final String markerPrefix = String.format("__sb_clang_extractor_%s_", UUID.randomUUID().toString().replace("-", ""));
+    private final BlockingQueue<ShellCoprocess> idleCoprocesses;
+    private final List<ShellCoprocess> allCoprocesses = new ArrayList<>();
+    private final boolean errorOutputDiscarded;
+    private final long timeoutMillis;
+
+    public ShellCoprocessExecutor(final int coprocessCount) {
+        this(coprocessCount, false, 0L);
+    }
+
+    public ShellCoprocessExecutor(final int coprocessCount, final boolean errorOutputDiscarded, final long timeoutMillis) {
+        this.errorOutputDiscarded = errorOutputDiscarded;
+        this.timeoutMillis = timeoutMillis;
+        idleCoprocesses = new ArrayBlockingQueue<>(coprocessCount);
+        for (int i = 0; i < coprocessCount; i++) {
+            final ShellCoprocess coprocess = new ShellCoprocess();
+            allCoprocesses.add(coprocess);
+            idleCoprocesses.add(coprocess);
+        }
+    }
+
+    @Override
+    public String execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd) throws ExecutableRunnerException, IntegrationException {
+        final List<String> stdout = new ArrayList<>();
+        run(workingDir, environmentVariables, cmd, getErrorOutput(), stdout::add);
+        final String stdoutString = StringUtils.join(stdout, '\n').trim();
+        logger.trace(String.format("Command: '%s'; Output: %s", cmd, stdoutString));
+        return stdoutString;
+    }
+
+    @Override
+    public void execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final Consumer<String> standardOutputLineConsumer)
+            throws ExecutableRunnerException, IntegrationException {
+        run(workingDir, environmentVariables, cmd, getErrorOutput(), standardOutputLineConsumer);
+    }
+
+    // stderr goes to stdout, so the failure error carries both
+    @Override
+    public void executeForEffect(final File workingDir, final Map<String, String> environmentVariables, final String cmd) throws ExecutableRunnerException, IntegrationException {
+        run(workingDir, environmentVariables, cmd, ErrorOutput.MERGED, line -> {
+        });
+    }
+
+    // Killing a shell kills the command it's running; the shell is replaced on its next use
+    @Override
+    public void cancelAll() {
+        for (final ShellCoprocess coprocess : allCoprocesses) {
+            coprocess.kill();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (final ShellCoprocess coprocess : allCoprocesses) {
+            coprocess.stop();
+        }
+    }
+
+    private ErrorOutput getErrorOutput() {
+        return errorOutputDiscarded ? ErrorOutput.DISCARDED : ErrorOutput.SEPARATE;
+    }
+
+    private void run(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final ErrorOutput errorOutput, final Consumer<String> standardOutputLineConsumer)
+            throws IntegrationException {
+        logger.debug(String.format("Executing %s in %s", cmd, workingDir));
+        final ShellCoprocess coprocess;
+        try {
+            coprocess = idleCoprocesses.take();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IntegrationException(String.format("Interrupted while waiting to run '%s'", cmd));
+        }
+        try {
+            coprocess.run(workingDir, environmentVariables, cmd, errorOutput, standardOutputLineConsumer);
+        } finally {
+            idleCoprocesses.add(coprocess);
+        }
+    }
+
+    static String quote(final String argument) {
+        return String.format("'%s'", argument.replace("'", "'\\''"));
+    }
+
+    private class ShellCoprocess {
+        private long commandCount;
+        private volatile Process process;
+        private Writer stdin;
+        private BufferedReader stdout;
+        private BlockingQueue<String> stderrLines;
+
+        private void run(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final ErrorOutput errorOutput,
+                final Consumer<String> standardOutputLineConsumer) throws IntegrationException {
+            boolean completed = false;
+            ScheduledFuture<?> timeout = null;
+            final AtomicBoolean timedOut = new AtomicBoolean();
+            try {
+                start();
+                if (timeoutMillis > 0) {
+                    timeout = ExecutableRunner.scheduleTimeout(process, timeoutMillis, timedOut);
+                }
+                final String marker = markerPrefix + commandCount++;
+                stdin.write(createScript(workingDir, environmentVariables, cmd, errorOutput, marker));
+                stdin.flush();
+                // Merged output is only kept for the failure error, like SimpleExecutor's
+                final List<String> mergedOutput = new ArrayList<>();
+                final int returnCode = readStandardOutput(marker, errorOutput == ErrorOutput.MERGED ? mergedOutput::add : standardOutputLineConsumer);
+                final String stderrString = readStandardError(marker);
+                completed = true;
+                logger.trace(String.format("Command: '%s'; stderr: %s", cmd, stderrString));
+                if (returnCode != 0 && errorOutput == ErrorOutput.MERGED) {
+                    throw new IntegrationException(String.format("Command '%s' return code: %d; output: %s", cmd, returnCode, StringUtils.join(mergedOutput, '\n').trim()));
+                }
+                if (returnCode != 0) {
+                    throw new IntegrationException(String.format("Command '%s' return code: %d; stderr: %s", cmd, returnCode, stderrString));
+                }
+            } catch (final IOException | IntegrationException e) {
+                if (timedOut.get()) {
+                    throw new IntegrationException(String.format("'%s' timed out after %d ms", cmd, timeoutMillis));
+                }
+                if (e instanceof IntegrationException) {
+                    throw (IntegrationException) e;
+                }
+                throw new IntegrationException(String.format("Error running '%s' in shell coprocess: %s", cmd, e.getMessage()));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IntegrationException(String.format("Interrupted while running '%s'", cmd));
+            } finally {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                // Output left unread would be taken for the next command's, so a shell that didn't reach its markers is replaced
+                if (!completed) {
+                    stop();
+                }
+            }
+        }
+
+        private void start() throws IOException {
+            if (process != null && process.isAlive()) {
+                return;
+            }
+            final ProcessBuilder processBuilder = new ProcessBuilder("/bin/sh");
+            // The same PATH SimpleExecutor runs commands with, so both find the same compilers and package managers
+            processBuilder.environment().put("PATH", SimpleExecutor.SYSTEM_PATH);
+            process = processBuilder.start();
+            stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            stderrLines = new LinkedBlockingQueue<>();
+            final BufferedReader stderr = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8));
+            final BlockingQueue<String> lines = stderrLines;
+            // Drained continuously so a command writing a lot to stderr can't block on a full pipe while stdout is being read
+            final Thread stderrThread = new Thread(() -> {
+                try {
+                    String line;
+                    while ((line = stderr.readLine()) != null) {
+                        lines.add(line);
+                    }
+                } catch (final IOException e) {
+                    logger.trace(e.toString());
+                }
+            }, "Shell Coprocess Stderr Thread");
+            stderrThread.setDaemon(true);
+            stderrThread.start();
+            logger.debug("Started shell coprocess");
+        }
+
+        private void kill() {
+            final Process runningProcess = process;
+            if (runningProcess != null) {
+                ExecutableRunner.destroyProcessTree(runningProcess);
+            }
+        }
+
+        private void stop() {
+            if (process != null) {
+                process.destroy();
+                process = null;
+            }
+        }
+
+        private String createScript(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final ErrorOutput errorOutput, final String marker) {
+            final StringBuilder script = new StringBuilder("(");
+            if (workingDir != null) {
+                script.append(" cd ").append(quote(workingDir.getAbsolutePath())).append(" &&");
+            }
+            if (environmentVariables != null) {
+                for (final Map.Entry<String, String> environmentVariable : environmentVariables.entrySet()) {
+                    String value = environmentVariable.getValue();
+                    if ("PATH".equals(environmentVariable.getKey())) {
+                        value = String.format("%s:%s", value, SimpleExecutor.SYSTEM_PATH);
+                    }
+                    script.append(" export ").append(environmentVariable.getKey()).append('=').append(quote(value)).append(" &&");
+                }
+            }
+            script.append(" exec");
+            for (final String argument : CommandLine.split(cmd)) {
+                script.append(' ').append(quote(argument));
+            }
+            script.append(" ) </dev/null");
+            if (errorOutput == ErrorOutput.DISCARDED) {
+                script.append(" 2>/dev/null");
+            } else if (errorOutput == ErrorOutput.MERGED) {
+                script.append(" 2>&1");
+            }
+            script.append("; printf '%s %d\\n' ").append(quote(marker)).append(" \"$?\"; printf '%s\\n' ").append(quote(marker)).append(" >&2\n");
+            return script.toString();
+        }
+
+        // Commands whose output doesn't end with a newline leave the marker at the end of their last line
+        private int readStandardOutput(final String marker, final Consumer<String> standardOutputLineConsumer) throws IOException, IntegrationException {
+            String line;
+            while ((line = stdout.readLine()) != null) {
+                final int markerIndex = line.indexOf(marker);
+                if (markerIndex < 0) {
+                    standardOutputLineConsumer.accept(line);
+                    continue;
+                }
+                if (markerIndex > 0) {
+                    standardOutputLineConsumer.accept(line.substring(0, markerIndex));
+                }
+                return Integer.parseInt(line.substring(markerIndex + marker.length()).trim());
+            }
+            throw new IntegrationException("Shell coprocess exited unexpectedly");
+        }
+
+        // The stderr marker is written right after the stdout one, so it only fails to arrive if the shell died in between
+        private String readStandardError(final String marker) throws InterruptedException, IntegrationException {
+            final StringBuilder stderrString = new StringBuilder();
+            while (true) {
+                final String line = stderrLines.poll(STDERR_MARKER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (line == null) {
+                    throw new IntegrationException("Shell coprocess exited unexpectedly");
+                }
+                final int markerIndex = line.indexOf(marker);
+                if (markerIndex >= 0) {
+                    stderrString.append(line, 0, markerIndex);
+                    return stderrString.toString().trim();
+                }
+                stderrString.append(line).append('\n');
+            }
+        }
+    }
+}
@@ -24,47 +24,101 @@
 package com.blackducksoftware.integration.hub.clang.execute;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.clang.execute.fromdetect.Executable;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.Executable.ErrorOutput;
 import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableOutput;
 import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunner;
 import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
 
 @Component
 public class SimpleExecutor implements Executor {
+    public static final String SYSTEM_PATH = "/usr/local/sbin:/usr/local/bin:/usr/sbin:/usr/bin:/sbin:/bin";
+    // What commands run with when the caller has no environment of its own; built once rather than per command
+    private static final Map<String, String> DEFAULT_ENVIRONMENT = Collections.singletonMap("PATH", SYSTEM_PATH);
     private static final Logger logger = LoggerFactory.getLogger(SimpleExecutor.class);
+    private final ExecutableRunner runner = new ExecutableRunner();
+    private final boolean errorOutputDiscarded;
+    private final long timeoutMillis;
 
+    public SimpleExecutor() {
+        this(false, 0L);
+    }
+
+    // Discarding stderr saves reading it, at the cost of leaving it out of the error when a command fails. It only applies to commands
+    // whose stdout is parsed, where stderr can't be merged into it; commands run for effect always read both as one stream.
+    // Commands still running after timeoutMillis (0 for no limit) are killed, along with any processes they started.
+    public SimpleExecutor(final boolean errorOutputDiscarded, final long timeoutMillis) {
+        this.errorOutputDiscarded = errorOutputDiscarded;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public String execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd) throws ExecutableRunnerException, IntegrationException {
+        final ExecutableOutput out = run(workingDir, environmentVariables, cmd, getErrorOutput(), null);
+        final String stdoutString = out.getStandardOutput();
+        if (logger.isTraceEnabled()) {
+            logger.trace(String.format("Command: '%s'; Output: %s", cmd, stdoutString));
+        }
+        return stdoutString;
+    }
+
+    @Override
+    public void execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final Consumer<String> standardOutputLineConsumer)
+            throws ExecutableRunnerException, IntegrationException {
+        run(workingDir, environmentVariables, cmd, getErrorOutput(), standardOutputLineConsumer);
+    }
+
+    // One reader drains stdout and stderr together, and the failure error carries both
     @Override
-    public String execute(final File workingDir, Map<String, String> environmentVariables, final String cmd) throws ExecutableRunnerException, IntegrationException {
+    public void executeForEffect(final File workingDir, final Map<String, String> environmentVariables, final String cmd) throws ExecutableRunnerException, IntegrationException {
+        run(workingDir, environmentVariables, cmd, ErrorOutput.MERGED, null);
+    }
+
+    @Override
+    public void cancelAll() {
+        runner.cancelAll();
+    }
+
+    private ErrorOutput getErrorOutput() {
+        return errorOutputDiscarded ? ErrorOutput.DISCARDED : ErrorOutput.SEPARATE;
+    }
+
+    private ExecutableOutput run(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final ErrorOutput errorOutput,
+            final Consumer<String> standardOutputLineConsumer) throws ExecutableRunnerException, IntegrationException {
         logger.debug(String.format("Executing %s in %s", cmd, workingDir));
-        final String newPath = "/usr/local/sbin:/usr/local/bin:/usr/sbin:/usr/bin:/sbin:/bin";
-        if (environmentVariables == null) {
-            environmentVariables = new HashMap<>();
+        final Map<String, String> environment;
+        if (environmentVariables == null || environmentVariables.isEmpty()) {
+            environment = DEFAULT_ENVIRONMENT;
+        } else {
+            environment = new HashMap<>(environmentVariables);
+            final String path = environment.get("PATH");
+            environment.put("PATH", path == null ? SYSTEM_PATH : String.format("%s:%s", path, SYSTEM_PATH));
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Env: %s", environment));
+        }
+        final Executable executor = new Executable(workingDir, environment, cmd, errorOutput, timeoutMillis);
+        final ExecutableOutput out = runner.execute(executor, standardOutputLineConsumer);
+        final String stderrString = out.getErrorOutput();
+        if (logger.isTraceEnabled()) {
+            logger.trace(String.format("Command: '%s'; stderr: %s", cmd, stderrString));
+        }
+        if (out.getReturnCode() != 0 && errorOutput == ErrorOutput.MERGED) {
+            throw new IntegrationException(String.format("Command '%s' return code: %d; output: %s", cmd, out.getReturnCode(), out.getStandardOutput()));
         }
-        String path = environmentVariables.get("PATH");
-        path = path == null ? newPath : String.format("%s:%s", path, newPath);
-        environmentVariables.put("PATH", path);
-        logger.debug(String.format("Env: %s", environmentVariables));
-        final Executable executor = new Executable(workingDir, environmentVariables, cmd);
-        final ExecutableRunner runner = new ExecutableRunner();
-        final ExecutableOutput out = runner.execute(executor);
-        final List<String> stderrList = out.getErrorOutputAsList();
-        final List<String> stdout = out.getStandardOutputAsList();
-        final String stderrString = StringUtils.join(stderrList, '\n');
-        final String stdoutString = StringUtils.join(stdout, '\n');
-        logger.trace(String.format("Command: '%s'; Output: %s; stderr: %s", cmd, stdoutString, stderrString));
         if (out.getReturnCode() != 0) {
             throw new IntegrationException(String.format("Command '%s' return code: %d; stderr: %s", cmd, out.getReturnCode(), stderrString));
         }
-        return stdoutString;
+        return out;
     }
 }
@@ -25,45 +25,69 @@ package com.blackducksoftware.integration.hub.clang.execute.fromdetect;
 
 import java.io.File;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
+
 public class Executable {
+    // What happens to a command's stderr: read on its own, sent to /dev/null so only stdout has to be read,
+    // or merged into stdout so that one reader drains both
+    public enum ErrorOutput {
+        SEPARATE, DISCARDED, MERGED
+    }
+
+    private static final File NULL_FILE = new File("/dev/null");
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final File workingDirectory;
-    private final Map<String, String> environmentVariables = new HashMap<>();
+    private final Map<String, String> environmentVariables;
     private final String cmd;
+    private final ErrorOutput errorOutput;
+    private final long timeoutMillis;
 
     public Executable(final File workingDirectory, final String cmd) {
-        this.workingDirectory = workingDirectory;
-        this.cmd = cmd;
+        this(workingDirectory, null, cmd);
     }
 
     public Executable(final File workingDirectory, final Map<String, String> environmentVariables, final String cmd) {
+        this(workingDirectory, environmentVariables, cmd, false);
+    }
+
+    public Executable(final File workingDirectory, final Map<String, String> environmentVariables, final String cmd, final boolean errorOutputDiscarded) {
+        this(workingDirectory, environmentVariables, cmd, errorOutputDiscarded ? ErrorOutput.DISCARDED : ErrorOutput.SEPARATE, 0L);
+    }
+
+    // A timeoutMillis of 0 means no timeout
+    public Executable(final File workingDirectory, final Map<String, String> environmentVariables, final String cmd, final ErrorOutput errorOutput, final long timeoutMillis) {
         this.workingDirectory = workingDirectory;
-        if (environmentVariables != null) {
-            this.environmentVariables.putAll(environmentVariables);
-        }
+        this.environmentVariables = environmentVariables == null ? Collections.emptyMap() : environmentVariables;
         this.cmd = cmd;
+        this.errorOutput = errorOutput;
+        this.timeoutMillis = timeoutMillis;
     }
 
     public ProcessBuilder createProcessBuilder() {
         logger.debug("createProcessBuilder()");
-        final String[] cmdArgArray = cmd.split("\\s+");
+        final String[] cmdArgArray = CommandLine.split(cmd);
         final List<String> processBuilderArguments = Arrays.asList(cmdArgArray);
         final ProcessBuilder processBuilder = new ProcessBuilder(processBuilderArguments);
         processBuilder.directory(workingDirectory);
-        final Map<String, String> processBuilderEnvironment = processBuilder.environment();
-        final Map<String, String> systemEnv = System.getenv();
-        for (final String key : systemEnv.keySet()) {
-            populateEnvironmentMap(processBuilderEnvironment, key, systemEnv.get(key));
+        // ProcessBuilder.environment() copies this process's whole environment, so it is only asked for when an override changes it;
+        // otherwise the child just inherits the environment, with no copy made
+        if (!isInherited(environmentVariables)) {
+            final Map<String, String> processBuilderEnvironment = processBuilder.environment();
+            for (final Map.Entry<String, String> environmentVariable : environmentVariables.entrySet()) {
+                populateEnvironmentMap(processBuilderEnvironment, environmentVariable.getKey(), environmentVariable.getValue());
+            }
         }
-        for (final String key : environmentVariables.keySet()) {
-            populateEnvironmentMap(processBuilderEnvironment, key, environmentVariables.get(key));
+        if (errorOutput == ErrorOutput.DISCARDED) {
+            processBuilder.redirectError(ProcessBuilder.Redirect.appendTo(NULL_FILE));
+        } else if (errorOutput == ErrorOutput.MERGED) {
+            processBuilder.redirectErrorStream(true);
         }
         return processBuilder;
     }
@@ -72,6 +96,25 @@ public class Executable {
         return cmd;
     }
 
+    public ErrorOutput getErrorOutput() {
+        return errorOutput;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    // System.getenv() is a map this process builds once, so checking against it copies nothing
+    private boolean isInherited(final Map<String, String> overrides) {
+        final Map<String, String> systemEnvironment = System.getenv();
+        for (final Map.Entry<String, String> override : overrides.entrySet()) {
+            if (override.getValue() != null && !override.getValue().equals(systemEnvironment.get(override.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void populateEnvironmentMap(final Map<String, String> environment, final Object key, final Object value) {
         // ProcessBuilder's environment's keys and values must be non-null java.lang.String's
         if (key != null && value != null) {
@@ -37,6 +37,14 @@ public class ExecutableOutput {
         this.errorOutput = errorOutput;
     }
 
+    public String getStandardOutput() {
+        return standardOutput;
+    }
+
+    public String getErrorOutput() {
+        return errorOutput;
+    }
+
     public List<String> getStandardOutputAsList() {
         return Arrays.asList(standardOutput.split(System.lineSeparator()));
     }
@@ -24,43 +24,129 @@
 package com.blackducksoftware.integration.hub.clang.execute.fromdetect;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 @Component
 public class ExecutableRunner {
+    // Shared by all runs so that draining stderr doesn't cost a new thread per process
+    private static final ExecutorService STREAM_DRAINERS = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "Executable Stream Reader Thread");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Kills processes that run past their timeout
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Executable Watchdog Thread");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Optional<Method> PROCESS_DESCENDANTS_METHOD = getMethod(Process.class.getName(), "descendants");
+    private static final Optional<Method> PROCESS_HANDLE_DESTROY_FORCIBLY_METHOD = getMethod("java.lang.ProcessHandle", "destroyForcibly");
     private final Logger logger = LoggerFactory.getLogger(ExecutableRunner.class);
+    private final Set<Process> runningProcesses = ConcurrentHashMap.newKeySet();
+    private final Set<Process> cancelledProcesses = ConcurrentHashMap.newKeySet();
 
     public ExecutableOutput execute(final Executable executable) throws ExecutableRunnerException {
+        return execute(executable, null);
+    }
+
+    // When standardOutputLineConsumer is given, stdout goes to it as it arrives and is not included in the ExecutableOutput
+    public ExecutableOutput execute(final Executable executable, final Consumer<String> standardOutputLineConsumer) throws ExecutableRunnerException {
         logger.debug(String.format("Running executable: %s", executable.getDescription()));
+        Process process = null;
+        ScheduledFuture<?> timeout = null;
+        final AtomicBoolean timedOut = new AtomicBoolean();
         try {
             final ProcessBuilder processBuilder = executable.createProcessBuilder();
-            final Process process = processBuilder.start();
+            process = processBuilder.start();
+            runningProcesses.add(process);
+            if (executable.getTimeoutMillis() > 0) {
+                timeout = scheduleTimeout(process, executable.getTimeoutMillis(), timedOut);
+            }
 
             try (InputStream standardOutputStream = process.getInputStream(); InputStream standardErrorStream = process.getErrorStream()) {
-                final ExecutableStreamThread standardOutputThread = new ExecutableStreamThread(standardOutputStream, logger);
-                standardOutputThread.start();
+                final ExecutableStreamReader errorOutputReader = new ExecutableStreamReader(standardErrorStream, logger);
+                final Future<?> errorOutputFuture = executable.getErrorOutput() == Executable.ErrorOutput.SEPARATE ? STREAM_DRAINERS.submit(errorOutputReader) : null;
 
-                final ExecutableStreamThread errorOutputThread = new ExecutableStreamThread(standardErrorStream, logger);
-                errorOutputThread.start();
+                // stdout is read on this thread, which would otherwise just be waiting
+                final ExecutableStreamReader standardOutputReader = new ExecutableStreamReader(standardOutputStream, logger, standardOutputLineConsumer);
+                standardOutputReader.run();
 
                 final int returnCode = process.waitFor();
                 logger.debug("Executable finished: " + returnCode);
+                if (timedOut.get()) {
+                    throw new ExecutableRunnerException(String.format("'%s' timed out after %d ms", executable.getDescription(), executable.getTimeoutMillis()));
+                }
+                if (cancelledProcesses.contains(process)) {
+                    throw new ExecutableRunnerException(String.format("'%s' was cancelled", executable.getDescription()));
+                }
 
-                standardOutputThread.join();
-                errorOutputThread.join();
-
-                final String standardOutput = standardOutputThread.getExecutableOutput().trim();
-                final String errorOutput = errorOutputThread.getExecutableOutput().trim();
+                final String standardOutput = standardOutputReader.getExecutableOutput().trim();
+                String errorOutput = "";
+                if (errorOutputFuture != null) {
+                    errorOutputFuture.get();
+                    errorOutput = errorOutputReader.getExecutableOutput().trim();
+                }
 
                 final ExecutableOutput output = new ExecutableOutput(returnCode, standardOutput, errorOutput);
                 return output;
             }
+        } catch (final ExecutableRunnerException e) {
+            throw e;
         } catch (final Exception e) {
             throw new ExecutableRunnerException(e);
+        } finally {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (process != null) {
+                runningProcesses.remove(process);
+                cancelledProcesses.remove(process);
+                // Only still running if reading its output failed
+                if (process.isAlive()) {
+                    destroyProcessTree(process);
+                }
+            }
+        }
+    }
+
+    // Kills every command currently being run by this runner; each of their execute() calls throws an ExecutableRunnerException
+    public void cancelAll() {
+        for (final Process process : runningProcesses) {
+            cancelledProcesses.add(process);
+            destroyProcessTree(process);
         }
     }
 
@@ -74,4 +160,98 @@ public class ExecutableRunner {
             throw new ExecutableRunnerException(e);
         }
     }
+
+    // Kills the process, along with any processes it started, if it is still running after timeoutMillis; timedOut is set first so the caller can tell why it ended
+    public static ScheduledFuture<?> scheduleTimeout(final Process process, final long timeoutMillis, final AtomicBoolean timedOut) {
+        return WATCHDOG.schedule(() -> {
+            timedOut.set(true);
+            destroyProcessTree(process);
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Compilers start children of their own (cc1, as) that would otherwise keep running, and keep the output pipes open, after the compiler driver is killed.
+    // They're found with ProcessHandle on Java 9+, and from the parent pids in /proc on Java 8.
+    public static void destroyProcessTree(final Process process) {
+        if (!PROCESS_DESCENDANTS_METHOD.isPresent() || !PROCESS_HANDLE_DESTROY_FORCIBLY_METHOD.isPresent()) {
+            final List<String> descendantPids = getDescendantPidsFromProc(process);
+            process.destroyForcibly();
+            killPids(descendantPids);
+            return;
+        }
+        List<?> descendants;
+        try {
+            descendants = ((Stream<?>) PROCESS_DESCENDANTS_METHOD.get().invoke(process)).collect(Collectors.toList());
+        } catch (IllegalAccessException | InvocationTargetException | RuntimeException e) {
+            descendants = Collections.emptyList();
+        }
+        process.destroyForcibly();
+        for (final Object descendant : descendants) {
+            try {
+                PROCESS_HANDLE_DESTROY_FORCIBLY_METHOD.get().invoke(descendant);
+            } catch (IllegalAccessException | InvocationTargetException | RuntimeException e) {
+                // It may have exited already
+            }
+        }
+    }
+
+    // Java 8's UNIXProcess keeps the pid in a private field; the children of each process are found from the ppid field of /proc/<pid>/stat
+    private static List<String> getDescendantPidsFromProc(final Process process) {
+        final String pid;
+        try {
+            final Field pidField = process.getClass().getDeclaredField("pid");
+            pidField.setAccessible(true);
+            pid = String.valueOf(pidField.getInt(process));
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            return Collections.emptyList();
+        }
+        final File[] procDirs = new File("/proc").listFiles();
+        if (procDirs == null) {
+            return Collections.emptyList();
+        }
+        final Map<String, List<String>> childPidsByPid = new HashMap<>();
+        for (final File procDir : procDirs) {
+            if (!StringUtils.isNumeric(procDir.getName())) {
+                continue;
+            }
+            try {
+                final String stat = new String(Files.readAllBytes(new File(procDir, "stat").toPath()), StandardCharsets.ISO_8859_1);
+                // The command name comes before the ppid in parentheses, and may itself contain spaces or parentheses
+                final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+                childPidsByPid.computeIfAbsent(fields[1], k -> new ArrayList<>()).add(procDir.getName());
+            } catch (final IOException | RuntimeException e) {
+                // It exited while /proc was being read
+            }
+        }
+        final List<String> descendantPids = new ArrayList<>();
+        final Deque<String> parentPids = new ArrayDeque<>(Collections.singletonList(pid));
+        while (!parentPids.isEmpty()) {
+            final List<String> childPids = childPidsByPid.getOrDefault(parentPids.pop(), Collections.emptyList());
+            descendantPids.addAll(childPids);
+            parentPids.addAll(childPids);
+        }
+        return descendantPids;
+    }
+
+    private static void killPids(final List<String> pids) {
+        if (pids.isEmpty()) {
+            return;
+        }
+        final List<String> command = new ArrayList<>(Arrays.asList("kill", "-KILL"));
+        command.addAll(pids);
+        try {
+            new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.appendTo(new File("/dev/null"))).start().waitFor();
+        } catch (final IOException e) {
+            // Nothing more can be done about them
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Optional<Method> getMethod(final String className, final String methodName) {
+        try {
+            return Optional.of(Class.forName(className).getMethod(methodName));
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return Optional.empty();
+        }
+    }
 }
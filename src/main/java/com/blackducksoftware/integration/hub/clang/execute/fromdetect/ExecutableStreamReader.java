@@ -28,19 +28,27 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 
-public class ExecutableStreamThread extends Thread {
+// Runs on the thread that reads the process's stdout, or on ExecutableRunner's shared pool for stderr
+public class ExecutableStreamReader implements Runnable {
     private final BufferedReader bufferedReader;
     private final StringBuilder stringBuilder;
     private final Logger logger;
+    private final Consumer<String> lineConsumer;
 
     private String executableOutput;
 
-    public ExecutableStreamThread(final InputStream executableStream, final Logger logger) {
-        super("Executable Stream Thread");
+    public ExecutableStreamReader(final InputStream executableStream, final Logger logger) {
+        this(executableStream, logger, null);
+    }
+
+    // With a lineConsumer, lines are handed over as they are read and not kept
+    public ExecutableStreamReader(final InputStream executableStream, final Logger logger, final Consumer<String> lineConsumer) {
         this.logger = logger;
+        this.lineConsumer = lineConsumer;
         final InputStreamReader reader = new InputStreamReader(executableStream, StandardCharsets.UTF_8);
         this.bufferedReader = new BufferedReader(reader);
         this.stringBuilder = new StringBuilder();
@@ -52,7 +60,11 @@ public class ExecutableStreamThread extends Thread {
             String line;
             final String separator = System.lineSeparator();
             while ((line = bufferedReader.readLine()) != null) {
-                stringBuilder.append(line + separator);
+                if (lineConsumer == null) {
+                    stringBuilder.append(line + separator);
+                } else {
+                    lineConsumer.accept(line);
+                }
                 logger.trace(line);
             }
         } catch (final IOException e) {
@@ -0,0 +1,135 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.GsonBuilder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Meters for the expensive parts of an extraction, published through the actuator's MeterRegistry when there is one
+// (and to a private SimpleMeterRegistry otherwise) and written out as a JSON run summary at the end of a run
+@Component
+public class ExtractorMetrics {
+    public static final String METER_NAME_PREFIX = "clang.extractor.";
+    private static final String PKG_MGR_TAG = "pkg.mgr";
+    private static final String CACHE_TAG = "cache";
+    private static final String RESULT_TAG = "result";
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private MeterRegistry registry;
+    private Timer compileTimer;
+    private Counter dependencyFileBytesCounter;
+    private Counter uniqueDependencyFilesCounter;
+    private Counter iScanFallbacksCounter;
+    private Timer bdioWriteTimer;
+
+    @PostConstruct
+    public void init() {
+        registry = meterRegistry == null ? new SimpleMeterRegistry() : meterRegistry;
+        compileTimer = Timer.builder(METER_NAME_PREFIX + "compile").description("Compiler runs to generate dependency rules").publishPercentileHistogram().register(registry);
+        dependencyFileBytesCounter = Counter.builder(METER_NAME_PREFIX + "dependency.rules.bytes").description("Bytes of dependency rules parsed").baseUnit("bytes").register(registry);
+        uniqueDependencyFilesCounter = Counter.builder(METER_NAME_PREFIX + "dependency.files.unique").description("Distinct existing dependency files found").register(registry);
+        iScanFallbacksCounter = Counter.builder(METER_NAME_PREFIX + "iscan.fallbacks").description("Dependency files owned by no package, left for iScan").register(registry);
+        bdioWriteTimer = Timer.builder(METER_NAME_PREFIX + "bdio.write").description("Writing the BDIO document").register(registry);
+    }
+
+    public void recordCompile(final long durationNanos) {
+        compileTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDependencyRulesParsed(final long byteCount) {
+        dependencyFileBytesCounter.increment(byteCount);
+    }
+
+    public void recordUniqueDependencyFiles(final int count) {
+        uniqueDependencyFilesCounter.increment(count);
+    }
+
+    // One call per query of the package manager, which may cover many files
+    public void recordPackageLookup(final String pkgMgrName, final int fileCount, final long durationNanos) {
+        Counter.builder(METER_NAME_PREFIX + "package.lookups").description("Dependency files looked up in the package manager").tag(PKG_MGR_TAG, pkgMgrName).register(registry).increment(fileCount);
+        Timer.builder(METER_NAME_PREFIX + "package.lookup").description("Package manager queries").tag(PKG_MGR_TAG, pkgMgrName).publishPercentileHistogram().register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordIScanFallbacks(final int count) {
+        iScanFallbacksCounter.increment(count);
+    }
+
+    public void recordCacheResults(final String cacheName, final int hitCount, final int missCount) {
+        Counter.builder(METER_NAME_PREFIX + "cache").tag(CACHE_TAG, cacheName).tag(RESULT_TAG, "hit").register(registry).increment(hitCount);
+        Counter.builder(METER_NAME_PREFIX + "cache").tag(CACHE_TAG, cacheName).tag(RESULT_TAG, "miss").register(registry).increment(missCount);
+    }
+
+    public void recordBdioWrite(final long durationNanos) {
+        bdioWriteTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Timers are reported in seconds, the base unit Micrometer gives them
+    public void writeRunSummary(final File summaryFile) throws IOException {
+        final List<Map<String, Object>> meters = new ArrayList<>();
+        for (final Meter meter : registry.getMeters()) {
+            if (!meter.getId().getName().startsWith(METER_NAME_PREFIX)) {
+                continue;
+            }
+            final Map<String, Object> meterSummary = new LinkedHashMap<>();
+            meterSummary.put("name", meter.getId().getName());
+            final Map<String, String> tags = new LinkedHashMap<>();
+            for (final Tag tag : meter.getId().getTags()) {
+                tags.put(tag.getKey(), tag.getValue());
+            }
+            meterSummary.put("tags", tags);
+            for (final Measurement measurement : meter.measure()) {
+                meterSummary.put(measurement.getStatistic().name().toLowerCase(), measurement.getValue());
+            }
+            meters.add(meterSummary);
+        }
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("meters", meters);
+        FileUtils.writeStringToFile(summaryFile, new GsonBuilder().setPrettyPrinting().create().toJson(summary), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.stream.JsonWriter;
+
+// Writes spans around the expensive steps of a run to trace.file in the Chrome Trace Event format (one track per thread),
+// which Perfetto and chrome://tracing can open. Events are streamed to the file as spans end rather than kept in memory.
+// When trace.file is not set every span is the same do-nothing instance.
+@Component
+public class RunTracer {
+    private static final int TRACE_FILE_BUFFER_SIZE = 64 * 1024;
+    private static final int PROCESS_ID = 1;
+    private static final Span DISABLED_SPAN = new Span(null, null, null, null, null, 0L);
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Set<Long> namedThreadIds = new HashSet<>();
+
+    @Value("${trace.file:}")
+    private String traceFilePath;
+
+    private JsonWriter traceWriter;
+    private long startNanos;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (StringUtils.isBlank(traceFilePath)) {
+            return;
+        }
+        final File traceFile = new File(traceFilePath);
+        traceWriter = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(traceFile), StandardCharsets.UTF_8), TRACE_FILE_BUFFER_SIZE));
+        traceWriter.beginArray();
+        startNanos = System.nanoTime();
+        logger.info(String.format("Writing trace events to %s", traceFile.getAbsolutePath()));
+    }
+
+    public boolean isEnabled() {
+        return traceWriter != null;
+    }
+
+    public Span startSpan(final String category, final String name) {
+        return startSpan(category, name, null, null);
+    }
+
+    // The argument shows up in the span's details; pass values that already exist so a disabled tracer costs nothing
+    public Span startSpan(final String category, final String name, final String argName, final Object argValue) {
+        if (traceWriter == null) {
+            return DISABLED_SPAN;
+        }
+        return new Span(this, category, name, argName, argValue, System.nanoTime());
+    }
+
+    // Ends the trace; spans still open are dropped
+    public synchronized void close() {
+        if (traceWriter == null) {
+            return;
+        }
+        try {
+            traceWriter.endArray();
+            traceWriter.close();
+        } catch (final IOException e) {
+            logger.warn(String.format("Error closing trace file %s: %s", traceFilePath, e.getMessage()));
+        }
+        traceWriter = null;
+    }
+
+    private synchronized void writeCompleteEvent(final Span span, final long endNanos) {
+        if (traceWriter == null) {
+            return;
+        }
+        final Thread thread = Thread.currentThread();
+        try {
+            if (namedThreadIds.add(thread.getId())) {
+                traceWriter.beginObject();
+                traceWriter.name("name").value("thread_name");
+                traceWriter.name("ph").value("M");
+                traceWriter.name("pid").value(PROCESS_ID);
+                traceWriter.name("tid").value(thread.getId());
+                traceWriter.name("args").beginObject().name("name").value(thread.getName()).endObject();
+                traceWriter.endObject();
+            }
+            traceWriter.beginObject();
+            traceWriter.name("name").value(span.name);
+            traceWriter.name("cat").value(span.category);
+            traceWriter.name("ph").value("X");
+            traceWriter.name("pid").value(PROCESS_ID);
+            traceWriter.name("tid").value(thread.getId());
+            traceWriter.name("ts").value((span.startNanos - startNanos) / 1000L);
+            traceWriter.name("dur").value((endNanos - span.startNanos) / 1000L);
+            if (span.argName != null) {
+                traceWriter.name("args").beginObject().name(span.argName).value(String.valueOf(span.argValue)).endObject();
+            }
+            traceWriter.endObject();
+        } catch (final IOException e) {
+            logger.warn(String.format("Error writing to trace file %s, no more trace events will be written: %s", traceFilePath, e.getMessage()));
+            traceWriter = null;
+        }
+    }
+
+    // Must be ended on the thread that started it, as its track is the thread's
+    public static final class Span implements AutoCloseable {
+        private final RunTracer tracer;
+        private final String category;
+        private final String name;
+        private final String argName;
+        private final Object argValue;
+        private final long startNanos;
+
+        private Span(final RunTracer tracer, final String category, final String name, final String argName, final Object argValue, final long startNanos) {
+            this.tracer = tracer;
+            this.category = category;
+            this.name = name;
+            this.argName = argName;
+            this.argValue = argValue;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void close() {
+            if (tracer != null) {
+                tracer.writeCompleteEvent(this, System.nanoTime());
+            }
+        }
+    }
+}
@@ -24,21 +24,27 @@
 package com.blackducksoftware.integration.hub.clang.pkgmgr;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.bdio.model.Forge;
 import com.blackducksoftware.integration.hub.clang.PackageDetails;
 import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
 import com.blackducksoftware.integration.hub.clang.execute.Executor;
 import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
 
@@ -49,12 +55,22 @@ public class Apk implements PkgMgr {
     private static final String EXPECTED_TEXT = "apk-tools ";
     private static final String QUERY_ARCH_COMMAND = "apk info --print-arch";
     private static final String QUERY_DEPENDENCY_FILE_COMMAND_PATTERN = "apk info --who-owns %s";
+    private static final String QUERY_DEPENDENCY_FILES_COMMAND_PREFIX = "apk info --who-owns";
+    private static final String OWNED_BY_TEXT = " is owned by ";
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private final List<Forge> forges = Arrays.asList(Forge.ALPINE);
     private String architecture = null;
 
+    @Value("${pkg.mgr.index.enabled:false}")
+    private boolean indexEnabled;
+
+    @Value("${apk.database.file:/lib/apk/db/installed}")
+    private String databaseFilePath;
+
+    private Optional<PackageIndex> index = null;
+
     @Override
     public String getPkgMgrName() {
         return PKG_MGR_NAME;
@@ -72,13 +88,24 @@ public class Apk implements PkgMgr {
 
     @Override
     public List<PackageDetails> getDependencyDetails(final Executor executor, final Set<File> filesForIScan, final DependencyFile dependencyFile) {
+        return lookUpDependencyDetails(executor, filesForIScan, dependencyFile).orElseGet(ArrayList::new);
+    }
+
+    @Override
+    public Optional<List<PackageDetails>> lookUpDependencyDetails(final Executor executor, final Set<File> filesForIScan, final DependencyFile dependencyFile) {
         final List<PackageDetails> dependencyDetailsList = new ArrayList<>(3);
-        final String getPackageCommand = String.format(QUERY_DEPENDENCY_FILE_COMMAND_PATTERN, dependencyFile.getFile().getAbsolutePath());
-        try {
-            if (architecture == null) {
-                architecture = executor.execute(new File("."), null, QUERY_ARCH_COMMAND).trim();
-                logger.debug(String.format("architecture: %s", architecture));
+        final Optional<PackageIndex> packageIndex = getIndex();
+        if (packageIndex.isPresent()) {
+            dependencyDetailsList.addAll(packageIndex.get().lookup(dependencyFile.getFile()));
+            if (dependencyDetailsList.isEmpty()) {
+                logger.debug(String.format("%s is not owned by any installed package", dependencyFile.getFile().getAbsolutePath()));
+                handleUnownedFile(filesForIScan, dependencyFile);
             }
+            return Optional.of(dependencyDetailsList);
+        }
+        final String getPackageCommand = String.format(QUERY_DEPENDENCY_FILE_COMMAND_PATTERN, CommandLine.quote(dependencyFile.getFile().getAbsolutePath()));
+        try {
+            getArchitecture(executor);
             final String queryPackageOutput = executor.execute(new File("."), null, getPackageCommand);
             logger.debug(String.format("queryPackageOutput: %s", queryPackageOutput));
             final String[] packageLines = queryPackageOutput.split("\n");
@@ -89,43 +116,123 @@ public class Apk implements PkgMgr {
                 }
                 final String[] packageLineParts = packageLine.split("\\s+");
                 final String packageNameAndVersion = packageLineParts[4];
-                logger.trace(String.format("packageNameAndVersion: %s", packageNameAndVersion));
-                final String[] parts = packageNameAndVersion.split("-");
-                if (parts.length < 3) {
-                    logger.error(String.format("apk info output contains an invalid package: %s", packageNameAndVersion));
-                    continue;
-                }
-                final String version = String.format("%s-%s", parts[parts.length - 2], parts[parts.length - 1]);
-                logger.trace(String.format("version: %s", version));
-                String component = "";
-                for (int i = 0; i < parts.length - 2; i++) {
-                    final String part = parts[i];
-                    if (StringUtils.isNotBlank(component)) {
-                        component += String.format("-%s", part);
-                    } else {
-                        component = part;
-                    }
-                }
-                logger.trace(String.format("component: %s", component));
-                // if a package starts with a period, we should ignore it because it is a virtual meta package and the version information is missing
-                if (!component.startsWith(".")) {
-                    final String externalId = String.format("%s/%s/%s", component, version, architecture);
-                    logger.debug(String.format("Constructed externalId: %s", externalId));
-                    final PackageDetails dependencyDetails = new PackageDetails(Optional.ofNullable(component), Optional.ofNullable(version), Optional.ofNullable(architecture));
-                    dependencyDetailsList.add(dependencyDetails);
-                }
+                toPackageDetails(packageNameAndVersion).ifPresent(dependencyDetailsList::add);
             }
-            return dependencyDetailsList;
+            return Optional.of(dependencyDetailsList);
         } catch (ExecutableRunnerException | IntegrationException e) {
             logger.error(String.format("Error executing %s: %s", getPackageCommand, e.getMessage()));
-            if (!dependencyFile.isInBuildDir()) {
-                logger.info(String.format("%s should be scanned by iScan", dependencyFile.getFile().getAbsolutePath()));
-                filesForIScan.add(dependencyFile.getFile());
+            handleUnownedFile(filesForIScan, dependencyFile);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Map<DependencyFile, List<PackageDetails>> getDependencyDetails(final Executor executor, final Set<File> filesForIScan, final Collection<DependencyFile> dependencyFiles) {
+        if (getIndex().isPresent()) {
+            return PkgMgr.super.getDependencyDetails(executor, filesForIScan, dependencyFiles);
+        }
+        try {
+            getArchitecture(executor);
+        } catch (ExecutableRunnerException | IntegrationException e) {
+            logger.error(String.format("Error executing %s: %s", QUERY_ARCH_COMMAND, e.getMessage()));
+            return PkgMgr.super.getDependencyDetails(executor, filesForIScan, dependencyFiles);
+        }
+        final List<DependencyFile> filesToQueryIndividually = new ArrayList<>();
+        final Map<DependencyFile, List<PackageDetails>> dependencyDetailsByFile = new PathBatchQuery<>(QUERY_DEPENDENCY_FILES_COMMAND_PREFIX, this::parseBatchOutput).run(executor, dependencyFiles, filesToQueryIndividually);
+        for (final Map.Entry<DependencyFile, List<PackageDetails>> dependencyDetails : dependencyDetailsByFile.entrySet()) {
+            if (dependencyDetails.getValue().isEmpty()) {
+                logger.debug(String.format("%s is not owned by any installed package", dependencyDetails.getKey().getFile().getAbsolutePath()));
+                handleUnownedFile(filesForIScan, dependencyDetails.getKey());
+            }
+        }
+        for (final DependencyFile dependencyFile : filesToQueryIndividually) {
+            lookUpDependencyDetails(executor, filesForIScan, dependencyFile).ifPresent(dependencyDetails -> dependencyDetailsByFile.put(dependencyFile, dependencyDetails));
+        }
+        return dependencyDetailsByFile;
+    }
+
+    // Lines look like "/usr/include/stdio.h is owned by musl-dev-1.1.24-r2"; unowned paths are only reported on stderr
+    private Optional<Map<String, List<PackageDetails>>> parseBatchOutput(final List<String> paths, final List<String> outputLines) {
+        final Map<String, List<PackageDetails>> dependencyDetailsByPath = new HashMap<>(paths.size());
+        for (final String packageLine : outputLines) {
+            if (!valid(packageLine)) {
+                logger.debug(String.format("Skipping line: %s", packageLine));
+                continue;
+            }
+            final int ownedByIndex = packageLine.indexOf(OWNED_BY_TEXT);
+            final String path = packageLine.substring(0, ownedByIndex);
+            final String packageNameAndVersion = packageLine.substring(ownedByIndex + OWNED_BY_TEXT.length()).trim();
+            final Optional<PackageDetails> dependencyDetails = toPackageDetails(packageNameAndVersion);
+            if (dependencyDetails.isPresent()) {
+                dependencyDetailsByPath.computeIfAbsent(path, k -> new ArrayList<>(1)).add(dependencyDetails.get());
+            }
+        }
+        return Optional.of(dependencyDetailsByPath);
+    }
+
+    private synchronized String getArchitecture(final Executor executor) throws ExecutableRunnerException, IntegrationException {
+        if (architecture == null) {
+            architecture = executor.execute(new File("."), null, QUERY_ARCH_COMMAND).trim();
+            logger.debug(String.format("architecture: %s", architecture));
+        }
+        return architecture;
+    }
+
+    private Optional<PackageDetails> toPackageDetails(final String packageNameAndVersion) {
+        logger.trace(String.format("packageNameAndVersion: %s", packageNameAndVersion));
+        final String[] parts = packageNameAndVersion.split("-");
+        if (parts.length < 3) {
+            logger.error(String.format("apk info output contains an invalid package: %s", packageNameAndVersion));
+            return Optional.empty();
+        }
+        final String version = String.format("%s-%s", parts[parts.length - 2], parts[parts.length - 1]);
+        logger.trace(String.format("version: %s", version));
+        String component = "";
+        for (int i = 0; i < parts.length - 2; i++) {
+            final String part = parts[i];
+            if (StringUtils.isNotBlank(component)) {
+                component += String.format("-%s", part);
             } else {
-                logger.trace(String.format("No point in scanning %s with iScan since it's in the source.dir", dependencyFile.getFile().getAbsolutePath()));
+                component = part;
             }
-            return dependencyDetailsList;
         }
+        logger.trace(String.format("component: %s", component));
+        // if a package starts with a period, we should ignore it because it is a virtual meta package and the version information is missing
+        if (component.startsWith(".")) {
+            return Optional.empty();
+        }
+        final String externalId = String.format("%s/%s/%s", component, version, architecture);
+        logger.debug(String.format("Constructed externalId: %s", externalId));
+        return Optional.of(new PackageDetails(Optional.ofNullable(component), Optional.ofNullable(version), Optional.ofNullable(architecture)));
+    }
+
+    private void handleUnownedFile(final Set<File> filesForIScan, final DependencyFile dependencyFile) {
+        if (!dependencyFile.isInBuildDir()) {
+            logger.info(String.format("%s should be scanned by iScan", dependencyFile.getFile().getAbsolutePath()));
+            filesForIScan.add(dependencyFile.getFile());
+        } else {
+            logger.trace(String.format("No point in scanning %s with iScan since it's in the source.dir", dependencyFile.getFile().getAbsolutePath()));
+        }
+    }
+
+    // Loaded on first use; if the database can't be read, apk is queried per file instead
+    private synchronized Optional<PackageIndex> getIndex() {
+        if (index == null) {
+            index = Optional.empty();
+            if (indexEnabled) {
+                try {
+                    index = Optional.of(new ApkDatabase(new File(databaseFilePath)).load());
+                } catch (final IOException e) {
+                    logger.warn(String.format("Unable to read the apk database %s; will run apk for each file instead: %s", databaseFilePath, e.getMessage()));
+                }
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public List<File> getDatabaseFiles() {
+        return Arrays.asList(new File(databaseFilePath));
     }
 
     @Override
@@ -144,6 +251,6 @@ public class Apk implements PkgMgr {
     }
 
     private boolean valid(final String packageLine) {
-        return packageLine.contains(" is owned by ");
+        return packageLine.contains(OWNED_BY_TEXT);
     }
 }
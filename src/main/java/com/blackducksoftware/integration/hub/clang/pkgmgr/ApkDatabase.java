@@ -0,0 +1,121 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+
+// Reads apk's installed database: one record per package, separated by blank lines.
+// P: name, V: version, A: arch; each F: (a dir relative to /) is followed by R: lines for the files in it
+public class ApkDatabase {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final File installedFile;
+
+    public ApkDatabase(final File installedFile) {
+        this.installedFile = installedFile;
+    }
+
+    public PackageIndex load() throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final PackageIndex packageIndex = new PackageIndex();
+        try (Reader reader = new InputStreamReader(new FileInputStream(installedFile), StandardCharsets.UTF_8)) {
+            parse(reader, packageIndex);
+        }
+        logger.info(String.format("Indexed %d files from %d apk packages in %d ms", packageIndex.getPathCount(), packageIndex.getPackageCount(), System.currentTimeMillis() - startTime));
+        return packageIndex;
+    }
+
+    void parse(final Reader reader, final PackageIndex packageIndex) throws IOException {
+        final BufferedReader bufferedReader = new BufferedReader(reader);
+        final List<String> paths = new ArrayList<>();
+        String name = null;
+        String version = null;
+        String arch = null;
+        String dir = "";
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            if (line.isEmpty()) {
+                addPackage(name, version, arch, paths, packageIndex);
+                name = null;
+                version = null;
+                arch = null;
+                dir = "";
+                paths.clear();
+                continue;
+            }
+            if (line.length() < 2 || line.charAt(1) != ':') {
+                continue;
+            }
+            final String value = line.substring(2);
+            switch (line.charAt(0)) {
+            case 'P':
+                name = value;
+                break;
+            case 'V':
+                version = value;
+                break;
+            case 'A':
+                arch = value;
+                break;
+            case 'F':
+                dir = value.isEmpty() ? "" : "/" + value;
+                break;
+            case 'R':
+                paths.add(dir + "/" + value);
+                break;
+            default:
+                break;
+            }
+        }
+        addPackage(name, version, arch, paths, packageIndex);
+    }
+
+    private void addPackage(final String name, final String version, final String arch, final List<String> paths, final PackageIndex packageIndex) {
+        if (name == null || paths.isEmpty()) {
+            return;
+        }
+        // if a package starts with a period, we should ignore it because it is a virtual meta package and the version information is missing
+        if (name.startsWith(".")) {
+            logger.debug(String.format("Skipping virtual package %s", name));
+            return;
+        }
+        final PackageDetails owner = packageIndex.intern(new PackageDetails(Optional.of(name), Optional.ofNullable(version), Optional.ofNullable(arch)));
+        for (final String path : paths) {
+            packageIndex.addOwner(path, owner);
+        }
+    }
+}
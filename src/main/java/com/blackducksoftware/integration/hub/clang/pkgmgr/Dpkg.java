@@ -24,20 +24,30 @@
 package com.blackducksoftware.integration.hub.clang.pkgmgr;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.bdio.model.Forge;
 import com.blackducksoftware.integration.hub.clang.PackageDetails;
 import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
 import com.blackducksoftware.integration.hub.clang.execute.Executor;
 import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
 
@@ -48,11 +58,26 @@ public class Dpkg implements PkgMgr {
     private static final String VERSION_COMMAND = "dpkg --version";
     private static final String EXPECTED_TEXT = "package management program version";
     private static final String QUERY_DEPENDENCY_FILE_COMMAND_PATTERN = "dpkg -S %s";
+    private static final String QUERY_DEPENDENCY_FILES_COMMAND_PREFIX = "dpkg -S";
+    private static final String QUERY_PACKAGES_COMMAND_PREFIX = "dpkg -s";
+    private static final String OWNER_PATH_SEPARATOR = ": ";
+    private static final String DIVERSION_LINE_PREFIX = "diversion by ";
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private final List<Forge> forges = Arrays.asList(Forge.UBUNTU, Forge.DEBIAN);
 
+    @Value("${pkg.mgr.index.enabled:false}")
+    private boolean indexEnabled;
+
+    @Value("${dpkg.database.dir:/var/lib/dpkg}")
+    private String databaseDirPath;
+
+    private Optional<PackageIndex> index = null;
+
+    // Installed packages seen so far, keyed both by name and by name:arch, as dpkg -S may print either
+    private final Map<String, PackageDetails> installedPackages = new ConcurrentHashMap<>();
+
     @Override
     public Forge getDefaultForge() {
         return forges.get(0);
@@ -68,6 +93,11 @@ public class Dpkg implements PkgMgr {
         return PKG_MGR_NAME;
     }
 
+    @Override
+    public List<File> getDatabaseFiles() {
+        return Arrays.asList(new File(databaseDirPath, "status"), new File(databaseDirPath, "diversions"));
+    }
+
     @Override
     public String getCheckPresenceCommand() {
         return VERSION_COMMAND;
@@ -85,78 +115,159 @@ public class Dpkg implements PkgMgr {
 
     @Override
     public List<PackageDetails> getDependencyDetails(final Executor executor, final Set<File> filesForIScan, final DependencyFile dependencyFile) {
+        return lookUpDependencyDetails(executor, filesForIScan, dependencyFile).orElseGet(ArrayList::new);
+    }
+
+    @Override
+    public Optional<List<PackageDetails>> lookUpDependencyDetails(final Executor executor, final Set<File> filesForIScan, final DependencyFile dependencyFile) {
         final List<PackageDetails> dependencyDetailsList = new ArrayList<>(3);
-        final String getPackageCommand = String.format(QUERY_DEPENDENCY_FILE_COMMAND_PATTERN, dependencyFile.getFile().getAbsolutePath());
+        final Optional<PackageIndex> packageIndex = getIndex();
+        if (packageIndex.isPresent()) {
+            dependencyDetailsList.addAll(packageIndex.get().lookup(dependencyFile.getFile()));
+            if (dependencyDetailsList.isEmpty()) {
+                logger.debug(String.format("%s is not owned by any installed package", dependencyFile.getFile().getAbsolutePath()));
+                handleUnownedFile(filesForIScan, dependencyFile);
+            }
+            return Optional.of(dependencyDetailsList);
+        }
+        final String getPackageCommand = String.format(QUERY_DEPENDENCY_FILE_COMMAND_PATTERN, CommandLine.quote(dependencyFile.getFile().getAbsolutePath()));
         try {
             final String queryPackageOutput = executor.execute(new File("."), null, getPackageCommand);
             logger.debug(String.format("queryPackageOutput: %s", queryPackageOutput));
-            addToPackageList(executor, dependencyDetailsList, queryPackageOutput);
+            final Map<String, List<String>> ownerNamesByPath = new HashMap<>();
+            for (final String packageLine : queryPackageOutput.split("\n")) {
+                parseOwnerLine(packageLine, ownerNamesByPath);
+            }
+            final Set<String> ownerNames = new LinkedHashSet<>();
+            ownerNamesByPath.values().forEach(ownerNames::addAll);
+            queryInstalledPackages(executor, ownerNames);
+            return toPackageDetails(ownerNames);
         } catch (ExecutableRunnerException | IntegrationException e) {
+            // dpkg -S also fails for an unowned path, but that can't be told apart from dpkg itself failing, so it isn't taken as an answer
             logger.debug(String.format("Error executing %s: %s", getPackageCommand, e.getMessage()));
-            if (!dependencyFile.isInBuildDir()) {
-                logger.trace(String.format("%s should be scanned by iScan", dependencyFile.getFile().getAbsolutePath()));
-                filesForIScan.add(dependencyFile.getFile());
-            } else {
-                logger.trace(String.format("No point in scanning %s with iScan since it's in the source.dir", dependencyFile.getFile().getAbsolutePath()));
-            }
+            handleUnownedFile(filesForIScan, dependencyFile);
+            return Optional.empty();
         }
-        return dependencyDetailsList;
     }
 
-    private void addToPackageList(final Executor executor, final List<PackageDetails> dependencyDetailsList, final String queryPackageOutput) {
-        final String[] packageLines = queryPackageOutput.split("\n");
-        for (final String packageLine : packageLines) {
-            if (!valid(packageLine)) {
-                logger.debug(String.format("Skipping line: %s", packageLine));
+    @Override
+    public Map<DependencyFile, List<PackageDetails>> getDependencyDetails(final Executor executor, final Set<File> filesForIScan, final Collection<DependencyFile> dependencyFiles) {
+        if (getIndex().isPresent()) {
+            return PkgMgr.super.getDependencyDetails(executor, filesForIScan, dependencyFiles);
+        }
+        final List<DependencyFile> filesToQueryIndividually = new ArrayList<>();
+        final Map<DependencyFile, List<String>> ownerNamesByFile = new PathBatchQuery<>(QUERY_DEPENDENCY_FILES_COMMAND_PREFIX, this::parseBatchOutput).run(executor, dependencyFiles, filesToQueryIndividually);
+        final Set<String> allOwnerNames = new HashSet<>();
+        ownerNamesByFile.values().forEach(allOwnerNames::addAll);
+        queryInstalledPackages(executor, allOwnerNames);
+        final Map<DependencyFile, List<PackageDetails>> dependencyDetailsByFile = new HashMap<>(dependencyFiles.size());
+        for (final Map.Entry<DependencyFile, List<String>> ownerNames : ownerNamesByFile.entrySet()) {
+            final Optional<List<PackageDetails>> dependencyDetailsList = toPackageDetails(ownerNames.getValue());
+            if (!dependencyDetailsList.isPresent()) {
                 continue;
             }
-            final String[] queryPackageOutputParts = packageLine.split("\\s+");
-            final String[] packageNameArchParts = queryPackageOutputParts[0].split(":");
-            final String packageName = packageNameArchParts[0];
-            final String packageArch = packageNameArchParts[1];
-            logger.debug(String.format("package name: %s; arch: %s", packageName, packageArch));
-            final Optional<String> packageVersion = getPackageVersion(executor, packageName);
-            final PackageDetails dependencyDetails = new PackageDetails(Optional.of(packageName), packageVersion, Optional.of(packageArch));
-            dependencyDetailsList.add(dependencyDetails);
+            if (dependencyDetailsList.get().isEmpty()) {
+                logger.debug(String.format("%s is not owned by any installed package", ownerNames.getKey().getFile().getAbsolutePath()));
+                handleUnownedFile(filesForIScan, ownerNames.getKey());
+            }
+            dependencyDetailsByFile.put(ownerNames.getKey(), dependencyDetailsList.get());
+        }
+        for (final DependencyFile dependencyFile : filesToQueryIndividually) {
+            lookUpDependencyDetails(executor, filesForIScan, dependencyFile).ifPresent(dependencyDetails -> dependencyDetailsByFile.put(dependencyFile, dependencyDetails));
         }
+        return dependencyDetailsByFile;
     }
 
-    private boolean valid(final String packageLine) {
-        if (packageLine.matches(".+:.+: .+")) {
-            return true;
+    private Optional<Map<String, List<String>>> parseBatchOutput(final List<String> paths, final List<String> outputLines) {
+        final Map<String, List<String>> ownerNamesByPath = new HashMap<>();
+        for (final String outputLine : outputLines) {
+            parseOwnerLine(outputLine, ownerNamesByPath);
         }
-        return false;
+        return Optional.of(ownerNamesByPath);
     }
 
-    private Optional<String> getPackageVersion(final Executor executor, final String packageName) {
+    private void handleUnownedFile(final Set<File> filesForIScan, final DependencyFile dependencyFile) {
+        if (!dependencyFile.isInBuildDir()) {
+            logger.trace(String.format("%s should be scanned by iScan", dependencyFile.getFile().getAbsolutePath()));
+            filesForIScan.add(dependencyFile.getFile());
+        } else {
+            logger.trace(String.format("No point in scanning %s with iScan since it's in the source.dir", dependencyFile.getFile().getAbsolutePath()));
+        }
+    }
 
-        final String getPackageVersionCommand = String.format("dpkg -s %s", packageName);
-        try {
-            final String packageStatusOutput = executor.execute(new File("."), null, getPackageVersionCommand);
-            logger.debug(String.format("packageStatusOutput: %s", packageStatusOutput));
-            final Optional<String> packageVersion = getPackageVersionFromStatusOutput(packageName, packageStatusOutput);
-            return packageVersion;
-        } catch (ExecutableRunnerException | IntegrationException e) {
-            logger.error(String.format("Error executing %s: %s", getPackageVersionCommand, e.getMessage()));
+    // Loaded on first use; if the database can't be read, dpkg is queried per file instead
+    private synchronized Optional<PackageIndex> getIndex() {
+        if (index == null) {
+            index = Optional.empty();
+            if (indexEnabled) {
+                try {
+                    index = Optional.of(new DpkgDatabase(new File(databaseDirPath)).load());
+                } catch (final IOException e) {
+                    logger.warn(String.format("Unable to read the dpkg database in %s; will run dpkg for each file instead: %s", databaseDirPath, e.getMessage()));
+                }
+            }
         }
+        return index;
+    }
 
-        return Optional.empty();
+    // Lines look like "libc6-dev:amd64: /usr/include/stdio.h", or "pkg1, pkg2: /path" for a path owned by several packages
+    private void parseOwnerLine(final String packageLine, final Map<String, List<String>> ownerNamesByPath) {
+        final int separatorIndex = packageLine.indexOf(OWNER_PATH_SEPARATOR);
+        if (packageLine.startsWith(DIVERSION_LINE_PREFIX) || separatorIndex <= 0) {
+            logger.debug(String.format("Skipping line: %s", packageLine));
+            return;
+        }
+        final String path = packageLine.substring(separatorIndex + OWNER_PATH_SEPARATOR.length()).trim();
+        final List<String> ownerNames = ownerNamesByPath.computeIfAbsent(path, k -> new ArrayList<>(1));
+        for (final String ownerName : packageLine.substring(0, separatorIndex).split(",")) {
+            ownerNames.add(ownerName.trim());
+        }
     }
 
-    private Optional<String> getPackageVersionFromStatusOutput(final String packageName, final String packageStatusOutput) {
-        final String[] packageStatusOutputLines = packageStatusOutput.split("\\n");
-        for (final String packageStatusOutputLine : packageStatusOutputLines) {
-            final String[] packageStatusOutputLineNameValue = packageStatusOutputLine.split(":\\s+");
-            final String label = packageStatusOutputLineNameValue[0];
-            final String value = packageStatusOutputLineNameValue[1];
-            if ("Status".equals(label.trim()) && !value.contains("installed")) {
-                logger.debug(String.format("%s is not installed; Status is: %s", packageName, value));
+    // Empty if the status of any owner is unknown (dpkg -s failed, or the owner isn't installed), so that the answer isn't kept without its versions
+    private Optional<List<PackageDetails>> toPackageDetails(final Collection<String> ownerNames) {
+        final List<PackageDetails> dependencyDetailsList = new ArrayList<>(ownerNames.size());
+        for (final String ownerName : ownerNames) {
+            final PackageDetails installedPackage = installedPackages.get(ownerName);
+            if (installedPackage == null) {
+                logger.debug(String.format("Unable to get the status of %s", ownerName));
                 return Optional.empty();
             }
-            if ("Version".equals(label)) {
-                return Optional.of(value);
+            dependencyDetailsList.add(installedPackage);
+        }
+        return Optional.of(dependencyDetailsList);
+    }
+
+    // Runs dpkg -s once for all the packages whose status isn't known yet, rather than once per owner line
+    private synchronized void queryInstalledPackages(final Executor executor, final Collection<String> ownerNames) {
+        final List<String> commands = new ArrayList<>();
+        StringBuilder command = new StringBuilder(QUERY_PACKAGES_COMMAND_PREFIX);
+        for (final String ownerName : ownerNames) {
+            if (installedPackages.containsKey(ownerName)) {
+                continue;
+            }
+            if (command.length() + 1 + ownerName.length() > PathBatchQuery.MAX_COMMAND_LENGTH) {
+                commands.add(command.toString());
+                command = new StringBuilder(QUERY_PACKAGES_COMMAND_PREFIX);
+            }
+            command.append(' ').append(ownerName);
+        }
+        if (command.length() > QUERY_PACKAGES_COMMAND_PREFIX.length()) {
+            commands.add(command.toString());
+        }
+        for (final String getPackagesStatusCommand : commands) {
+            final StringBuilder packageStatusOutput = new StringBuilder();
+            try {
+                executor.execute(new File("."), null, getPackagesStatusCommand, line -> packageStatusOutput.append(line).append('\n'));
+            } catch (ExecutableRunnerException | IntegrationException e) {
+                // dpkg -s fails if any one of the packages is not installed; the output still covers the rest
+                logger.debug(String.format("Error executing %s: %s", getPackagesStatusCommand, e.getMessage()));
+            }
+            try {
+                installedPackages.putAll(DpkgDatabase.parseStatus(new StringReader(packageStatusOutput.toString()), new PackageIndex()));
+            } catch (final IOException e) {
+                logger.error(String.format("Error parsing the output of %s: %s", getPackagesStatusCommand, e.getMessage()));
             }
         }
-        return Optional.empty();
     }
 }
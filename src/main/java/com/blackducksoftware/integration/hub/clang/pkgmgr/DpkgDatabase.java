@@ -0,0 +1,161 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+
+// Reads dpkg's database (status, info/*.list and diversions) directly
+public class DpkgDatabase {
+    private static final String STATUS_FILENAME = "status";
+    private static final String DIVERSIONS_FILENAME = "diversions";
+    private static final String INFO_DIRNAME = "info";
+    private static final String LIST_FILENAME_SUFFIX = ".list";
+    private static final String LOCAL_DIVERSION_PACKAGE = ":";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final File databaseDir;
+
+    public DpkgDatabase(final File databaseDir) {
+        this.databaseDir = databaseDir;
+    }
+
+    public PackageIndex load() throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final PackageIndex packageIndex = new PackageIndex();
+        final Map<String, PackageDetails> installedPackages;
+        try (Reader statusReader = openReader(new File(databaseDir, STATUS_FILENAME))) {
+            installedPackages = parseStatus(statusReader, packageIndex);
+        }
+        final File[] listFiles = new File(databaseDir, INFO_DIRNAME).listFiles((dir, name) -> name.endsWith(LIST_FILENAME_SUFFIX));
+        if (listFiles == null) {
+            throw new IOException(String.format("Unable to list %s", new File(databaseDir, INFO_DIRNAME).getAbsolutePath()));
+        }
+        for (final File listFile : listFiles) {
+            final String listName = StringUtils.removeEnd(listFile.getName(), LIST_FILENAME_SUFFIX);
+            final PackageDetails owner = installedPackages.get(listName);
+            if (owner == null) {
+                logger.trace(String.format("Skipping %s; the package is not installed", listFile.getAbsolutePath()));
+                continue;
+            }
+            try (Reader listReader = openReader(listFile)) {
+                parseList(listReader, owner, packageIndex);
+            }
+        }
+        final File diversionsFile = new File(databaseDir, DIVERSIONS_FILENAME);
+        if (diversionsFile.exists()) {
+            try (Reader diversionsReader = openReader(diversionsFile)) {
+                applyDiversions(diversionsReader, packageIndex);
+            }
+        }
+        logger.info(String.format("Indexed %d files from %d dpkg packages in %d ms", packageIndex.getPathCount(), packageIndex.getPackageCount(), System.currentTimeMillis() - startTime));
+        return packageIndex;
+    }
+
+    // Returns the installed packages keyed by the names their .list files use: name:arch, and also plain name
+    static Map<String, PackageDetails> parseStatus(final Reader statusReader, final PackageIndex packageIndex) throws IOException {
+        final Map<String, PackageDetails> installedPackages = new HashMap<>();
+        final BufferedReader bufferedReader = new BufferedReader(statusReader);
+        final Map<String, String> fields = new HashMap<>();
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            if (line.isEmpty()) {
+                addInstalledPackage(fields, installedPackages, packageIndex);
+                fields.clear();
+            } else if (!Character.isWhitespace(line.charAt(0))) {
+                final int colonIndex = line.indexOf(':');
+                if (colonIndex > 0) {
+                    fields.put(line.substring(0, colonIndex), line.substring(colonIndex + 1).trim());
+                }
+            }
+        }
+        addInstalledPackage(fields, installedPackages, packageIndex);
+        return installedPackages;
+    }
+
+    void parseList(final Reader listReader, final PackageDetails owner, final PackageIndex packageIndex) throws IOException {
+        final BufferedReader bufferedReader = new BufferedReader(listReader);
+        String path;
+        while ((path = bufferedReader.readLine()) != null) {
+            packageIndex.addOwner(path, owner);
+        }
+    }
+
+    // Each diversion is three lines: the path packages install to, the path the file is moved to, and the diverting package
+    void applyDiversions(final Reader diversionsReader, final PackageIndex packageIndex) throws IOException {
+        final BufferedReader bufferedReader = new BufferedReader(diversionsReader);
+        String divertedFromPath;
+        while ((divertedFromPath = bufferedReader.readLine()) != null) {
+            final String divertedToPath = bufferedReader.readLine();
+            final String divertingPackageName = bufferedReader.readLine();
+            if (divertedToPath == null || divertingPackageName == null) {
+                logger.warn(String.format("Ignoring incomplete diversion of %s", divertedFromPath));
+                break;
+            }
+            final List<PackageDetails> owners = new ArrayList<>(packageIndex.getOwners(divertedFromPath));
+            packageIndex.removeOwners(divertedFromPath);
+            for (final PackageDetails owner : owners) {
+                if (!LOCAL_DIVERSION_PACKAGE.equals(divertingPackageName) && divertingPackageName.equals(owner.getPackageName().orElse(null))) {
+                    packageIndex.addOwner(divertedFromPath, owner);
+                } else {
+                    packageIndex.addOwner(divertedToPath, owner);
+                }
+            }
+        }
+    }
+
+    private static void addInstalledPackage(final Map<String, String> fields, final Map<String, PackageDetails> installedPackages, final PackageIndex packageIndex) {
+        final String packageName = fields.get("Package");
+        final String status = fields.get("Status");
+        if (packageName == null || status == null || !status.endsWith(" installed")) {
+            return;
+        }
+        final Optional<String> packageArch = Optional.ofNullable(fields.get("Architecture"));
+        final PackageDetails packageDetails = packageIndex.intern(new PackageDetails(Optional.of(packageName), Optional.ofNullable(fields.get("Version")), packageArch));
+        installedPackages.put(packageName, packageDetails);
+        if (packageArch.isPresent()) {
+            installedPackages.put(String.format("%s:%s", packageName, packageArch.get()), packageDetails);
+        }
+    }
+
+    private Reader openReader(final File file) throws IOException {
+        // Not Files.newBufferedReader: a path that is not valid UTF-8 should not stop the whole load
+        return new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+// Remembers which packages own each file (or that none does) between runs.
+// The whole cache is dropped when the package manager changes, or when any of its database files changes size or mtime.
+public class PackageCache {
+    private static final int CACHE_FORMAT_VERSION = 1;
+    private static final long MISSING_FILE = -1L;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final File cacheFile;
+    private final String fingerprint;
+    private final Map<String, List<CachedPackage>> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public PackageCache(final String cacheFilePath, final String pkgMgrName, final List<File> databaseFiles) {
+        if (StringUtils.isNotBlank(cacheFilePath) && databaseFiles.isEmpty()) {
+            logger.warn(String.format("Not caching package lookups: there is no way to tell when the %s database changes", pkgMgrName));
+        }
+        this.cacheFile = StringUtils.isBlank(cacheFilePath) || databaseFiles.isEmpty() ? null : new File(cacheFilePath);
+        this.fingerprint = createFingerprint(pkgMgrName, databaseFiles);
+    }
+
+    public boolean isEnabled() {
+        return cacheFile != null;
+    }
+
+    public void load() {
+        if (!isEnabled() || !cacheFile.exists()) {
+            return;
+        }
+        try {
+            final String cacheJson = FileUtils.readFileToString(cacheFile, StandardCharsets.UTF_8);
+            final CacheContents cacheContents = new Gson().fromJson(cacheJson, CacheContents.class);
+            if (cacheContents == null || cacheContents.version != CACHE_FORMAT_VERSION || cacheContents.entries == null) {
+                logger.info(String.format("Ignoring package cache %s; it was written in an unsupported format", cacheFile.getAbsolutePath()));
+                return;
+            }
+            if (!fingerprint.equals(cacheContents.fingerprint)) {
+                logger.info(String.format("Ignoring package cache %s; the package database has changed since it was written", cacheFile.getAbsolutePath()));
+                return;
+            }
+            entries.putAll(cacheContents.entries);
+            logger.debug(String.format("Loaded %d entries from package cache %s", entries.size(), cacheFile.getAbsolutePath()));
+        } catch (IOException | JsonParseException e) {
+            logger.warn(String.format("Error reading package cache %s; ignoring it: %s", cacheFile.getAbsolutePath(), e.getMessage()));
+        }
+    }
+
+    // An empty list means the file is known not to be owned by any package
+    public Optional<List<PackageDetails>> get(final DependencyFile dependencyFile) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        final List<CachedPackage> cachedPackages = entries.get(dependencyFile.getFile().getAbsolutePath());
+        if (cachedPackages == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        final List<PackageDetails> packages = new ArrayList<>(cachedPackages.size());
+        for (final CachedPackage cachedPackage : cachedPackages) {
+            packages.add(new PackageDetails(Optional.ofNullable(cachedPackage.name), Optional.ofNullable(cachedPackage.version), Optional.ofNullable(cachedPackage.arch)));
+        }
+        return Optional.of(packages);
+    }
+
+    public void put(final DependencyFile dependencyFile, final List<PackageDetails> packages) {
+        if (!isEnabled()) {
+            return;
+        }
+        final List<CachedPackage> cachedPackages = new ArrayList<>(packages.size());
+        for (final PackageDetails packageDetails : packages) {
+            final CachedPackage cachedPackage = new CachedPackage();
+            cachedPackage.name = packageDetails.getPackageName().orElse(null);
+            cachedPackage.version = packageDetails.getPackageVersion().orElse(null);
+            cachedPackage.arch = packageDetails.getPackageArch().orElse(null);
+            cachedPackages.add(cachedPackage);
+        }
+        entries.put(dependencyFile.getFile().getAbsolutePath(), cachedPackages);
+    }
+
+    // Unlike the dependency cache, entries not used this run are kept: they stay valid until the package database changes
+    public void save() {
+        if (!isEnabled()) {
+            return;
+        }
+        logger.info(String.format("Package cache: %d hits, %d misses", hits.get(), misses.get()));
+        final CacheContents cacheContents = new CacheContents();
+        cacheContents.version = CACHE_FORMAT_VERSION;
+        cacheContents.fingerprint = fingerprint;
+        cacheContents.entries = entries;
+        final File tempCacheFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+        try {
+            FileUtils.writeStringToFile(tempCacheFile, new Gson().toJson(cacheContents), StandardCharsets.UTF_8);
+            Files.move(tempCacheFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            logger.warn(String.format("Error writing package cache %s: %s", cacheFile.getAbsolutePath(), e.getMessage()));
+            FileUtils.deleteQuietly(tempCacheFile);
+        }
+    }
+
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    private String createFingerprint(final String pkgMgrName, final List<File> databaseFiles) {
+        final StringBuilder fingerprintBuilder = new StringBuilder(pkgMgrName);
+        for (final File databaseFile : databaseFiles) {
+            final boolean exists = databaseFile.exists();
+            fingerprintBuilder.append(String.format("\n%s:%d:%d", databaseFile.getAbsolutePath(), exists ? databaseFile.lastModified() : MISSING_FILE, exists ? databaseFile.length() : MISSING_FILE));
+        }
+        return fingerprintBuilder.toString();
+    }
+
+    private static class CacheContents {
+        private int version;
+        private String fingerprint;
+        private Map<String, List<CachedPackage>> entries;
+    }
+
+    private static class CachedPackage {
+        private String name;
+        private String version;
+        private String arch;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+
+// In-memory file ownership index, built once from a package manager's database so that lookups are hash probes instead of process runs.
+// Paths are stored per directory so directory names are shared, and equal PackageDetails are stored once.
+public class PackageIndex {
+    private static final String USR_DIR = "/usr";
+    // Top level dirs that are symlinks into /usr on usrmerge systems; a package may list a file under either name
+    private static final List<String> USRMERGE_DIRS = Arrays.asList("/bin/", "/sbin/", "/lib/", "/lib32/", "/lib64/", "/libx32/");
+    private final Map<String, Map<String, List<PackageDetails>>> ownersByDirAndName = new HashMap<>();
+    private final Map<PackageDetails, PackageDetails> internedPackages = new HashMap<>();
+    private int pathCount = 0;
+
+    public PackageDetails intern(final PackageDetails packageDetails) {
+        final PackageDetails internedPackageDetails = internedPackages.putIfAbsent(packageDetails, packageDetails);
+        return internedPackageDetails == null ? packageDetails : internedPackageDetails;
+    }
+
+    public void addOwner(final String path, final PackageDetails owner) {
+        final int lastSlashIndex = path.lastIndexOf('/');
+        if (lastSlashIndex < 0 || lastSlashIndex == path.length() - 1) {
+            return;
+        }
+        final String dir = path.substring(0, lastSlashIndex);
+        final String name = path.substring(lastSlashIndex + 1);
+        final Map<String, List<PackageDetails>> ownersByName = ownersByDirAndName.computeIfAbsent(dir, k -> new HashMap<>());
+        final PackageDetails internedOwner = intern(owner);
+        final List<PackageDetails> owners = ownersByName.get(name);
+        if (owners == null) {
+            ownersByName.put(name, Collections.singletonList(internedOwner));
+            pathCount++;
+        } else if (!owners.contains(internedOwner)) {
+            final List<PackageDetails> newOwners = new ArrayList<>(owners.size() + 1);
+            newOwners.addAll(owners);
+            newOwners.add(internedOwner);
+            ownersByName.put(name, newOwners);
+        }
+    }
+
+    public void removeOwners(final String path) {
+        final int lastSlashIndex = path.lastIndexOf('/');
+        if (lastSlashIndex < 0) {
+            return;
+        }
+        final Map<String, List<PackageDetails>> ownersByName = ownersByDirAndName.get(path.substring(0, lastSlashIndex));
+        if (ownersByName != null && ownersByName.remove(path.substring(lastSlashIndex + 1)) != null) {
+            pathCount--;
+        }
+    }
+
+    public List<PackageDetails> getOwners(final String path) {
+        final int lastSlashIndex = path.lastIndexOf('/');
+        if (lastSlashIndex < 0) {
+            return Collections.emptyList();
+        }
+        final Map<String, List<PackageDetails>> ownersByName = ownersByDirAndName.get(path.substring(0, lastSlashIndex));
+        if (ownersByName == null) {
+            return Collections.emptyList();
+        }
+        final List<PackageDetails> owners = ownersByName.get(path.substring(lastSlashIndex + 1));
+        return owners == null ? Collections.emptyList() : Collections.unmodifiableList(owners);
+    }
+
+    // Like getOwners, but also tries the file's other name on usrmerge systems
+    public List<PackageDetails> lookup(final File file) {
+        final String path = file.getAbsolutePath();
+        final List<PackageDetails> owners = getOwners(path);
+        if (!owners.isEmpty()) {
+            return owners;
+        }
+        final String usrmergeAlias = getUsrmergeAlias(path);
+        if (usrmergeAlias == null) {
+            return owners;
+        }
+        return getOwners(usrmergeAlias);
+    }
+
+    public int getPathCount() {
+        return pathCount;
+    }
+
+    public int getPackageCount() {
+        return internedPackages.size();
+    }
+
+    private String getUsrmergeAlias(final String path) {
+        for (final String usrmergeDir : USRMERGE_DIRS) {
+            if (path.startsWith(usrmergeDir)) {
+                return USR_DIR + path;
+            }
+            if (path.startsWith(USR_DIR + usrmergeDir)) {
+                return path.substring(USR_DIR.length());
+            }
+        }
+        return null;
+    }
+}
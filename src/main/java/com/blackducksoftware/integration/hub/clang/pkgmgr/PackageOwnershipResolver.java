@@ -0,0 +1,205 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+
+// Sits in front of PkgMgr.getDependencyDetails and learns, per directory, which packages own the files in it (or that no package does).
+// Once enough lookups in a directory agree, and none disagree, the other files directly in it are answered without asking the package manager.
+public class PackageOwnershipResolver {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final int confirmationsRequired;
+    private final int minDepth;
+    private final Map<String, DirectoryNode> dirNodes = new HashMap<>();
+    private int fileCount = 0;
+    private int lookupCount = 0;
+    private int memoHitCount = 0;
+
+    // minDepth keeps shallow dirs like /usr/include, which hold files from many packages, from ever being generalized
+    public PackageOwnershipResolver(final int confirmationsRequired, final int minDepth) {
+        this.confirmationsRequired = Math.max(1, confirmationsRequired);
+        this.minDepth = Math.max(1, minDepth);
+    }
+
+    // The memo is shared, so it is only read and updated while holding the lock; the package manager itself is asked outside it,
+    // so that lookups from several threads still run side by side
+    public Map<DependencyFile, List<PackageDetails>> getDependencyDetails(final Executor executor, final PkgMgr pkgMgr, final Set<File> filesForIScan,
+            final Collection<DependencyFile> dependencyFiles) {
+        final Map<DependencyFile, List<PackageDetails>> dependencyDetailsByFile = new HashMap<>(dependencyFiles.size());
+        final Map<String, List<DependencyFile>> dependencyFilesByDir = new TreeMap<>();
+        for (final DependencyFile dependencyFile : dependencyFiles) {
+            dependencyFilesByDir.computeIfAbsent(dependencyFile.getFile().getAbsoluteFile().getParent(), k -> new ArrayList<>()).add(dependencyFile);
+        }
+        // First round: look up just enough files from each dir to be able to confirm its ownership
+        final List<DependencyFile> probeFiles = new ArrayList<>();
+        final List<DependencyFile> remainingFiles = new ArrayList<>();
+        synchronized (this) {
+            fileCount += dependencyFiles.size();
+            for (final List<DependencyFile> dirDependencyFiles : dependencyFilesByDir.values()) {
+                int dirProbeCount = 0;
+                for (final DependencyFile dependencyFile : dirDependencyFiles) {
+                    if (answerFromMemo(dependencyFile, filesForIScan, dependencyDetailsByFile)) {
+                        continue;
+                    }
+                    if (dirProbeCount < confirmationsRequired) {
+                        probeFiles.add(dependencyFile);
+                        dirProbeCount++;
+                    } else {
+                        remainingFiles.add(dependencyFile);
+                    }
+                }
+            }
+        }
+        lookUp(executor, pkgMgr, filesForIScan, probeFiles, dependencyDetailsByFile);
+        // Second round: answer what the first round confirmed, and look up the rest
+        final List<DependencyFile> unansweredFiles = new ArrayList<>();
+        synchronized (this) {
+            for (final DependencyFile dependencyFile : remainingFiles) {
+                if (!answerFromMemo(dependencyFile, filesForIScan, dependencyDetailsByFile)) {
+                    unansweredFiles.add(dependencyFile);
+                }
+            }
+        }
+        lookUp(executor, pkgMgr, filesForIScan, unansweredFiles, dependencyDetailsByFile);
+        synchronized (this) {
+            logger.info(String.format("Package ownership memo: answered %d of %d files; looked up %d", memoHitCount, fileCount, lookupCount));
+        }
+        return dependencyDetailsByFile;
+    }
+
+    public synchronized int getLookupCount() {
+        return lookupCount;
+    }
+
+    public synchronized int getMemoHitCount() {
+        return memoHitCount;
+    }
+
+    private void lookUp(final Executor executor, final PkgMgr pkgMgr, final Set<File> filesForIScan, final List<DependencyFile> dependencyFiles,
+            final Map<DependencyFile, List<PackageDetails>> dependencyDetailsByFile) {
+        if (dependencyFiles.isEmpty()) {
+            return;
+        }
+        final Map<DependencyFile, List<PackageDetails>> lookedUpDependencyDetailsByFile = pkgMgr.getDependencyDetails(executor, filesForIScan, dependencyFiles);
+        synchronized (this) {
+            lookupCount += dependencyFiles.size();
+            for (final Map.Entry<DependencyFile, List<PackageDetails>> dependencyDetails : lookedUpDependencyDetailsByFile.entrySet()) {
+                record(dependencyDetails.getKey().getFile(), dependencyDetails.getValue());
+            }
+        }
+        dependencyDetailsByFile.putAll(lookedUpDependencyDetailsByFile);
+    }
+
+    private boolean answerFromMemo(final DependencyFile dependencyFile, final Set<File> filesForIScan, final Map<DependencyFile, List<PackageDetails>> dependencyDetailsByFile) {
+        final Optional<Set<PackageDetails>> owners = getConfirmedOwners(dependencyFile.getFile());
+        if (!owners.isPresent()) {
+            return false;
+        }
+        memoHitCount++;
+        if (owners.get().isEmpty() && !dependencyFile.isInBuildDir()) {
+            logger.trace(String.format("%s should be scanned by iScan", dependencyFile.getFile().getAbsolutePath()));
+            filesForIScan.add(dependencyFile.getFile());
+        }
+        dependencyDetailsByFile.put(dependencyFile, new ArrayList<>(owners.get()));
+        return true;
+    }
+
+    // Only the file's own dir sees the result: a subdir may belong to another package (x86_64-linux-gnu/bits vs x86_64-linux-gnu/asm),
+    // so what is learned about one dir is never applied to its parent or its siblings
+    private void record(final File file, final List<PackageDetails> owners) {
+        final Optional<String> dirPath = getMemoDirPath(file);
+        if (dirPath.isPresent()) {
+            dirNodes.computeIfAbsent(dirPath.get(), k -> new DirectoryNode()).observe(new HashSet<>(owners));
+        }
+    }
+
+    private Optional<Set<PackageDetails>> getConfirmedOwners(final File file) {
+        final Optional<String> dirPath = getMemoDirPath(file);
+        if (!dirPath.isPresent()) {
+            return Optional.empty();
+        }
+        final DirectoryNode node = dirNodes.get(dirPath.get());
+        if (node == null || !node.isConfirmed(confirmationsRequired)) {
+            return Optional.empty();
+        }
+        return Optional.of(node.owners);
+    }
+
+    // The file's parent dir, if it is at least minDepth path components deep
+    private Optional<String> getMemoDirPath(final File file) {
+        final String dirPath = file.getAbsoluteFile().getParent();
+        if (dirPath == null) {
+            return Optional.empty();
+        }
+        int depth = 0;
+        for (int i = 0; i < dirPath.length(); i++) {
+            if (dirPath.charAt(i) == '/' && i + 1 < dirPath.length()) {
+                depth++;
+            }
+        }
+        return depth >= minDepth ? Optional.of(dirPath) : Optional.empty();
+    }
+
+    private static class DirectoryNode {
+        private Set<PackageDetails> owners = null;
+        private int confirmations = 0;
+        private boolean mixed = false;
+
+        private void observe(final Set<PackageDetails> observedOwners) {
+            if (mixed) {
+                return;
+            }
+            if (owners == null) {
+                owners = observedOwners;
+                confirmations = 1;
+            } else if (owners.equals(observedOwners)) {
+                confirmations++;
+            } else {
+                // Once files in a dir disagree, it is never generalized
+                mixed = true;
+                owners = null;
+            }
+        }
+
+        private boolean isConfirmed(final int confirmationsRequired) {
+            return !mixed && confirmations >= confirmationsRequired;
+        }
+    }
+}
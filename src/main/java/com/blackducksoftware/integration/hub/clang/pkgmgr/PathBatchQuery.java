@@ -0,0 +1,128 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
+
+// Runs a package manager query with as many paths per invocation as fit, and attributes the output lines back to the paths
+public class PathBatchQuery<T> {
+    // Well under ARG_MAX (which the environment also counts against)
+    static final int MAX_COMMAND_LENGTH = 100000;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final String commandPrefix;
+    private final int maxCommandLength;
+    private final OutputParser<T> outputParser;
+
+    public interface OutputParser<T> {
+        // Returns the owners of each path that has any (and an empty list for paths the output says are unowned), or empty if the output can't be attributed to the paths
+        Optional<Map<String, List<T>>> parse(List<String> paths, List<String> outputLines);
+    }
+
+    public PathBatchQuery(final String commandPrefix, final OutputParser<T> outputParser) {
+        this(commandPrefix, MAX_COMMAND_LENGTH, outputParser);
+    }
+
+    PathBatchQuery(final String commandPrefix, final int maxCommandLength, final OutputParser<T> outputParser) {
+        this.commandPrefix = commandPrefix;
+        this.maxCommandLength = maxCommandLength;
+        this.outputParser = outputParser;
+    }
+
+    // Files that can't be answered in a batch (chunks whose output can't be attributed, and files a failed command said nothing about)
+    // are added to filesToQueryIndividually; every other file is in the result, with an empty list if nothing owns it
+    public Map<DependencyFile, List<T>> run(final Executor executor, final Collection<DependencyFile> dependencyFiles, final List<DependencyFile> filesToQueryIndividually) {
+        final Map<DependencyFile, List<T>> ownersByFile = new HashMap<>(dependencyFiles.size());
+        for (final List<DependencyFile> chunk : chunk(dependencyFiles, filesToQueryIndividually)) {
+            final List<String> paths = new ArrayList<>(chunk.size());
+            final StringBuilder command = new StringBuilder(commandPrefix);
+            for (final DependencyFile dependencyFile : chunk) {
+                final String path = dependencyFile.getFile().getAbsolutePath();
+                paths.add(path);
+                command.append(' ').append(CommandLine.quote(path));
+            }
+            final List<String> outputLines = new ArrayList<>(chunk.size());
+            boolean commandFailed = false;
+            try {
+                executor.execute(new File("."), null, command.toString(), outputLines::add);
+            } catch (ExecutableRunnerException | IntegrationException e) {
+                // Most package managers exit non-zero if any one of the paths is not owned; the output still covers the rest
+                logger.debug(String.format("Batch query of %d files failed: %s", chunk.size(), e.getMessage()));
+                commandFailed = true;
+            }
+            final Optional<Map<String, List<T>>> ownersByPath = outputParser.parse(paths, outputLines);
+            if (!ownersByPath.isPresent()) {
+                logger.debug(String.format("Unable to attribute the output of a batch query of %d files; querying them individually", chunk.size()));
+                filesToQueryIndividually.addAll(chunk);
+                continue;
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                final List<T> owners = ownersByPath.get().get(paths.get(i));
+                if (owners != null) {
+                    ownersByFile.put(chunk.get(i), owners);
+                } else if (commandFailed) {
+                    // The failure may have been about this path for some other reason than it being unowned
+                    filesToQueryIndividually.add(chunk.get(i));
+                } else {
+                    ownersByFile.put(chunk.get(i), new ArrayList<>(0));
+                }
+            }
+        }
+        return ownersByFile;
+    }
+
+    private List<List<DependencyFile>> chunk(final Collection<DependencyFile> dependencyFiles, final List<DependencyFile> filesToQueryIndividually) {
+        final List<List<DependencyFile>> chunks = new ArrayList<>();
+        List<DependencyFile> chunk = new ArrayList<>();
+        int commandLength = commandPrefix.length();
+        for (final DependencyFile dependencyFile : dependencyFiles) {
+            final String path = CommandLine.quote(dependencyFile.getFile().getAbsolutePath());
+            if (!chunk.isEmpty() && commandLength + 1 + path.length() > maxCommandLength) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                commandLength = commandPrefix.length();
+            }
+            chunk.add(dependencyFile);
+            commandLength += 1 + path.length();
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
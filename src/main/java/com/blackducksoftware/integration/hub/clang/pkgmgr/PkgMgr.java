@@ -24,8 +24,12 @@
 package com.blackducksoftware.integration.hub.clang.pkgmgr;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -63,6 +67,27 @@ public interface PkgMgr {
 
     List<PackageDetails> getDependencyDetails(Executor executor, Set<File> filesForIScan, DependencyFile dependencyFile);
 
+    // Empty if the package manager could not be asked (its command failed, timed out or was killed), as opposed to an empty list,
+    // which means it answered that no package owns the file
+    default Optional<List<PackageDetails>> lookUpDependencyDetails(final Executor executor, final Set<File> filesForIScan, final DependencyFile dependencyFile) {
+        return Optional.of(getDependencyDetails(executor, filesForIScan, dependencyFile));
+    }
+
+    // Package managers that can look up many files per command override this; by default each file is looked up on its own.
+    // Files whose lookup failed are left out of the result, so that callers don't mistake them for files owned by no package.
+    default Map<DependencyFile, List<PackageDetails>> getDependencyDetails(final Executor executor, final Set<File> filesForIScan, final Collection<DependencyFile> dependencyFiles) {
+        final Map<DependencyFile, List<PackageDetails>> dependencyDetailsByFile = new HashMap<>(dependencyFiles.size());
+        for (final DependencyFile dependencyFile : dependencyFiles) {
+            lookUpDependencyDetails(executor, filesForIScan, dependencyFile).ifPresent(dependencyDetails -> dependencyDetailsByFile.put(dependencyFile, dependencyDetails));
+        }
+        return dependencyDetailsByFile;
+    }
+
+    // The files whose size or mtime change whenever a package is installed, removed or upgraded; caching lookups requires at least one
+    default List<File> getDatabaseFiles() {
+        return Collections.emptyList();
+    }
+
     String getCheckPresenceCommand();
 
     String getCheckPresenceCommandOutputExpectedText();
@@ -26,18 +26,23 @@ package com.blackducksoftware.integration.hub.clang.pkgmgr;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.bdio.model.Forge;
 import com.blackducksoftware.integration.hub.clang.PackageDetails;
 import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
 import com.blackducksoftware.integration.hub.clang.execute.Executor;
 import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
 
@@ -48,9 +53,18 @@ public class Rpm implements PkgMgr {
     private static final String VERSION_COMMAND = "rpm --version";
     private static final String EXPECTED_TEXT = "RPM version";
     private static final String QUERY_DEPENDENCY_FILE_COMMAND_PATTERN = "rpm -qf %s";
+    private static final String QUERY_DEPENDENCY_FILES_COMMAND_PREFIX = "rpm -qf";
+    private static final String NOT_OWNED_TEXT = " is not owned by any package";
+    // The Berkeley DB and sqlite rpmdb backends, in both the traditional and the newer sysimage location
+    private static final List<String> DATABASE_FILE_PATHS = Arrays.asList("/var/lib/rpm/Packages", "/var/lib/rpm/rpmdb.sqlite", "/usr/lib/sysimage/rpm/Packages", "/usr/lib/sysimage/rpm/rpmdb.sqlite");
 
     private final List<Forge> forges = Arrays.asList(Forge.CENTOS, Forge.FEDORA, Forge.REDHAT);
 
+    @Value("${pkg.mgr.index.enabled:false}")
+    private boolean indexEnabled;
+
+    private Optional<PackageIndex> index = null;
+
     @Override
     public Forge getDefaultForge() {
         return forges.get(0);
@@ -63,38 +77,122 @@ public class Rpm implements PkgMgr {
 
     @Override
     public List<PackageDetails> getDependencyDetails(final Executor executor, final Set<File> filesForIScan, final DependencyFile dependencyFile) {
+        return lookUpDependencyDetails(executor, filesForIScan, dependencyFile).orElseGet(ArrayList::new);
+    }
+
+    @Override
+    public Optional<List<PackageDetails>> lookUpDependencyDetails(final Executor executor, final Set<File> filesForIScan, final DependencyFile dependencyFile) {
         final List<PackageDetails> dependencyDetailsList = new ArrayList<>(3);
-        final String getPackageCommand = String.format(QUERY_DEPENDENCY_FILE_COMMAND_PATTERN, dependencyFile.getFile().getAbsolutePath());
-        try {
-            final String queryPackageOutput = executor.execute(new File("."), null, getPackageCommand);
-            logger.debug(String.format("queryPackageOutput: %s", queryPackageOutput));
-            final String[] packageLines = queryPackageOutput.split("\n");
-            for (final String packageLine : packageLines) {
-                if (!valid(packageLine)) {
-                    logger.debug(String.format("Skipping line: %s", packageLine));
-                    continue;
-                }
-                final int lastDotIndex = packageLine.lastIndexOf('.');
-                final String arch = packageLine.substring(lastDotIndex + 1);
-                final int lastDashIndex = packageLine.lastIndexOf('-');
-                final String nameVersion = packageLine.substring(0, lastDashIndex);
-                final int secondToLastDashIndex = nameVersion.lastIndexOf('-');
-                final String versionRelease = packageLine.substring(secondToLastDashIndex + 1, lastDotIndex);
-                final String artifact = packageLine.substring(0, secondToLastDashIndex);
-                final PackageDetails dependencyDetails = new PackageDetails(Optional.ofNullable(artifact), Optional.ofNullable(versionRelease), Optional.ofNullable(arch));
-                dependencyDetailsList.add(dependencyDetails);
+        final Optional<PackageIndex> packageIndex = getIndex(executor);
+        if (packageIndex.isPresent()) {
+            dependencyDetailsList.addAll(packageIndex.get().lookup(dependencyFile.getFile()));
+            if (dependencyDetailsList.isEmpty()) {
+                logger.debug(String.format("%s is not owned by any installed package", dependencyFile.getFile().getAbsolutePath()));
+                handleUnownedFile(filesForIScan, dependencyFile);
             }
-            return dependencyDetailsList;
+            return Optional.of(dependencyDetailsList);
+        }
+        final String getPackageCommand = String.format(QUERY_DEPENDENCY_FILE_COMMAND_PATTERN, CommandLine.quote(dependencyFile.getFile().getAbsolutePath()));
+        final List<String> packageLines = new ArrayList<>(1);
+        try {
+            executor.execute(new File("."), null, getPackageCommand, packageLines::add);
         } catch (ExecutableRunnerException | IntegrationException e) {
-            logger.error(String.format("Error executing %s: %s", getPackageCommand, e.getMessage()));
-            if (!dependencyFile.isInBuildDir()) {
-                logger.info(String.format("%s should be scanned by iScan", dependencyFile.getFile().getAbsolutePath()));
-                filesForIScan.add(dependencyFile.getFile());
-            } else {
-                logger.trace(String.format("No point in scanning %s with iScan since it's in the source.dir", dependencyFile.getFile().getAbsolutePath()));
+            // rpm -qf exits non-zero for an unowned file too, but then says so, which is still an answer
+            if (packageLines.isEmpty() || !packageLines.get(0).endsWith(NOT_OWNED_TEXT)) {
+                logger.error(String.format("Error executing %s: %s", getPackageCommand, e.getMessage()));
+                handleUnownedFile(filesForIScan, dependencyFile);
+                return Optional.empty();
+            }
+        }
+        logger.debug(String.format("queryPackageOutput: %s", packageLines));
+        for (final String packageLine : packageLines) {
+            if (!valid(packageLine)) {
+                logger.debug(String.format("Skipping line: %s", packageLine));
+                continue;
             }
-            return dependencyDetailsList;
+            dependencyDetailsList.add(toPackageDetails(packageLine));
+        }
+        if (dependencyDetailsList.isEmpty()) {
+            logger.debug(String.format("%s is not owned by any installed package", dependencyFile.getFile().getAbsolutePath()));
+            handleUnownedFile(filesForIScan, dependencyFile);
         }
+        return Optional.of(dependencyDetailsList);
+    }
+
+    @Override
+    public Map<DependencyFile, List<PackageDetails>> getDependencyDetails(final Executor executor, final Set<File> filesForIScan, final Collection<DependencyFile> dependencyFiles) {
+        if (getIndex(executor).isPresent()) {
+            return PkgMgr.super.getDependencyDetails(executor, filesForIScan, dependencyFiles);
+        }
+        final List<DependencyFile> filesToQueryIndividually = new ArrayList<>();
+        final Map<DependencyFile, List<PackageDetails>> dependencyDetailsByFile = new PathBatchQuery<>(QUERY_DEPENDENCY_FILES_COMMAND_PREFIX, this::parseBatchOutput).run(executor, dependencyFiles, filesToQueryIndividually);
+        for (final Map.Entry<DependencyFile, List<PackageDetails>> dependencyDetails : dependencyDetailsByFile.entrySet()) {
+            if (dependencyDetails.getValue().isEmpty()) {
+                logger.debug(String.format("%s is not owned by any installed package", dependencyDetails.getKey().getFile().getAbsolutePath()));
+                handleUnownedFile(filesForIScan, dependencyDetails.getKey());
+            }
+        }
+        for (final DependencyFile dependencyFile : filesToQueryIndividually) {
+            lookUpDependencyDetails(executor, filesForIScan, dependencyFile).ifPresent(dependencyDetails -> dependencyDetailsByFile.put(dependencyFile, dependencyDetails));
+        }
+        return dependencyDetailsByFile;
+    }
+
+    // rpm -qf prints one line per path, in order, but a file owned by several packages gets several lines.
+    // Lines can only be matched to paths by position when there is exactly one per path
+    private Optional<Map<String, List<PackageDetails>>> parseBatchOutput(final List<String> paths, final List<String> outputLines) {
+        if (outputLines.size() != paths.size()) {
+            return Optional.empty();
+        }
+        final Map<String, List<PackageDetails>> dependencyDetailsByPath = new HashMap<>(paths.size());
+        for (int i = 0; i < paths.size(); i++) {
+            final String packageLine = outputLines.get(i);
+            if (packageLine.endsWith(NOT_OWNED_TEXT)) {
+                dependencyDetailsByPath.put(paths.get(i), new ArrayList<>(0));
+                continue;
+            }
+            if (!valid(packageLine)) {
+                return Optional.empty();
+            }
+            dependencyDetailsByPath.put(paths.get(i), new ArrayList<>(Arrays.asList(toPackageDetails(packageLine))));
+        }
+        return Optional.of(dependencyDetailsByPath);
+    }
+
+    // Lines look like "glibc-headers-2.17-260.el7.x86_64"
+    private PackageDetails toPackageDetails(final String packageLine) {
+        final int lastDotIndex = packageLine.lastIndexOf('.');
+        final String arch = packageLine.substring(lastDotIndex + 1);
+        final int lastDashIndex = packageLine.lastIndexOf('-');
+        final String nameVersion = packageLine.substring(0, lastDashIndex);
+        final int secondToLastDashIndex = nameVersion.lastIndexOf('-');
+        final String versionRelease = packageLine.substring(secondToLastDashIndex + 1, lastDotIndex);
+        final String artifact = packageLine.substring(0, secondToLastDashIndex);
+        return new PackageDetails(Optional.ofNullable(artifact), Optional.ofNullable(versionRelease), Optional.ofNullable(arch));
+    }
+
+    private void handleUnownedFile(final Set<File> filesForIScan, final DependencyFile dependencyFile) {
+        if (!dependencyFile.isInBuildDir()) {
+            logger.info(String.format("%s should be scanned by iScan", dependencyFile.getFile().getAbsolutePath()));
+            filesForIScan.add(dependencyFile.getFile());
+        } else {
+            logger.trace(String.format("No point in scanning %s with iScan since it's in the source.dir", dependencyFile.getFile().getAbsolutePath()));
+        }
+    }
+
+    // Loaded on first use; if the query fails, rpm is queried per file instead
+    private synchronized Optional<PackageIndex> getIndex(final Executor executor) {
+        if (index == null) {
+            index = Optional.empty();
+            if (indexEnabled) {
+                try {
+                    index = Optional.of(new RpmDatabase().load(executor));
+                } catch (ExecutableRunnerException | IntegrationException e) {
+                    logger.warn(String.format("Unable to read the rpm database; will run rpm for each file instead: %s", e.getMessage()));
+                }
+            }
+        }
+        return index;
     }
 
     @Override
@@ -102,6 +200,15 @@ public class Rpm implements PkgMgr {
         return PKG_MGR_NAME;
     }
 
+    @Override
+    public List<File> getDatabaseFiles() {
+        final List<File> databaseFiles = new ArrayList<>(DATABASE_FILE_PATHS.size());
+        for (final String databaseFilePath : DATABASE_FILE_PATHS) {
+            databaseFiles.add(new File(databaseFilePath));
+        }
+        return databaseFiles;
+    }
+
     @Override
     public String getCheckPresenceCommand() {
         return VERSION_COMMAND;
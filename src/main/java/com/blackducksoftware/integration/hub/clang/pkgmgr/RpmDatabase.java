@@ -0,0 +1,73 @@
+/**
+ * sb-clang-extractor
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import java.io.File;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
+
+// Reads the whole rpm database with one query that prints a line per file: path, name, version-release and arch, tab-separated
+public class RpmDatabase {
+    // Quoted so that rpm, not the command line split, sees the backslash escapes. %{=TAG} repeats the package's value for each file
+    private static final String QUERY_ALL_FILES_COMMAND = "rpm -qa --queryformat '[%{FILENAMES}\\t%{=NAME}\\t%{=VERSION}-%{=RELEASE}\\t%{=ARCH}\\n]'";
+    private static final char FIELD_SEPARATOR = '\t';
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private PackageDetails previousOwner = null;
+    private String previousOwnerFields = null;
+
+    public PackageIndex load(final Executor executor) throws ExecutableRunnerException, IntegrationException {
+        final long startTime = System.currentTimeMillis();
+        final PackageIndex packageIndex = new PackageIndex();
+        executor.execute(new File("."), null, QUERY_ALL_FILES_COMMAND, line -> parseLine(line, packageIndex));
+        logger.info(String.format("Indexed %d files from %d rpm packages in %d ms", packageIndex.getPathCount(), packageIndex.getPackageCount(), System.currentTimeMillis() - startTime));
+        return packageIndex;
+    }
+
+    void parseLine(final String line, final PackageIndex packageIndex) {
+        final int pathEndIndex = line.indexOf(FIELD_SEPARATOR);
+        final int nameEndIndex = line.indexOf(FIELD_SEPARATOR, pathEndIndex + 1);
+        final int versionEndIndex = line.indexOf(FIELD_SEPARATOR, nameEndIndex + 1);
+        if (pathEndIndex < 0 || nameEndIndex < 0 || versionEndIndex < 0) {
+            logger.debug(String.format("Skipping line: %s", line));
+            return;
+        }
+        // Lines for the same package are consecutive, so only build PackageDetails when the package changes
+        final String ownerFields = line.substring(pathEndIndex + 1);
+        if (!ownerFields.equals(previousOwnerFields)) {
+            final String name = line.substring(pathEndIndex + 1, nameEndIndex);
+            final String versionRelease = line.substring(nameEndIndex + 1, versionEndIndex);
+            final String arch = line.substring(versionEndIndex + 1);
+            previousOwner = packageIndex.intern(new PackageDetails(Optional.of(name), Optional.of(versionRelease), Optional.of(arch)));
+            previousOwnerFields = ownerFields;
+        }
+        packageIndex.addOwner(line.substring(0, pathEndIndex), previousOwner);
+    }
+}
@@ -0,0 +1,273 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.blackducksoftware.integration.hub.bdio.model.dependency.Dependency;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+import com.blackducksoftware.integration.hub.clang.pkgmgr.Apk;
+import com.blackducksoftware.integration.hub.clang.pkgmgr.Dpkg;
+import com.blackducksoftware.integration.hub.clang.pkgmgr.PkgMgr;
+import com.blackducksoftware.integration.hub.clang.pkgmgr.Rpm;
+
+// Fails when a hot path allocates more per translation unit, file looked up or package than its budget in allocation-budgets-java<N>.properties.
+// Allocation differs between JVM versions (Java 8's strings are char[], twice the size of later compact strings), so each major version the
+// build runs on has its own budgets; Java 8, which the Gradle build runs on, must have them, and other versions without any are skipped.
+// Run with -Dallocation.budget.calibrate=true (./gradlew test -PcalibrateAllocationBudgets) to write budgets from what is measured now,
+// with headroom, to build/ instead of checking them; copy that file over the one in src/test/resources to adopt them.
+public class AllocationBudgetTest {
+    private static final String BUDGETS_FILE_NAME_PATTERN = "allocation-budgets-java%s.properties";
+    private static final String REQUIRED_JAVA_VERSION = "8";
+    private static boolean calibrationStarted = false;
+    private static final double CALIBRATION_HEADROOM = 1.5;
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final int HEADERS_PER_TRANSLATION_UNIT = 100;
+    private static final int LOOKUP_FILE_COUNT = 200;
+    private static final int PACKAGE_COUNT = 200;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final boolean calibrating = Boolean.getBoolean("allocation.budget.calibrate");
+    private final Properties budgets = new Properties();
+    private com.sun.management.ThreadMXBean threadMXBean;
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    @Before
+    public void setup() throws IOException {
+        Assume.assumeTrue("Thread allocation counting is not available", ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("Thread allocation counting is not available", threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+        if (calibrating) {
+            return;
+        }
+        final String budgetsResource = "/" + getBudgetsFileName();
+        try (InputStream budgetsInputStream = getClass().getResourceAsStream(budgetsResource)) {
+            if (budgetsInputStream == null) {
+                assertFalse(String.format("No allocation budgets for Java %s in %s", REQUIRED_JAVA_VERSION, budgetsResource), REQUIRED_JAVA_VERSION.equals(getJavaMajorVersion()));
+                Assume.assumeTrue(String.format("No allocation budgets calibrated on Java %s", getJavaMajorVersion()), false);
+            }
+            budgets.load(budgetsInputStream);
+        }
+    }
+
+    @Test
+    public void testParseDependencyFile() throws Exception {
+        final StringBuilder depsMk = new StringBuilder("stccore/sbos/CMakeFiles/sbos.dir/sberror.c.o: /home/dev/stcapi/stccore/sbos/sberror.c \\\n");
+        for (int header = 0; header < HEADERS_PER_TRANSLATION_UNIT; header++) {
+            depsMk.append(String.format(" /usr/include/x86_64-linux-gnu/module_%d/header_%d.h \\\n", header % 12, header));
+        }
+        final File depsMkFile = tempFolder.newFile("deps.mk");
+        FileUtils.writeStringToFile(depsMkFile, depsMk.toString(), StandardCharsets.UTF_8);
+        final List<String> dependencyFilePaths = new ArrayList<>(HEADERS_PER_TRANSLATION_UNIT + 1);
+        final long allocatedBytes = measureAllocatedBytes(() -> {
+            dependencyFilePaths.clear();
+            DependencyFileParser.parse(depsMkFile, dependencyFilePaths);
+        });
+        assertEquals(HEADERS_PER_TRANSLATION_UNIT + 1, dependencyFilePaths.size());
+        checkBudget("parse.dependency.file.bytes.per.translation.unit", allocatedBytes, 1);
+    }
+
+    @Test
+    public void testDpkgLookup() throws Exception {
+        final CannedOutputExecutor executor = new CannedOutputExecutor();
+        final List<String> statusLines = new ArrayList<>();
+        for (final DependencyFile dependencyFile : createDependencyFiles()) {
+            final int packageNumber = getPackageNumber(dependencyFile);
+            executor.addLine("dpkg -S", String.format("libpackage%d-dev:amd64: %s", packageNumber, dependencyFile.getFile().getAbsolutePath()));
+        }
+        for (int packageNumber = 0; packageNumber < PACKAGE_COUNT; packageNumber++) {
+            statusLines.add(String.format("Package: libpackage%d-dev", packageNumber));
+            statusLines.add("Status: install ok installed");
+            statusLines.add("Architecture: amd64");
+            statusLines.add(String.format("Version: 1.2.%d-0ubuntu2", packageNumber));
+            statusLines.add("");
+        }
+        statusLines.forEach(line -> executor.addLine("dpkg -s", line));
+        checkLookupBudget("dpkg", Dpkg::new, executor);
+    }
+
+    @Test
+    public void testRpmLookup() throws Exception {
+        final CannedOutputExecutor executor = new CannedOutputExecutor();
+        for (final DependencyFile dependencyFile : createDependencyFiles()) {
+            final int packageNumber = getPackageNumber(dependencyFile);
+            executor.addLine("rpm -qf", String.format("libpackage%d-devel-1.2.%d-18.el7.x86_64", packageNumber, packageNumber));
+        }
+        checkLookupBudget("rpm", Rpm::new, executor);
+    }
+
+    @Test
+    public void testApkLookup() throws Exception {
+        final CannedOutputExecutor executor = new CannedOutputExecutor();
+        executor.addLine("apk info --print-arch", "x86_64");
+        for (final DependencyFile dependencyFile : createDependencyFiles()) {
+            final int packageNumber = getPackageNumber(dependencyFile);
+            executor.addLine("apk info --who-owns", String.format("%s is owned by libpackage%d-dev-1.2.%d-r2", dependencyFile.getFile().getAbsolutePath(), packageNumber, packageNumber));
+        }
+        checkLookupBudget("apk", Apk::new, executor);
+    }
+
+    @Test
+    public void testGetBdioComponents() throws Exception {
+        final Set<PackageDetails> packages = new HashSet<>();
+        for (int packageNumber = 0; packageNumber < PACKAGE_COUNT; packageNumber++) {
+            packages.add(new PackageDetails(Optional.of(String.format("libpackage%d-dev", packageNumber)), Optional.of(String.format("1.2.%d-0ubuntu2", packageNumber)), Optional.of("amd64")));
+        }
+        final PkgMgr pkgMgr = new Dpkg();
+        final List<List<Dependency>> bdioComponents = new ArrayList<>(1);
+        // A new extractor each time, since it skips the packages it has already seen
+        final long allocatedBytes = measureAllocatedBytes(() -> {
+            bdioComponents.clear();
+            bdioComponents.add(ReflectionTestUtils.invokeMethod(new ClangExtractor(), "getBdioComponents", pkgMgr, packages));
+        });
+        assertEquals(PACKAGE_COUNT * pkgMgr.getForges().size(), bdioComponents.get(0).size());
+        checkBudget("get.bdio.components.bytes.per.package", allocatedBytes, PACKAGE_COUNT);
+    }
+
+    private interface PkgMgrFactory {
+        PkgMgr create();
+    }
+
+    // A new package manager each time, since it remembers the packages it has already seen
+    private void checkLookupBudget(final String pkgMgrName, final PkgMgrFactory pkgMgrFactory, final Executor executor) throws Exception {
+        final List<DependencyFile> dependencyFiles = createDependencyFiles();
+        final Set<File> filesForIScan = new HashSet<>();
+        final List<Map<DependencyFile, List<PackageDetails>>> packagesByDependencyFile = new ArrayList<>(1);
+        final long allocatedBytes = measureAllocatedBytes(() -> {
+            packagesByDependencyFile.clear();
+            packagesByDependencyFile.add(pkgMgrFactory.create().getDependencyDetails(executor, filesForIScan, dependencyFiles));
+        });
+        assertEquals(LOOKUP_FILE_COUNT, packagesByDependencyFile.get(0).size());
+        assertTrue(filesForIScan.isEmpty());
+        checkBudget(String.format("%s.lookup.bytes.per.file", pkgMgrName), allocatedBytes, LOOKUP_FILE_COUNT);
+    }
+
+    private List<DependencyFile> createDependencyFiles() {
+        final List<DependencyFile> dependencyFiles = new ArrayList<>(LOOKUP_FILE_COUNT);
+        for (int i = 0; i < LOOKUP_FILE_COUNT; i++) {
+            dependencyFiles.add(new DependencyFile(false, new File(String.format("/usr/include/lib%d/header_%d.h", i % PACKAGE_COUNT, i))));
+        }
+        return dependencyFiles;
+    }
+
+    private int getPackageNumber(final DependencyFile dependencyFile) {
+        return Integer.parseInt(dependencyFile.getFile().getParentFile().getName().substring("lib".length()));
+    }
+
+    // The least allocated by any one of several runs after warming up, so the JIT has had its chance to remove allocations
+    private long measureAllocatedBytes(final Operation operation) throws Exception {
+        final long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run();
+        }
+        long leastAllocatedBytes = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            final long allocatedBytesBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+            operation.run();
+            leastAllocatedBytes = Math.min(leastAllocatedBytes, threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBytesBefore);
+        }
+        return leastAllocatedBytes;
+    }
+
+    private void checkBudget(final String budgetName, final long allocatedBytes, final int unitCount) throws IOException {
+        final long allocatedBytesPerUnit = allocatedBytes / unitCount;
+        if (calibrating) {
+            writeBudget(budgetName, (long) Math.ceil(allocatedBytesPerUnit * CALIBRATION_HEADROOM));
+            return;
+        }
+        final String budget = budgets.getProperty(budgetName);
+        assertTrue(String.format("No allocation budget for %s in %s; run the tests with -Dallocation.budget.calibrate=true to set one", budgetName, getBudgetsFileName()), budget != null);
+        assertTrue(String.format("%s is %d bytes, over its budget of %s; if the extra allocation is expected, recalibrate with -Dallocation.budget.calibrate=true", budgetName,
+                allocatedBytesPerUnit, budget), allocatedBytesPerUnit <= Long.parseLong(budget.trim()));
+    }
+
+    // Each test adds its budget to the file; the first one in a run starts it afresh
+    private static synchronized void writeBudget(final String budgetName, final long budget) throws IOException {
+        final File calibratedBudgetsFile = new File("build", getBudgetsFileName());
+        final Properties calibratedBudgets = new Properties();
+        if (calibrationStarted && calibratedBudgetsFile.exists()) {
+            try (InputStream budgetsInputStream = FileUtils.openInputStream(calibratedBudgetsFile)) {
+                calibratedBudgets.load(budgetsInputStream);
+            }
+        }
+        calibrationStarted = true;
+        calibratedBudgets.setProperty(budgetName, Long.toString(budget));
+        final StringBuilder budgetsText = new StringBuilder(String.format("# Allocation budgets checked by AllocationBudgetTest on Java %s, in bytes; written by running it with -Dallocation.budget.calibrate=true\n",
+                getJavaMajorVersion()));
+        for (final Map.Entry<Object, Object> calibratedBudget : new TreeMap<>(calibratedBudgets).entrySet()) {
+            budgetsText.append(String.format("%s=%s\n", calibratedBudget.getKey(), calibratedBudget.getValue()));
+        }
+        FileUtils.writeStringToFile(calibratedBudgetsFile, budgetsText.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static String getBudgetsFileName() {
+        return String.format(BUDGETS_FILE_NAME_PATTERN, getJavaMajorVersion());
+    }
+
+    // "8" for Java 8, whose specification version is "1.8", and "17" for Java 17
+    private static String getJavaMajorVersion() {
+        final String specificationVersion = System.getProperty("java.specification.version");
+        return specificationVersion.startsWith("1.") ? specificationVersion.substring("1.".length()) : specificationVersion;
+    }
+
+    // Prints the lines added for the first prefix the command starts with, whatever paths or package names follow it
+    private static class CannedOutputExecutor implements Executor {
+        private final Map<String, List<String>> outputLinesByCommandPrefix = new LinkedHashMap<>();
+
+        public void addLine(final String commandPrefix, final String line) {
+            outputLinesByCommandPrefix.computeIfAbsent(commandPrefix, k -> new ArrayList<>()).add(line);
+        }
+
+        @Override
+        public String execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd) {
+            return String.join("\n", getOutputLines(cmd));
+        }
+
+        @Override
+        public void execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final Consumer<String> standardOutputLineConsumer) {
+            for (final String line : getOutputLines(cmd)) {
+                standardOutputLineConsumer.accept(line);
+            }
+        }
+
+        private List<String> getOutputLines(final String cmd) {
+            for (final Map.Entry<String, List<String>> outputLines : outputLinesByCommandPrefix.entrySet()) {
+                if (cmd.startsWith(outputLines.getKey())) {
+                    return outputLines.getValue();
+                }
+            }
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildDependencyFileLocatorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final BuildDependencyFileLocator locator = new BuildDependencyFileLocator();
+
+    @Test
+    public void testExplicitDependencyFile() throws IOException {
+        final File sourceFile = tempFolder.newFile("hello.c");
+        sourceFile.setLastModified(1000L);
+        tempFolder.newFolder("obj");
+        final File depsFile = tempFolder.newFile("obj/hello.c.o.d");
+        final Optional<File> found = locator.find(createCompileCommand("gcc -MD -MT obj/hello.c.o -MF obj/hello.c.o.d -o obj/hello.c.o -c hello.c"));
+        assertEquals(depsFile.getAbsolutePath(), found.get().getAbsolutePath());
+    }
+
+    @Test
+    public void testDependencyFileNamedAfterObjectFile() throws IOException {
+        final File sourceFile = tempFolder.newFile("hello.c");
+        sourceFile.setLastModified(1000L);
+        tempFolder.newFolder("obj");
+        final File depsFile = tempFolder.newFile("obj/hello.d");
+        final Optional<File> found = locator.find(createCompileCommand("gcc -MD -o obj/hello.o -c hello.c"));
+        assertEquals(depsFile.getAbsolutePath(), found.get().getAbsolutePath());
+    }
+
+    @Test
+    public void testStaleDependencyFileIgnored() throws IOException {
+        tempFolder.newFolder("obj");
+        final File depsFile = tempFolder.newFile("obj/hello.d");
+        depsFile.setLastModified(1000L);
+        tempFolder.newFile("hello.c");
+        assertFalse(locator.find(createCompileCommand("gcc -MD -o obj/hello.o -c hello.c")).isPresent());
+    }
+
+    @Test
+    public void testUserHeadersOnlyDependencyFileIgnored() throws IOException {
+        tempFolder.newFile("hello.c").setLastModified(1000L);
+        tempFolder.newFolder("obj");
+        tempFolder.newFile("obj/hello.d");
+        assertFalse(locator.find(createCompileCommand("gcc -MMD -o obj/hello.o -c hello.c")).isPresent());
+    }
+
+    private CompileCommand createCompileCommand(final String command) {
+        return new CompileCommand(tempFolder.getRoot().getAbsolutePath(), command, "hello.c");
+    }
+}
@@ -6,6 +6,7 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.Optional;
 import java.util.Set;
 
 import org.junit.BeforeClass;
@@ -14,10 +15,12 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.bdio.model.BdioComponent;
 import com.blackducksoftware.integration.hub.bdio.model.SimpleBdioDocument;
+import com.blackducksoftware.integration.hub.clang.execute.AsyncExecutor;
 import com.blackducksoftware.integration.hub.clang.execute.Executor;
 import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
 
@@ -36,13 +39,93 @@ public class ClangExtractorTest {
 
     @Test
     public void test() throws IntegrationException, IOException, ExecutableRunnerException {
+        extractAndVerify();
+    }
+
+    @Test
+    public void testParallel() throws IntegrationException, IOException, ExecutableRunnerException {
+        ReflectionTestUtils.setField(extractor, "compileThreads", 4);
+        try {
+            extractAndVerify();
+        } finally {
+            ReflectionTestUtils.setField(extractor, "compileThreads", 1);
+        }
+    }
+
+    @Test
+    public void testAsyncExecutor() throws IntegrationException, IOException, ExecutableRunnerException {
+        final MockAsyncExecutor asyncExecutor = new MockAsyncExecutor();
+        ReflectionTestUtils.setField(extractor, "compileThreads", 4);
+        try {
+            extractAndVerify(Optional.of(asyncExecutor));
+        } finally {
+            ReflectionTestUtils.setField(extractor, "compileThreads", 1);
+        }
+        assertTrue(asyncExecutor.getHeavyCount() > 0);
+    }
+
+    @Test
+    public void testPipeline() throws IntegrationException, IOException, ExecutableRunnerException {
+        ReflectionTestUtils.setField(extractor, "pipelineEnabled", true);
+        ReflectionTestUtils.setField(extractor, "compileThreads", 2);
+        ReflectionTestUtils.setField(extractor, "packageQueryThreads", 2);
+        try {
+            extractAndVerify();
+        } finally {
+            ReflectionTestUtils.setField(extractor, "pipelineEnabled", false);
+            ReflectionTestUtils.setField(extractor, "compileThreads", 1);
+            ReflectionTestUtils.setField(extractor, "packageQueryThreads", 1);
+        }
+    }
+
+    @Test
+    public void testClangScanDeps() throws IntegrationException, IOException, ExecutableRunnerException {
+        ReflectionTestUtils.setField(extractor, "dependencyFinderName", "clang-scan-deps");
+        try {
+            extractAndVerify();
+        } finally {
+            ReflectionTestUtils.setField(extractor, "dependencyFinderName", "");
+        }
+    }
+
+    @Test
+    public void testDependencyOutputToStdout() throws IntegrationException, IOException, ExecutableRunnerException {
+        ReflectionTestUtils.setField(extractor, "dependencyOutputToStdout", true);
+        try {
+            extractAndVerify();
+        } finally {
+            ReflectionTestUtils.setField(extractor, "dependencyOutputToStdout", false);
+        }
+    }
+
+    @Test
+    public void testOwnershipMemo() throws IntegrationException, IOException, ExecutableRunnerException {
+        ReflectionTestUtils.setField(extractor, "ownershipMemoEnabled", true);
+        try {
+            extractAndVerify();
+        } finally {
+            ReflectionTestUtils.setField(extractor, "ownershipMemoEnabled", false);
+        }
+    }
+
+    private void extractAndVerify() throws IntegrationException, IOException, ExecutableRunnerException {
+        extractAndVerify(Optional.empty());
+    }
+
+    private void extractAndVerify(final Optional<AsyncExecutor> asyncExecutor) throws IntegrationException, IOException, ExecutableRunnerException {
         final File notInstalledByPkgMgrDepFile = new File("/tmp/notinstalledbypkgmgr.h");
         notInstalledByPkgMgrDepFile.createNewFile();
         final Executor executor = new MockExecutor();
         final Set<File> filesForIScan = new HashSet<>(1);
-        final SimpleBdioDocument bdio = extractor.extract(new File("src/test/resources/buildDir"), executor, "src/test/resources/buildDir/compile_commands.json", "src/test/resources/buildDir", "testCodeLocationName", "testProjectName",
-                "testProjectVersion",
-                filesForIScan);
+        final SimpleBdioDocument bdio;
+        if (asyncExecutor.isPresent()) {
+            bdio = extractor.extract(new File("src/test/resources/buildDir"), executor, asyncExecutor.get(), "src/test/resources/buildDir/compile_commands.json", "src/test/resources/buildDir", "testCodeLocationName",
+                    "testProjectName", "testProjectVersion", filesForIScan);
+        } else {
+            bdio = extractor.extract(new File("src/test/resources/buildDir"), executor, "src/test/resources/buildDir/compile_commands.json", "src/test/resources/buildDir", "testCodeLocationName", "testProjectName",
+                    "testProjectVersion",
+                    filesForIScan);
+        }
         assertEquals("testCodeLocationName", bdio.billOfMaterials.spdxName);
         assertEquals(1, filesForIScan.size());
         assertEquals("/tmp/notinstalledbypkgmgr.h", filesForIScan.iterator().next().getAbsolutePath());
@@ -0,0 +1,74 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
+
+public class CompileCommandsParserTest {
+
+    @Test
+    public void testCommandForm() throws IOException {
+        final List<CompileCommand> compileCommands = new ArrayList<>();
+        try (CompileCommandsParser parser = new CompileCommandsParser(new File("src/test/resources/orig/compile_commands.json"))) {
+            while (parser.hasNext()) {
+                compileCommands.add(parser.next());
+            }
+        }
+        assertEquals(337, compileCommands.size());
+        final CompileCommand first = compileCommands.get(0);
+        final CompileCommand last = compileCommands.get(compileCommands.size() - 1);
+        assertEquals("/home/colby/Documents/dev/stcapi/build", first.getDirectory());
+        assertEquals("/home/colby/Documents/dev/stcapi/stccore/sbos/sberror.c", first.getFile());
+        assertEquals("/usr/bin/gcc-4.8", first.getArguments().get(0));
+        assertEquals("/home/colby/Documents/dev/stcapi/stcapi/tools/VmInfo.cpp", last.getFile());
+        assertSame(first.getDirectory(), last.getDirectory());
+        assertSame(first.getArguments().get(1), compileCommands.get(1).getArguments().get(1));
+    }
+
+    @Test
+    public void testArgumentsForm() throws IOException {
+        final String compileCommandsJson = "[{\"directory\": \"/build\", \"arguments\": [\"cc\", \"-Iinclude\", \"-c\", \"hello.c\"], \"file\": \"hello.c\", \"output\": \"hello.o\"}]";
+        try (CompileCommandsParser parser = new CompileCommandsParser(new StringReader(compileCommandsJson))) {
+            final CompileCommand compileCommand = parser.next();
+            assertEquals("/build", compileCommand.getDirectory());
+            assertEquals(Arrays.asList("cc", "-Iinclude", "-c", "hello.c"), compileCommand.getArguments());
+            assertEquals("cc -Iinclude -c hello.c", compileCommand.getCommand());
+            assertFalse(parser.hasNext());
+        }
+    }
+
+    @Test
+    public void testArgumentsWithSpacesSurvive() throws IOException {
+        final String compileCommandsJson = "[{\"directory\": \"/build\", \"arguments\": [\"cc\", \"-DGREETING=\\\"hello world\\\"\", \"-I/opt/my sdk/include\", \"-c\", \"hello.c\"], \"file\": \"hello.c\"},"
+                + " {\"directory\": \"/build\", \"command\": \"cc -DGREETING=\\\\\\\"hello\\\\ world\\\\\\\" '-I/opt/my sdk/include' -c hello.c\", \"file\": \"hello.c\"}]";
+        try (CompileCommandsParser parser = new CompileCommandsParser(new StringReader(compileCommandsJson))) {
+            final CompileCommand argumentsForm = parser.next();
+            final CompileCommand commandForm = parser.next();
+            final List<String> expectedArguments = Arrays.asList("cc", "-DGREETING=\"hello world\"", "-I/opt/my sdk/include", "-c", "hello.c");
+            assertEquals(expectedArguments, argumentsForm.getArguments());
+            assertEquals(expectedArguments, commandForm.getArguments());
+            assertEquals(argumentsForm.getCommand(), commandForm.getCommand());
+            // What the command is run as splits back into the same arguments
+            assertEquals(expectedArguments, Arrays.asList(CommandLine.split(argumentsForm.getCommand())));
+            assertSame(argumentsForm.getCommand(), argumentsForm.getCommand());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingCommand() throws IOException {
+        try (CompileCommandsParser parser = new CompileCommandsParser(new StringReader("[{\"directory\": \"/build\", \"file\": \"hello.c\"}]"))) {
+            parser.next();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.execute.CommandLine;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+
+public class CompilerSearchPathTest {
+    private static final String GCC_OUTPUT = "Using built-in specs.\n"
+            + "COLLECT_GCC=gcc\n"
+            + "ignoring nonexistent directory \"/usr/local/include/x86_64-linux-gnu\"\n"
+            + "#include \"...\" search starts here:\n"
+            + "#include <...> search starts here:\n"
+            + " /usr/lib/gcc/x86_64-linux-gnu/7/include\n"
+            + " /usr/local/include\n"
+            + " /usr/lib/gcc/x86_64-linux-gnu/7/../../../../include/x86_64-linux-gnu\n"
+            + " /usr/include\n"
+            + "End of search list.\n"
+            + "# 1 \"/dev/null\"";
+    private final List<String> commands = new ArrayList<>();
+    private final Executor executor = (workingDir, environmentVariables, cmd) -> {
+        // The probe runs in a shell that merges its stderr into stdout
+        final String[] shellCommand = CommandLine.split(cmd);
+        assertEquals("sh", shellCommand[0]);
+        final String probe = shellCommand[2].substring(0, shellCommand[2].length() - " 2>&1".length());
+        commands.add(probe);
+        if (probe.startsWith("clang")) {
+            throw new IntegrationException("Command 'clang -E -v -x c /dev/null' return code: 1; stderr: clang: error: unsupported option '-v'");
+        }
+        return GCC_OUTPUT;
+    };
+    private final CompilerSearchPath compilerSearchPath = new CompilerSearchPath(executor);
+
+    @Test
+    public void testSearchPathAskedOncePerCompiler() {
+        final List<String> expectedSearchPath = Arrays.asList("/usr/lib/gcc/x86_64-linux-gnu/7/include", "/usr/local/include", "/usr/include/x86_64-linux-gnu", "/usr/include");
+        assertEquals(expectedSearchPath, compilerSearchPath.apply(new CompileCommand("/src", "gcc -Iinclude -O2 -c hello.c", "hello.c")).get());
+        assertEquals(expectedSearchPath, compilerSearchPath.apply(new CompileCommand("/src", "gcc -DNDEBUG -c world.c", "world.c")).get());
+        compilerSearchPath.apply(new CompileCommand("/src", "gcc -m32 -c hello.cpp", "hello.cpp"));
+        compilerSearchPath.apply(new CompileCommand("/src/lib", "../bin/cc -c hello.c", "hello.c"));
+        assertEquals(Arrays.asList("gcc -E -v -x c /dev/null", "gcc -m32 -E -v -x c++ /dev/null", "/src/bin/cc -E -v -x c /dev/null"), commands);
+    }
+
+    @Test
+    public void testFailedProbeGivesNoSearchPath() {
+        final CompileCommand compileCommand = new CompileCommand("/src", "clang -c hello.c", "hello.c");
+        assertFalse(compilerSearchPath.apply(compileCommand).isPresent());
+        assertFalse(compilerSearchPath.apply(compileCommand).isPresent());
+        assertEquals(1, commands.size());
+        assertFalse(CompilerSearchPath.parse(Arrays.asList("gcc: error: unrecognized command line option")).isPresent());
+    }
+}
@@ -0,0 +1,80 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DependencyCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void createSourceFiles() throws IOException {
+        FileUtils.writeStringToFile(new File(tempFolder.getRoot(), "hello.c"), "#include \"hello.h\"\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(tempFolder.getRoot(), "hello.h"), "#define GREETING \"hi\"\n", StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testUnchangedInputsAreReused() throws IOException {
+        final CompileCommand compileCommand = createCompileCommand();
+        final String cacheFilePath = new File(tempFolder.getRoot(), "deps-cache.json").getAbsolutePath();
+        final List<String> dependencyFilePaths = Arrays.asList("hello.c", new File(tempFolder.getRoot(), "hello.h").getAbsolutePath());
+
+        final DependencyCache firstRunCache = new DependencyCache(cacheFilePath);
+        firstRunCache.load();
+        assertFalse(firstRunCache.get(compileCommand).isPresent());
+        firstRunCache.put(compileCommand, dependencyFilePaths);
+        firstRunCache.save();
+
+        final DependencyCache secondRunCache = new DependencyCache(cacheFilePath);
+        secondRunCache.load();
+        final Optional<List<String>> cachedDependencyFilePaths = secondRunCache.get(compileCommand);
+        assertTrue(cachedDependencyFilePaths.isPresent());
+        assertEquals(dependencyFilePaths, cachedDependencyFilePaths.get());
+        assertEquals(1, secondRunCache.getHitCount());
+        assertEquals(0, secondRunCache.getMissCount());
+    }
+
+    @Test
+    public void testChangedHeaderInvalidatesEntry() throws IOException {
+        final CompileCommand compileCommand = createCompileCommand();
+        final String cacheFilePath = new File(tempFolder.getRoot(), "deps-cache.json").getAbsolutePath();
+        final File header = new File(tempFolder.getRoot(), "hello.h");
+
+        final DependencyCache firstRunCache = new DependencyCache(cacheFilePath);
+        firstRunCache.put(compileCommand, Arrays.asList("hello.c", header.getAbsolutePath()));
+        firstRunCache.save();
+
+        FileUtils.writeStringToFile(header, "#define GREETING \"hello, world\"\n", StandardCharsets.UTF_8);
+        final DependencyCache secondRunCache = new DependencyCache(cacheFilePath);
+        secondRunCache.load();
+        assertFalse(secondRunCache.get(compileCommand).isPresent());
+        assertEquals(1, secondRunCache.getMissCount());
+    }
+
+    @Test
+    public void testDisabledWithoutCacheFile() {
+        final DependencyCache dependencyCache = new DependencyCache("");
+        dependencyCache.put(createCompileCommand(), Arrays.asList("hello.c"));
+        assertFalse(dependencyCache.isEnabled());
+        assertFalse(dependencyCache.get(createCompileCommand()).isPresent());
+    }
+
+    private CompileCommand createCompileCommand() {
+        return new CompileCommand(tempFolder.getRoot().getAbsolutePath(), "gcc -c hello.c", "hello.c");
+    }
+}
@@ -0,0 +1,54 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DependencyFileParserTest {
+
+    @Test
+    public void testContinuationLines() {
+        final List<String> deps = DependencyFileParser.parse("hello.o: hello.c \\\n /usr/include/stdio.h \\\r\n /usr/include/features.h\n");
+        assertEquals(Arrays.asList("hello.c", "/usr/include/stdio.h", "/usr/include/features.h"), deps);
+    }
+
+    @Test
+    public void testEscapes() {
+        final List<String> deps = DependencyFileParser.parse("my\\ hello.o: src/my\\ hello.c inc/cost$$.h inc/\\#1.h C:\\inc\\win.h\n");
+        assertEquals(Arrays.asList("src/my hello.c", "inc/cost$.h", "inc/#1.h", "C:\\inc\\win.h"), deps);
+    }
+
+    @Test
+    public void testMultipleRulesAndTargets() {
+        final List<String> deps = DependencyFileParser.parse("# generated\na.o b.o: a.c a.h\n\nc.o:c.c | order.h\nd.o:\n");
+        assertEquals(Arrays.asList("a.c", "a.h", "c.c", "order.h"), deps);
+    }
+
+    @Test
+    public void testChunkedInput() {
+        final String depsDecl = "hello.o: hello.c \\\r\n /usr/include/my\\ stdio.h cost$$.h\n";
+        final byte[] bytes = depsDecl.getBytes(StandardCharsets.UTF_8);
+        final List<String> deps = new ArrayList<>();
+        final DependencyFileParser parser = new DependencyFileParser(deps::add);
+        for (int i = 0; i < bytes.length; i++) {
+            parser.feed(bytes, i, 1);
+        }
+        parser.finish();
+        assertEquals(DependencyFileParser.parse(depsDecl), deps);
+        assertEquals(Arrays.asList("hello.c", "/usr/include/my stdio.h", "cost$.h"), deps);
+    }
+
+    @Test
+    public void testFixture() throws IOException {
+        final List<String> deps = new ArrayList<>();
+        DependencyFileParser.parse(new File("src/test/resources/buildDir/deps.mk"), deps);
+        assertEquals(Arrays.asList("hello_world.cpp", "/tmp/notinstalledbypkgmgr.h", "/usr/include/stdc-predef.h"), deps.subList(0, 3));
+    }
+}
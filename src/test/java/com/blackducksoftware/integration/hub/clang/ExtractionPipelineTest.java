@@ -0,0 +1,93 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+
+public class ExtractionPipelineTest {
+    private static final int COMPILE_COMMAND_COUNT = 200;
+
+    @Test
+    public void testEveryCompileCommandReachesTheEnd() throws Exception {
+        final Set<String> seenPaths = new HashSet<>();
+        final Set<PackageDetails> emittedPackages = ConcurrentHashMap.newKeySet();
+        final ExtractionPipeline pipeline = new ExtractionPipeline(
+                (compileCommand, workerIndex) -> Arrays.asList(compileCommand.getFile(), "/usr/include/stdio.h"),
+                4,
+                dependencyFilePaths -> dependencyFilePaths.stream().filter(seenPaths::add).map(path -> new DependencyFile(false, new File(path))).collect(Collectors.toSet()),
+                (dependencyFiles, filesForIScan) -> {
+                    filesForIScan.add(dependencyFiles.get(0).getFile());
+                    return dependencyFiles.stream().map(dependencyFile -> new PackageDetails(Optional.of(dependencyFile.getFile().getName()), Optional.of("1.0"), Optional.of("amd64"))).collect(Collectors.toSet());
+                },
+                3,
+                emittedPackages::addAll);
+        final Set<File> filesForIScan = new HashSet<>();
+        pipeline.run(new CompileCommandsParser(new StringReader(createCompileCommandsJson(COMPILE_COMMAND_COUNT))), filesForIScan);
+        assertEquals(COMPILE_COMMAND_COUNT + 1, emittedPackages.size());
+        assertTrue(!filesForIScan.isEmpty());
+    }
+
+    @Test
+    public void testFailingStageStopsThePipeline() throws Exception {
+        final ExtractionPipeline pipeline = new ExtractionPipeline(
+                (compileCommand, workerIndex) -> {
+                    throw new IllegalStateException("compiler exploded");
+                },
+                2,
+                dependencyFilePaths -> new HashSet<>(),
+                (dependencyFiles, filesForIScan) -> new HashSet<>(),
+                1,
+                packages -> {
+                });
+        try {
+            pipeline.run(new CompileCommandsParser(new StringReader(createCompileCommandsJson(COMPILE_COMMAND_COUNT))), new HashSet<>());
+            fail("Expected the pipeline to fail");
+        } catch (final IntegrationException e) {
+            assertTrue(e.getMessage().contains("compiler exploded"));
+        }
+    }
+
+    @Test
+    public void testStageFailingWithErrorStopsThePipeline() throws Exception {
+        final ExtractionPipeline pipeline = new ExtractionPipeline(
+                (compileCommand, workerIndex) -> Arrays.asList(compileCommand.getFile()),
+                2,
+                dependencyFilePaths -> new HashSet<>(Arrays.asList(new DependencyFile(false, new File(dependencyFilePaths.get(0))))),
+                (dependencyFiles, filesForIScan) -> {
+                    throw new NoClassDefFoundError("resolver class missing");
+                },
+                2,
+                packages -> {
+                });
+        try {
+            pipeline.run(new CompileCommandsParser(new StringReader(createCompileCommandsJson(COMPILE_COMMAND_COUNT))), new HashSet<>());
+            fail("Expected the pipeline to fail");
+        } catch (final IntegrationException e) {
+            assertTrue(e.getMessage().contains("resolver class missing"));
+        }
+    }
+
+    private String createCompileCommandsJson(final int count) {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format("{\"directory\": \"/src\", \"command\": \"cc -c file%d.c\", \"file\": \"/src/file%d.c\"}", i, i));
+        }
+        return json.append(']').toString();
+    }
+}
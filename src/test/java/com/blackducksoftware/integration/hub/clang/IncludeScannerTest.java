@@ -0,0 +1,92 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IncludeScannerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File systemDir;
+    private File projectDir;
+    private IncludeScanner includeScanner;
+
+    @Before
+    public void setup() throws IOException {
+        systemDir = tempFolder.newFolder("sys");
+        projectDir = tempFolder.newFolder("project");
+        includeScanner = new IncludeScanner(Arrays.asList(systemDir.getAbsolutePath()));
+        write(systemDir, "stdio.h", "#ifndef _STDIO_H\n#define _STDIO_H\n#include <bits/types.h>\n#endif\n");
+        write(systemDir, "bits/types.h", "/* types */\n");
+        write(systemDir, "bits/gnu.h", "// gnu\n");
+        write(projectDir, "include/hello.h", "#pragma once\n/* #include <commented_out.h> */\n#include <stdio.h> // for printf\n");
+        write(projectDir, "config.h", "#define GREETING \"hi\"\n");
+    }
+
+    @Test
+    public void testIncludesFollowed() throws IOException {
+        write(projectDir, "hello.c", "#include \"hello.h\"\nint main() { printf(\"#include <not_a_directive.h>\"); return 0; }\n");
+        final Optional<List<String>> dependencyFilePaths = includeScanner.scan(createCompileCommand("gcc -Iinclude -include config.h -c hello.c"));
+        assertEquals(Arrays.asList(path(projectDir, "hello.c"), path(projectDir, "config.h"), path(projectDir, "include/hello.h"), path(systemDir, "stdio.h"), path(systemDir, "bits/types.h")),
+                dependencyFilePaths.get());
+    }
+
+    @Test
+    public void testConditionalProjectIncludeNotScanned() throws IOException {
+        write(projectDir, "hello.c", "#ifdef USE_HELLO\n#include \"hello.h\"\n#endif\n");
+        assertFalse(includeScanner.scan(createCompileCommand("gcc -Iinclude -c hello.c")).isPresent());
+    }
+
+    @Test
+    public void testConditionalSystemIncludeNotScanned() throws IOException {
+        write(systemDir, "stdio.h", "#ifndef _STDIO_H\n#define _STDIO_H\n#include <bits/types.h>\n#ifdef __USE_GNU\n# include <bits/gnu.h>\n#endif\n#endif\n");
+        write(projectDir, "hello.c", "#include \"hello.h\"\n");
+        assertFalse(includeScanner.scan(createCompileCommand("gcc -Iinclude -c hello.c")).isPresent());
+    }
+
+    @Test
+    public void testUnsupportedOptionsNotScanned() throws IOException {
+        write(projectDir, "hello.c", "#include <stdio.h>\n");
+        for (final String option : Arrays.asList("--sysroot=/opt/sysroot", "--sysroot /opt/sysroot", "-isysroot/opt/sysroot", "-nostdlibinc", "-I-")) {
+            assertFalse(option, includeScanner.scan(createCompileCommand("gcc " + option + " -c hello.c")).isPresent());
+        }
+    }
+
+    @Test
+    public void testUnresolvedIncludeNotScanned() throws IOException {
+        write(projectDir, "hello.c", "#include \"hello.h\"\n");
+        assertFalse(includeScanner.scan(createCompileCommand("gcc -c hello.c")).isPresent());
+    }
+
+    @Test
+    public void testComputedIncludeNotScanned() throws IOException {
+        write(projectDir, "hello.c", "#define HEADER <stdio.h>\n#include HEADER\n");
+        assertFalse(includeScanner.scan(createCompileCommand("gcc -c hello.c")).isPresent());
+    }
+
+    private CompileCommand createCompileCommand(final String command) {
+        return new CompileCommand(projectDir.getAbsolutePath(), command, "hello.c");
+    }
+
+    private void write(final File dir, final String path, final String contents) throws IOException {
+        FileUtils.writeStringToFile(new File(dir, path), contents, StandardCharsets.UTF_8);
+    }
+
+    private String path(final File dir, final String path) {
+        return new File(dir, path).getAbsolutePath();
+    }
+}
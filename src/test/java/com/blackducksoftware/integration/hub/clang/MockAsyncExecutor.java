@@ -0,0 +1,61 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.blackducksoftware.integration.hub.clang.execute.AsyncExecutor;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+
+// Runs everything immediately on the calling thread, so tests are deterministic
+public class MockAsyncExecutor implements AsyncExecutor {
+    private final Executor executor = new MockExecutor();
+    private final AtomicInteger heavyCount = new AtomicInteger();
+    private final AtomicInteger lightCount = new AtomicInteger();
+
+    @Override
+    public CompletableFuture<String> executeAsync(final Weight weight, final File workingDir, final Map<String, String> environmentVariables, final String cmd) {
+        return supplyAsync(weight, () -> {
+            try {
+                return executor.execute(workingDir, environmentVariables, cmd);
+            } catch (final Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> executeAsync(final Weight weight, final File workingDir, final Map<String, String> environmentVariables, final String cmd, final Consumer<String> standardOutputLineConsumer) {
+        return supplyAsync(weight, () -> {
+            try {
+                executor.execute(workingDir, environmentVariables, cmd, standardOutputLineConsumer);
+                return null;
+            } catch (final Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<T> supplyAsync(final Weight weight, final Supplier<T> task) {
+        (weight == Weight.HEAVY ? heavyCount : lightCount).incrementAndGet();
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(task.get());
+        } catch (final RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public int getHeavyCount() {
+        return heavyCount.get();
+    }
+
+    public int getLightCount() {
+        return lightCount.get();
+    }
+}
@@ -1,33 +1,103 @@
 package com.blackducksoftware.integration.hub.clang;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.commons.io.FileUtils;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.clang.execute.Executor;
 import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
 
 public class MockExecutor implements Executor {
+    private static final File DEPS_MK_FILE = new File("src/test/resources/buildDir/deps.mk");
 
     @Override
     public String execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd) throws ExecutableRunnerException, IntegrationException {
         System.out.printf("MockExecutor.execute(%s\n", cmd);
+        if (cmd.endsWith(" -MF -")) {
+            return readDepsMk();
+        }
+        if (cmd.contains(" -MF ")) {
+            return compile(cmd);
+        }
+        if ("clang-scan-deps --version".equals(cmd)) {
+            return "LLVM (http://llvm.org/):\n  LLVM version 10.0.0\n  Optimized build.";
+        }
+        if (cmd.startsWith("clang-scan-deps -compilation-database ")) {
+            return scanDeps();
+        }
         if ("dpkg --version".equals(cmd)) {
             return "Debian 'dpkg' package management program version 1.19.0.5 (amd64).";
         }
         if ("rpm --version".equals(cmd)) {
             return "RPM version 4.11.3";
         }
-        if (cmd.startsWith("dpkg -S /") && cmd.contains("notinstalledbypkgmgr")) {
-            throw new IntegrationException(String.format("Command %s failed", cmd));
-        }
         if (cmd.startsWith("dpkg -S /")) {
-            return "libc6-dev:amd64: /usr/include/wchar.h";
+            final StringBuilder output = new StringBuilder();
+            queryDpkgOwners(cmd, line -> output.append(line).append('\n'));
+            return output.toString().trim();
         }
         if (cmd.startsWith("dpkg -s ")) {
-            return "Status: install ok installed\nVersion: 2.27-3ubuntu1\nx\n";
+            final StringBuilder output = new StringBuilder();
+            for (final String packageName : cmd.substring("dpkg -s ".length()).split("\\s+")) {
+                output.append(String.format("Package: %s\nStatus: install ok installed\nArchitecture: amd64\nVersion: 2.27-3ubuntu1\n\n", packageName.split(":")[0]));
+            }
+            return output.toString();
         }
         return String.format("exec: \\\"%s\\\": executable file not found in $PATH\": unknown", cmd);
     }
 
+    @Override
+    public void execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final Consumer<String> standardOutputLineConsumer) throws ExecutableRunnerException, IntegrationException {
+        if (cmd.startsWith("dpkg -S /")) {
+            System.out.printf("MockExecutor.execute(%s\n", cmd);
+            queryDpkgOwners(cmd, standardOutputLineConsumer);
+            return;
+        }
+        Executor.super.execute(workingDir, environmentVariables, cmd, standardOutputLineConsumer);
+    }
+
+    // Like dpkg -S: prints the owner of each owned path, then fails if any path was not owned
+    private void queryDpkgOwners(final String cmd, final Consumer<String> standardOutputLineConsumer) throws IntegrationException {
+        boolean allOwned = true;
+        for (final String path : cmd.substring("dpkg -S ".length()).split("\\s+")) {
+            if (path.contains("notinstalledbypkgmgr")) {
+                allOwned = false;
+            } else {
+                standardOutputLineConsumer.accept(String.format("libc6-dev:amd64: %s", path));
+            }
+        }
+        if (!allOwned) {
+            throw new IntegrationException(String.format("Command %s failed", cmd));
+        }
+    }
+
+    private String scanDeps() throws IntegrationException {
+        return String.format("%s\n%s", readDepsMk(), "other.o: other.cpp /usr/include/stdio.h").trim();
+    }
+
+    private String readDepsMk() throws IntegrationException {
+        try {
+            return FileUtils.readFileToString(DEPS_MK_FILE, StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new IntegrationException(String.format("Error reading %s: %s", DEPS_MK_FILE.getAbsolutePath(), e.getMessage()));
+        }
+    }
+
+    private String compile(final String cmd) throws IntegrationException {
+        final File requestedDepsMkFile = new File(cmd.substring(cmd.indexOf(" -MF ") + " -MF ".length()).trim());
+        if (!requestedDepsMkFile.getAbsolutePath().equals(DEPS_MK_FILE.getAbsolutePath())) {
+            try {
+                FileUtils.copyFile(DEPS_MK_FILE, requestedDepsMkFile);
+            } catch (final IOException e) {
+                throw new IntegrationException(String.format("Command %s failed: %s", cmd, e.getMessage()));
+            }
+        }
+        return "";
+    }
+
 }
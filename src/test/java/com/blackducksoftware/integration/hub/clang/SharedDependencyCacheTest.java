@@ -0,0 +1,89 @@
+package com.blackducksoftware.integration.hub.clang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SharedDependencyCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File sourceDir;
+    private File sharedCacheDir;
+
+    @Before
+    public void createSourceFiles() throws IOException {
+        sourceDir = tempFolder.newFolder("src");
+        sharedCacheDir = tempFolder.newFolder("shared");
+        FileUtils.writeStringToFile(new File(sourceDir, "hello.c"), "#include \"hello.h\"\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(sourceDir, "goodbye.c"), "#include \"hello.h\"\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(sourceDir, "hello.h"), "#define GREETING \"hi\"\n", StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testEntryWrittenByOneAgentIsReusedByAnother() {
+        final CompileCommand compileCommand = createCompileCommand("hello.c");
+        final List<String> dependencyFilePaths = Arrays.asList("hello.c", new File(sourceDir, "hello.h").getAbsolutePath());
+
+        final SharedDependencyCache firstAgentCache = new SharedDependencyCache(sharedCacheDir, Long.MAX_VALUE);
+        assertFalse(firstAgentCache.get(compileCommand).isPresent());
+        firstAgentCache.put(compileCommand, dependencyFilePaths);
+
+        final SharedDependencyCache secondAgentCache = new SharedDependencyCache(sharedCacheDir, Long.MAX_VALUE);
+        final Optional<List<String>> cachedDependencyFilePaths = secondAgentCache.get(compileCommand);
+        assertTrue(cachedDependencyFilePaths.isPresent());
+        assertEquals(dependencyFilePaths, cachedDependencyFilePaths.get());
+        assertEquals(1, secondAgentCache.getHitCount());
+        assertFalse(secondAgentCache.get(createCompileCommand("goodbye.c")).isPresent());
+    }
+
+    @Test
+    public void testChangedHeaderContentInvalidatesEntry() throws IOException {
+        final CompileCommand compileCommand = createCompileCommand("hello.c");
+        final File header = new File(sourceDir, "hello.h");
+        new SharedDependencyCache(sharedCacheDir, Long.MAX_VALUE).put(compileCommand, Arrays.asList("hello.c", header.getAbsolutePath()));
+
+        // Same size, different content
+        FileUtils.writeStringToFile(header, "#define GREETING \"yo\"\n", StandardCharsets.UTF_8);
+        final SharedDependencyCache sharedCache = new SharedDependencyCache(sharedCacheDir, Long.MAX_VALUE);
+        assertFalse(sharedCache.get(compileCommand).isPresent());
+        assertEquals(1, sharedCache.getMissCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() {
+        final SharedDependencyCache writerCache = new SharedDependencyCache(sharedCacheDir, Long.MAX_VALUE);
+        writerCache.put(createCompileCommand("hello.c"), Arrays.asList("hello.c"));
+        final List<File> helloManifests = new ArrayList<>(FileUtils.listFiles(sharedCacheDir, null, true));
+        assertEquals(1, helloManifests.size());
+        helloManifests.get(0).setLastModified(System.currentTimeMillis() - 60000L);
+        writerCache.put(createCompileCommand("goodbye.c"), Arrays.asList("goodbye.c"));
+        final List<File> allManifests = new ArrayList<>(FileUtils.listFiles(sharedCacheDir, null, true));
+        assertEquals(2, allManifests.size());
+
+        allManifests.remove(helloManifests.get(0));
+        final SharedDependencyCache evictingCache = new SharedDependencyCache(sharedCacheDir, allManifests.get(0).length());
+        evictingCache.evict();
+        assertFalse(evictingCache.get(createCompileCommand("hello.c")).isPresent());
+        assertTrue(evictingCache.get(createCompileCommand("goodbye.c")).isPresent());
+    }
+
+    private CompileCommand createCompileCommand(final String file) {
+        return new CompileCommand(sourceDir.getAbsolutePath(), String.format("gcc -c %s", file), file);
+    }
+}
@@ -0,0 +1,32 @@
+package com.blackducksoftware.integration.hub.clang.depfinder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.MockExecutor;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
+
+public class ClangScanDepsTest {
+
+    @Test
+    public void testAllRulesParsed() throws ExecutableRunnerException, IntegrationException {
+        final ClangScanDeps clangScanDeps = new ClangScanDeps();
+        final Executor executor = new MockExecutor();
+        assertTrue(clangScanDeps.applies(executor));
+        final Set<String> dependencyFilePaths = clangScanDeps.getDependencyFilePaths(executor, new File("src/test/resources/buildDir/compile_commands.json"), new File("."));
+        assertTrue(dependencyFilePaths.contains("hello_world.cpp"));
+        assertTrue(dependencyFilePaths.contains("/tmp/notinstalledbypkgmgr.h"));
+        assertTrue(dependencyFilePaths.contains("/usr/include/c++/7/iostream"));
+        assertTrue(dependencyFilePaths.contains("other.cpp"));
+        assertTrue(dependencyFilePaths.contains("/usr/include/stdio.h"));
+        assertFalse(dependencyFilePaths.contains("other.o"));
+        assertFalse(dependencyFilePaths.contains("hello_world.o"));
+    }
+}
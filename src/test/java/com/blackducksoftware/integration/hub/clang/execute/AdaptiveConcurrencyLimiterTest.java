@@ -0,0 +1,57 @@
+package com.blackducksoftware.integration.hub.clang.execute;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AdaptiveConcurrencyLimiterTest {
+    private static final String MEMINFO_FORMAT = "MemTotal:       16000000 kB\nMemFree:          100000 kB\nMemAvailable:   %d kB\n";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testLimitFollowsLoadAndMemory() throws IOException {
+        final File procDir = tempFolder.getRoot();
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(procDir, 2, 8, 4);
+        assertEquals(4, limiter.getLimit());
+
+        writeProcFiles(procDir, "9.50 8.00 7.00 9/812 12345", 8000000L);
+        limiter.adjust(0L);
+        assertEquals(3, limiter.getLimit());
+        // Sampled at most once per interval
+        limiter.adjust(1L);
+        assertEquals(3, limiter.getLimit());
+        limiter.adjust(10000L);
+        assertEquals(2, limiter.getLimit());
+        limiter.adjust(20000L);
+        assertEquals(2, limiter.getLimit());
+
+        writeProcFiles(procDir, "1.00 2.00 3.00 1/812 12345", 8000000L);
+        limiter.adjust(30000L);
+        assertEquals(3, limiter.getLimit());
+
+        writeProcFiles(procDir, "1.00 2.00 3.00 1/812 12345", 1000000L);
+        limiter.adjust(40000L);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testLimitUnchangedWithoutProcFiles() {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(new File(tempFolder.getRoot(), "missing"), 1, 8, 4);
+        limiter.adjust(0L);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    private void writeProcFiles(final File procDir, final String loadavg, final long availableKb) throws IOException {
+        FileUtils.writeStringToFile(new File(procDir, "loadavg"), loadavg + "\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(procDir, "meminfo"), String.format(MEMINFO_FORMAT, availableKb), StandardCharsets.UTF_8);
+    }
+}
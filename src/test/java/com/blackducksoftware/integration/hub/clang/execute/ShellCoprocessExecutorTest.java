@@ -0,0 +1,86 @@
+package com.blackducksoftware.integration.hub.clang.execute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+
+public class ShellCoprocessExecutorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testOutputOfConsecutiveCommandsIsKeptApart() throws Exception {
+        try (ShellCoprocessExecutor executor = new ShellCoprocessExecutor(1)) {
+            assertEquals("hello world", executor.execute(new File("."), null, "echo hello world"));
+            // Characters the shell would otherwise interpret
+            assertEquals("it's $HOME;", executor.execute(new File("."), null, "echo \"it's\" $HOME;"));
+            // No trailing newline before the marker
+            assertEquals("abc", executor.execute(new File("."), null, "printf abc"));
+            assertEquals(tempFolder.getRoot().getCanonicalPath(), new File(executor.execute(tempFolder.getRoot(), null, "pwd")).getCanonicalPath());
+            assertEquals("bar", executor.execute(new File("."), Collections.singletonMap("FOO", "bar"), "printenv FOO"));
+            assertEquals(SimpleExecutor.SYSTEM_PATH, executor.execute(new File("."), null, "printenv PATH"));
+        }
+    }
+
+    @Test
+    public void testFailingCommandReportsStderrAndLeavesShellUsable() throws Exception {
+        try (ShellCoprocessExecutor executor = new ShellCoprocessExecutor(1)) {
+            try {
+                executor.execute(new File("."), null, "ls /nonexistent/path");
+                fail("Expected the command to fail");
+            } catch (final IntegrationException e) {
+                assertTrue(e.getMessage().contains("nonexistent"));
+            }
+            final List<String> lines = new ArrayList<>();
+            executor.execute(new File("."), null, "printf 'a\\nb\\n'", lines::add);
+            assertEquals(2, lines.size());
+            assertEquals("b", lines.get(1));
+        }
+    }
+
+    @Test
+    public void testTimeoutAndDiscardedErrorOutput() throws Exception {
+        final File script = tempFolder.newFile("wedged.sh");
+        FileUtils.writeStringToFile(script, "#!/bin/sh\nsleep 30\necho done\n", StandardCharsets.UTF_8);
+        script.setExecutable(true);
+        try (ShellCoprocessExecutor executor = new ShellCoprocessExecutor(1, true, 200L)) {
+            final long startMillis = System.currentTimeMillis();
+            try {
+                executor.execute(tempFolder.getRoot(), null, script.getAbsolutePath());
+                fail("Expected the command to time out");
+            } catch (final IntegrationException e) {
+                assertTrue(e.getMessage().contains("timed out"));
+            }
+            assertTrue(System.currentTimeMillis() - startMillis < 10000L);
+            try {
+                executor.execute(new File("."), null, "ls /nonexistent/path");
+                fail("Expected the command to fail");
+            } catch (final IntegrationException e) {
+                assertFalse(e.getMessage().contains("No such file"));
+            }
+            // Commands run for effect still report their stderr, merged with their stdout
+            try {
+                executor.executeForEffect(new File("."), null, "ls /nonexistent/path");
+                fail("Expected the command to fail");
+            } catch (final IntegrationException e) {
+                assertTrue(e.getMessage().contains("No such file"));
+            }
+            assertEquals("hello", executor.execute(new File("."), null, "echo hello"));
+        }
+    }
+}
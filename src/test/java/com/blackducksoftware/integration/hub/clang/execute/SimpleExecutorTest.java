@@ -0,0 +1,108 @@
+package com.blackducksoftware.integration.hub.clang.execute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.execute.fromdetect.ExecutableRunnerException;
+
+public class SimpleExecutorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testOutputAndErrorOutput() throws Exception {
+        final SimpleExecutor executor = new SimpleExecutor();
+        assertEquals("hello world", executor.execute(new File("."), null, "echo hello world"));
+        final List<String> lines = new ArrayList<>();
+        executor.execute(new File("."), null, "printf 'a\\nb\\n'", lines::add);
+        assertEquals(2, lines.size());
+        try {
+            executor.execute(new File("."), null, "ls /nonexistent/path");
+            fail("Expected the command to fail");
+        } catch (final IntegrationException e) {
+            assertTrue(e.getMessage().contains("No such file"));
+        }
+    }
+
+    @Test
+    public void testEnvironment() throws Exception {
+        final SimpleExecutor executor = new SimpleExecutor();
+        assertEquals("bar", executor.execute(new File("."), Collections.singletonMap("FOO", "bar"), "printenv FOO"));
+        assertEquals(SimpleExecutor.SYSTEM_PATH, executor.execute(new File("."), null, "printenv PATH"));
+        // Variables the command doesn't override are inherited
+        assertEquals(System.getenv("HOME"), executor.execute(new File("."), null, "printenv HOME"));
+    }
+
+    @Test
+    public void testDiscardedErrorOutput() throws Exception {
+        final SimpleExecutor executor = new SimpleExecutor(true, 0L);
+        assertEquals("hello", executor.execute(new File("."), null, "echo hello"));
+        try {
+            executor.execute(new File("."), null, "ls /nonexistent/path");
+            fail("Expected the command to fail");
+        } catch (final IntegrationException e) {
+            assertFalse(e.getMessage().contains("No such file"));
+        }
+        // Commands run for effect still report their stderr, merged with their stdout
+        try {
+            executor.executeForEffect(new File("."), null, "ls /nonexistent/path");
+            fail("Expected the command to fail");
+        } catch (final IntegrationException e) {
+            assertTrue(e.getMessage().contains("No such file"));
+        }
+    }
+
+    @Test
+    public void testTimeoutKillsChildProcesses() throws Exception {
+        // The script's own child would keep stdout open for 30 seconds if only the script were killed
+        final File script = tempFolder.newFile("wedged.sh");
+        FileUtils.writeStringToFile(script, "#!/bin/sh\nsleep 30\necho done\n", StandardCharsets.UTF_8);
+        script.setExecutable(true);
+        final SimpleExecutor executor = new SimpleExecutor(false, 200L);
+        final long startMillis = System.currentTimeMillis();
+        try {
+            executor.execute(tempFolder.getRoot(), null, script.getAbsolutePath());
+            fail("Expected the command to time out");
+        } catch (final ExecutableRunnerException e) {
+            assertTrue(e.getMessage().contains("timed out"));
+        }
+        assertTrue(System.currentTimeMillis() - startMillis < 10000L);
+    }
+
+    @Test
+    public void testCancelAll() throws Exception {
+        final SimpleExecutor executor = new SimpleExecutor();
+        final Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(300L);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor.cancelAll();
+        });
+        canceller.start();
+        try {
+            executor.execute(new File("."), null, "sleep 30");
+            fail("Expected the command to be cancelled");
+        } catch (final ExecutableRunnerException e) {
+            assertTrue(e.getMessage().contains("cancelled"));
+        }
+        canceller.join();
+        assertEquals("still usable", executor.execute(new File("."), null, "echo still usable"));
+    }
+}
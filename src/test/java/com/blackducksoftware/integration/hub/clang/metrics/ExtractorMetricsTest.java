@@ -0,0 +1,59 @@
+package com.blackducksoftware.integration.hub.clang.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class ExtractorMetricsTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testRunSummary() throws IOException {
+        final ExtractorMetrics metrics = new ExtractorMetrics();
+        metrics.init();
+        metrics.recordCompile(2000000L);
+        metrics.recordCompile(3000000L);
+        metrics.recordDependencyRulesParsed(1234L);
+        metrics.recordPackageLookup("dpkg", 5, 1000000L);
+        metrics.recordCacheResults("package", 7, 2);
+
+        final File summaryFile = new File(tempFolder.getRoot(), "hub-bom-file-run-summary.json");
+        metrics.writeRunSummary(summaryFile);
+
+        final JsonArray meters = new JsonParser().parse(FileUtils.readFileToString(summaryFile, StandardCharsets.UTF_8)).getAsJsonObject().getAsJsonArray("meters");
+        assertEquals(2.0, findMeter(meters, "clang.extractor.compile", null, null).get("count").getAsDouble(), 0.0);
+        assertEquals(1234.0, findMeter(meters, "clang.extractor.dependency.rules.bytes", null, null).get("count").getAsDouble(), 0.0);
+        assertEquals(5.0, findMeter(meters, "clang.extractor.package.lookups", "pkg.mgr", "dpkg").get("count").getAsDouble(), 0.0);
+        assertEquals(7.0, findMeter(meters, "clang.extractor.cache", "result", "hit").get("count").getAsDouble(), 0.0);
+        assertEquals(2.0, findMeter(meters, "clang.extractor.cache", "result", "miss").get("count").getAsDouble(), 0.0);
+        assertTrue(findMeter(meters, "clang.extractor.compile", null, null).get("total_time").getAsDouble() > 0.0);
+    }
+
+    private JsonObject findMeter(final JsonArray meters, final String name, final String tagKey, final String tagValue) {
+        for (final JsonElement meterElement : meters) {
+            final JsonObject meter = meterElement.getAsJsonObject();
+            if (!name.equals(meter.get("name").getAsString())) {
+                continue;
+            }
+            if (tagKey == null || tagValue.equals(meter.getAsJsonObject("tags").get(tagKey).getAsString())) {
+                return meter;
+            }
+        }
+        throw new AssertionError(String.format("No meter %s in run summary", name));
+    }
+}
@@ -0,0 +1,80 @@
+package com.blackducksoftware.integration.hub.clang.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class RunTracerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testDisabled() throws IOException {
+        final RunTracer tracer = new RunTracer();
+        ReflectionTestUtils.setField(tracer, "traceFilePath", "");
+        tracer.init();
+        assertFalse(tracer.isEnabled());
+        assertSame(tracer.startSpan("compile", "compile"), tracer.startSpan("parse", "parse dependency file", "file", "deps.mk"));
+        tracer.close();
+    }
+
+    @Test
+    public void testSpansOnTwoThreads() throws IOException, InterruptedException {
+        final File traceFile = new File(tempFolder.getRoot(), "trace.json");
+        final RunTracer tracer = new RunTracer();
+        ReflectionTestUtils.setField(tracer, "traceFilePath", traceFile.getAbsolutePath());
+        tracer.init();
+        assertTrue(tracer.isEnabled());
+
+        try (RunTracer.Span span = tracer.startSpan("compile", "compile", "file", "hello.c")) {
+            final Thread workerThread = new Thread(() -> {
+                try (RunTracer.Span workerSpan = tracer.startSpan("package", "dpkg", "files", 3)) {
+                }
+            }, "Test Worker");
+            workerThread.start();
+            workerThread.join();
+        }
+        tracer.close();
+
+        final JsonArray events = new JsonParser().parse(FileUtils.readFileToString(traceFile, StandardCharsets.UTF_8)).getAsJsonArray();
+        int completeEventCount = 0;
+        final Set<String> threadNames = new HashSet<>();
+        final Set<Long> threadIds = new HashSet<>();
+        for (final JsonElement eventElement : events) {
+            final JsonObject event = eventElement.getAsJsonObject();
+            if ("M".equals(event.get("ph").getAsString())) {
+                threadNames.add(event.getAsJsonObject("args").get("name").getAsString());
+                continue;
+            }
+            assertEquals("X", event.get("ph").getAsString());
+            assertTrue(event.get("dur").getAsLong() >= 0L);
+            threadIds.add(event.get("tid").getAsLong());
+            completeEventCount++;
+            if ("compile".equals(event.get("name").getAsString())) {
+                assertEquals("hello.c", event.getAsJsonObject("args").get("file").getAsString());
+            }
+        }
+        assertEquals(2, completeEventCount);
+        assertEquals(2, threadIds.size());
+        assertTrue(threadNames.contains("Test Worker"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+
+public class ApkTest {
+    private final Apk apk = new Apk();
+    private final Set<File> filesForIScan = new HashSet<>();
+    private final Executor executor = (workingDir, environmentVariables, cmd) -> {
+        throw new IllegalStateException(String.format("Unexpected command: %s", cmd));
+    };
+
+    @Before
+    public void setup() {
+        ReflectionTestUtils.setField(apk, "indexEnabled", true);
+        ReflectionTestUtils.setField(apk, "databaseFilePath", "src/test/resources/apk/installed");
+    }
+
+    @Test
+    public void testOwnedFile() {
+        final List<PackageDetails> owners = getOwners("/usr/include/sys/types.h");
+        assertEquals(1, owners.size());
+        assertEquals("musl-dev", owners.get(0).getPackageName().get());
+        assertEquals("1.1.24-r2", owners.get(0).getPackageVersion().get());
+        assertEquals("x86_64", owners.get(0).getPackageArch().get());
+        assertEquals("musl-dev", getOwners("/usr/include/stdio.h").get(0).getPackageName().get());
+        assertEquals("zlib", getOwners("/lib/libz.so.1").get(0).getPackageName().get());
+        assertTrue(filesForIScan.isEmpty());
+    }
+
+    @Test
+    public void testVirtualPackageIgnored() {
+        assertTrue(getOwners("/tmp/virtual.h").isEmpty());
+        assertEquals(1, filesForIScan.size());
+    }
+
+    private List<PackageDetails> getOwners(final String path) {
+        return apk.getDependencyDetails(executor, filesForIScan, new DependencyFile(false, new File(path)));
+    }
+}
@@ -0,0 +1,86 @@
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+
+public class DpkgTest {
+    private final Dpkg dpkg = new Dpkg();
+    private final Set<File> filesForIScan = new HashSet<>();
+
+    @Before
+    public void setup() {
+        ReflectionTestUtils.setField(dpkg, "indexEnabled", true);
+        ReflectionTestUtils.setField(dpkg, "databaseDirPath", "src/test/resources/dpkg");
+    }
+
+    @Test
+    public void testOwnedFile() {
+        final List<PackageDetails> owners = getOwners("/usr/include/x86_64-linux-gnu/bits/types.h");
+        assertEquals(1, owners.size());
+        assertEquals("libc6-dev", owners.get(0).getPackageName().get());
+        assertEquals("2.27-3ubuntu1", owners.get(0).getPackageVersion().get());
+        assertEquals("amd64", owners.get(0).getPackageArch().get());
+        assertEquals("1:1.2.11.dfsg-0ubuntu2", getOwners("/usr/include/zlib.h").get(0).getPackageVersion().get());
+        assertTrue(filesForIScan.isEmpty());
+    }
+
+    @Test
+    public void testUnownedFile() {
+        assertTrue(getOwners("/usr/include/old.h").isEmpty());
+        assertTrue(getOwners("/usr/include/notinstalledbypkgmgr.h").isEmpty());
+        assertEquals(2, filesForIScan.size());
+    }
+
+    @Test
+    public void testUsrmergeAlias() {
+        assertEquals("bash", getOwners("/usr/bin/bash").get(0).getPackageName().get());
+    }
+
+    @Test
+    public void testDiversion() {
+        assertEquals("override-headers", getOwners("/usr/include/zconf.h").get(0).getPackageName().get());
+        assertEquals("zlib1g-dev", getOwners("/usr/include/zconf.h.distrib").get(0).getPackageName().get());
+    }
+
+    @Test
+    public void testFailedStatusQueryNotKept() {
+        ReflectionTestUtils.setField(dpkg, "indexEnabled", false);
+        final AtomicBoolean statusQueryFails = new AtomicBoolean(true);
+        final Executor executor = (workingDir, environmentVariables, cmd) -> {
+            if (cmd.startsWith("dpkg -S")) {
+                return "libc6-dev:amd64: /usr/include/stdio.h";
+            }
+            if (statusQueryFails.get()) {
+                throw new IntegrationException("dpkg -s timed out");
+            }
+            return "Package: libc6-dev\nStatus: install ok installed\nArchitecture: amd64\nVersion: 2.27-3ubuntu1\n";
+        };
+        final DependencyFile dependencyFile = new DependencyFile(false, new File("/usr/include/stdio.h"));
+        assertFalse(dpkg.getDependencyDetails(executor, filesForIScan, Arrays.asList(dependencyFile)).containsKey(dependencyFile));
+        statusQueryFails.set(false);
+        final List<PackageDetails> owners = dpkg.getDependencyDetails(executor, filesForIScan, Arrays.asList(dependencyFile)).get(dependencyFile);
+        assertEquals("2.27-3ubuntu1", owners.get(0).getPackageVersion().get());
+        assertTrue(filesForIScan.isEmpty());
+    }
+
+    private List<PackageDetails> getOwners(final String path) {
+        return dpkg.getDependencyDetails(null, filesForIScan, new DependencyFile(false, new File(path)));
+    }
+}
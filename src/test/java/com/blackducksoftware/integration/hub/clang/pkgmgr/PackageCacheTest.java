@@ -0,0 +1,82 @@
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+
+public class PackageCacheTest {
+    private static final PackageDetails LIBC = new PackageDetails(Optional.of("libc6-dev"), Optional.of("2.27-3ubuntu1"), Optional.of("amd64"));
+    private final DependencyFile stdio = new DependencyFile(false, new File("/usr/include/stdio.h"));
+    private final DependencyFile vendor = new DependencyFile(false, new File("/opt/vendor/include/vendor.h"));
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testOwnedAndUnownedResultsAreReused() throws IOException {
+        final File statusFile = createStatusFile();
+        final String cacheFilePath = new File(tempFolder.getRoot(), "package-cache.json").getAbsolutePath();
+
+        final PackageCache firstRunCache = new PackageCache(cacheFilePath, "dpkg", Arrays.asList(statusFile));
+        firstRunCache.load();
+        assertFalse(firstRunCache.get(stdio).isPresent());
+        firstRunCache.put(stdio, Arrays.asList(LIBC));
+        firstRunCache.put(vendor, Collections.emptyList());
+        firstRunCache.save();
+
+        final PackageCache secondRunCache = new PackageCache(cacheFilePath, "dpkg", Arrays.asList(statusFile));
+        secondRunCache.load();
+        assertEquals(Arrays.asList(LIBC), secondRunCache.get(stdio).get());
+        assertTrue(secondRunCache.get(vendor).get().isEmpty());
+        assertEquals(2, secondRunCache.getHitCount());
+        assertEquals(0, secondRunCache.getMissCount());
+    }
+
+    @Test
+    public void testDatabaseChangeInvalidatesCache() throws IOException {
+        final File statusFile = createStatusFile();
+        final String cacheFilePath = new File(tempFolder.getRoot(), "package-cache.json").getAbsolutePath();
+
+        final PackageCache firstRunCache = new PackageCache(cacheFilePath, "dpkg", Arrays.asList(statusFile));
+        firstRunCache.put(stdio, Arrays.asList(LIBC));
+        firstRunCache.save();
+
+        FileUtils.writeStringToFile(statusFile, "Package: zlib1g-dev\n", StandardCharsets.UTF_8, true);
+        final PackageCache secondRunCache = new PackageCache(cacheFilePath, "dpkg", Arrays.asList(statusFile));
+        secondRunCache.load();
+        assertFalse(secondRunCache.get(stdio).isPresent());
+
+        final PackageCache otherPkgMgrCache = new PackageCache(cacheFilePath, "rpm", Arrays.asList(statusFile));
+        otherPkgMgrCache.load();
+        assertFalse(otherPkgMgrCache.get(stdio).isPresent());
+    }
+
+    @Test
+    public void testDisabledWithoutDatabaseFiles() {
+        final List<File> noDatabaseFiles = Collections.emptyList();
+        final PackageCache cache = new PackageCache(new File(tempFolder.getRoot(), "package-cache.json").getAbsolutePath(), "other", noDatabaseFiles);
+        assertFalse(cache.isEnabled());
+    }
+
+    private File createStatusFile() throws IOException {
+        final File statusFile = new File(tempFolder.getRoot(), "status");
+        FileUtils.writeStringToFile(statusFile, "Package: libc6-dev\nStatus: install ok installed\n", StandardCharsets.UTF_8);
+        return statusFile;
+    }
+}
@@ -0,0 +1,135 @@
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.hub.bdio.model.Forge;
+import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+
+public class PackageOwnershipResolverTest {
+    private static final PackageDetails LIBSTDCXX = new PackageDetails(Optional.of("libstdc++-7-dev"), Optional.of("7.5.0-3ubuntu1"), Optional.of("amd64"));
+    private static final PackageDetails LIBC = new PackageDetails(Optional.of("libc6-dev"), Optional.of("2.27-3ubuntu1"), Optional.of("amd64"));
+    private static final PackageDetails LINUX_LIBC = new PackageDetails(Optional.of("linux-libc-dev"), Optional.of("4.15.0-213.224"), Optional.of("amd64"));
+    private final CountingPkgMgr pkgMgr = new CountingPkgMgr();
+    private final Set<File> filesForIScan = new HashSet<>();
+
+    @Test
+    public void testUniformDirsAnsweredFromMemo() {
+        final List<DependencyFile> dependencyFiles = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            dependencyFiles.add(new DependencyFile(false, new File(String.format("/usr/include/c++/7/bits/h%d.h", i))));
+            dependencyFiles.add(new DependencyFile(false, new File(String.format("/opt/vendor/sdk/include/v%d.h", i))));
+        }
+        final PackageOwnershipResolver resolver = new PackageOwnershipResolver(3, 3);
+        final Map<DependencyFile, List<PackageDetails>> ownersByFile = resolver.getDependencyDetails(null, pkgMgr, filesForIScan, dependencyFiles);
+        assertEquals(40, ownersByFile.size());
+        assertEquals(6, pkgMgr.lookupCount);
+        assertEquals(34, resolver.getMemoHitCount());
+        assertEquals(LIBSTDCXX, ownersByFile.get(dependencyFiles.get(38)).get(0));
+        assertTrue(ownersByFile.get(dependencyFiles.get(39)).isEmpty());
+        assertEquals(20, filesForIScan.size());
+    }
+
+    @Test
+    public void testMixedAndShallowDirsAlwaysLookedUp() {
+        final List<DependencyFile> dependencyFiles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            dependencyFiles.add(new DependencyFile(false, new File(String.format("/usr/include/x86_64-linux-gnu/bits/m%d.h", i))));
+            dependencyFiles.add(new DependencyFile(false, new File(String.format("/usr/include/s%d.h", i))));
+        }
+        final PackageOwnershipResolver resolver = new PackageOwnershipResolver(3, 3);
+        final Map<DependencyFile, List<PackageDetails>> ownersByFile = resolver.getDependencyDetails(null, pkgMgr, filesForIScan, dependencyFiles);
+        assertEquals(20, pkgMgr.lookupCount);
+        assertEquals(0, resolver.getMemoHitCount());
+        assertEquals(LIBSTDCXX, ownersByFile.get(dependencyFiles.get(0)).get(0));
+        assertEquals(LIBC, ownersByFile.get(dependencyFiles.get(2)).get(0));
+    }
+
+    @Test
+    public void testSiblingDirsNotAnsweredFromEachOther() {
+        final PackageOwnershipResolver resolver = new PackageOwnershipResolver(3, 3);
+        final List<DependencyFile> bitsFiles = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            bitsFiles.add(new DependencyFile(false, new File(String.format("/usr/include/x86_64-linux-gnu/bits/b%d.h", i))));
+        }
+        resolver.getDependencyDetails(null, pkgMgr, filesForIScan, bitsFiles);
+        assertEquals(3, pkgMgr.lookupCount);
+
+        final List<DependencyFile> laterFiles = new ArrayList<>();
+        laterFiles.add(new DependencyFile(false, new File("/usr/include/x86_64-linux-gnu/asm/types.h")));
+        laterFiles.add(new DependencyFile(false, new File("/usr/include/x86_64-linux-gnu/config.h")));
+        laterFiles.add(new DependencyFile(false, new File("/usr/include/x86_64-linux-gnu/bits/b9.h")));
+        final Map<DependencyFile, List<PackageDetails>> ownersByFile = resolver.getDependencyDetails(null, pkgMgr, filesForIScan, laterFiles);
+        assertEquals(LINUX_LIBC, ownersByFile.get(laterFiles.get(0)).get(0));
+        assertEquals(LIBC, ownersByFile.get(laterFiles.get(1)).get(0));
+        assertEquals(LIBC, ownersByFile.get(laterFiles.get(2)).get(0));
+        assertEquals(5, pkgMgr.lookupCount);
+        assertEquals(3, resolver.getMemoHitCount());
+    }
+
+    private static class CountingPkgMgr implements PkgMgr {
+        private final Logger logger = LoggerFactory.getLogger(this.getClass());
+        private int lookupCount = 0;
+
+        @Override
+        public List<PackageDetails> getDependencyDetails(final Executor executor, final Set<File> filesForIScan, final DependencyFile dependencyFile) {
+            lookupCount++;
+            final List<PackageDetails> owners = new ArrayList<>();
+            final String path = dependencyFile.getFile().getAbsolutePath();
+            if (path.contains("/asm/")) {
+                owners.add(LINUX_LIBC);
+            } else if (path.startsWith("/opt/")) {
+                filesForIScan.add(dependencyFile.getFile());
+            } else if (path.startsWith("/usr/include/c++/") || path.contains("/m") && path.matches(".*m[02468]\\.h")) {
+                owners.add(LIBSTDCXX);
+            } else {
+                owners.add(LIBC);
+            }
+            return owners;
+        }
+
+        @Override
+        public String getPkgMgrName() {
+            return "counting";
+        }
+
+        @Override
+        public Forge getDefaultForge() {
+            return null;
+        }
+
+        @Override
+        public List<Forge> getForges() {
+            return null;
+        }
+
+        @Override
+        public String getCheckPresenceCommand() {
+            return null;
+        }
+
+        @Override
+        public String getCheckPresenceCommandOutputExpectedText() {
+            return null;
+        }
+
+        @Override
+        public Logger getLogger() {
+            return logger;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+
+public class PathBatchQueryTest {
+
+    @Test
+    public void testChunksStayUnderCommandLengthLimit() {
+        final List<String> commands = new ArrayList<>();
+        final Executor executor = (workingDir, environmentVariables, cmd) -> {
+            commands.add(cmd);
+            return "";
+        };
+        final List<DependencyFile> dependencyFiles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            dependencyFiles.add(new DependencyFile(false, new File(String.format("/usr/include/h%d.h", i))));
+        }
+        final DependencyFile fileWithSpace = new DependencyFile(false, new File("/usr/include/my file.h"));
+        dependencyFiles.add(fileWithSpace);
+        final List<DependencyFile> filesToQueryIndividually = new ArrayList<>();
+        final PathBatchQuery<String> query = new PathBatchQuery<>("q", 60, (paths, outputLines) -> Optional.of(new HashMap<>()));
+        final Map<DependencyFile, List<String>> ownersByFile = query.run(executor, dependencyFiles, filesToQueryIndividually);
+        assertEquals(11, ownersByFile.size());
+        assertTrue(filesToQueryIndividually.isEmpty());
+        assertEquals(4, commands.size());
+        assertTrue(commands.get(3).endsWith(" '/usr/include/my file.h'"));
+        for (final String command : commands) {
+            assertTrue(command.length() <= 60);
+        }
+    }
+
+    @Test
+    public void testFilesLeftUnattributedByFailedCommandQueriedIndividually() {
+        final Executor executor = new Executor() {
+            @Override
+            public String execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd) throws IntegrationException {
+                throw new IntegrationException("not owned");
+            }
+
+            @Override
+            public void execute(final File workingDir, final Map<String, String> environmentVariables, final String cmd, final Consumer<String> outputLineConsumer) throws IntegrationException {
+                outputLineConsumer.accept("libc6-dev: /usr/include/stdio.h");
+                throw new IntegrationException("dpkg-query: no path found matching pattern /usr/include/mine.h");
+            }
+        };
+        final DependencyFile owned = new DependencyFile(false, new File("/usr/include/stdio.h"));
+        final DependencyFile unattributed = new DependencyFile(false, new File("/usr/include/mine.h"));
+        final List<DependencyFile> filesToQueryIndividually = new ArrayList<>();
+        final PathBatchQuery<String> query = new PathBatchQuery<>("dpkg -S", (paths, outputLines) -> {
+            final Map<String, List<String>> ownersByPath = new HashMap<>();
+            outputLines.forEach(line -> ownersByPath.put(line.substring(line.indexOf(' ') + 1), Arrays.asList(line.substring(0, line.indexOf(':')))));
+            return Optional.of(ownersByPath);
+        });
+        final Map<DependencyFile, List<String>> ownersByFile = query.run(executor, Arrays.asList(owned, unattributed), filesToQueryIndividually);
+        assertEquals(Collections.singletonMap(owned, Arrays.asList("libc6-dev")), ownersByFile);
+        assertEquals(Arrays.asList(unattributed), filesToQueryIndividually);
+    }
+}
@@ -0,0 +1,127 @@
+package com.blackducksoftware.integration.hub.clang.pkgmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.clang.DependencyFile;
+import com.blackducksoftware.integration.hub.clang.PackageDetails;
+import com.blackducksoftware.integration.hub.clang.execute.Executor;
+
+public class RpmTest {
+    private static final String QUERY_OUTPUT = "/usr/include/stdio.h\tglibc-headers\t2.17-260.el7\tx86_64\n"
+            + "/usr/include/wchar.h\tglibc-headers\t2.17-260.el7\tx86_64\n"
+            + "(none)\tgpg-pubkey\tf4a80eb5-53a7ff4b\t(none)\n"
+            + "/usr/include/zlib.h\tzlib-devel\t1.2.7-18.el7\tx86_64\n"
+            + "/usr/include/zlib.h\tzlib-devel\t1.2.7-18.el7\ti686\n"
+            + "/lib64/libz.so.1\tzlib\t1.2.7-18.el7\tx86_64";
+    private final Rpm rpm = new Rpm();
+    private final Set<File> filesForIScan = new HashSet<>();
+    private final List<String> commands = new ArrayList<>();
+    private final Executor executor = (workingDir, environmentVariables, cmd) -> {
+        commands.add(cmd);
+        return QUERY_OUTPUT;
+    };
+
+    @Before
+    public void setup() {
+        ReflectionTestUtils.setField(rpm, "indexEnabled", true);
+    }
+
+    @Test
+    public void testLookupsUseOneQuery() {
+        final List<PackageDetails> owners = getOwners("/usr/include/stdio.h");
+        assertEquals(1, owners.size());
+        assertEquals("glibc-headers", owners.get(0).getPackageName().get());
+        assertEquals("2.17-260.el7", owners.get(0).getPackageVersion().get());
+        assertEquals("x86_64", owners.get(0).getPackageArch().get());
+        assertTrue(owners.get(0) == getOwners("/usr/include/wchar.h").get(0));
+        assertEquals(2, getOwners("/usr/include/zlib.h").size());
+        assertEquals("zlib", getOwners("/usr/lib64/libz.so.1").get(0).getPackageName().get());
+        assertTrue(getOwners("/usr/include/notinstalledbypkgmgr.h").isEmpty());
+        assertEquals(1, filesForIScan.size());
+        assertEquals(1, commands.size());
+        assertTrue(commands.get(0).startsWith("rpm -qa --queryformat "));
+        assertEquals(4, commands.get(0).split("\\s+").length);
+    }
+
+    @Test
+    public void testBatchQueryAttributesLinesByPosition() {
+        ReflectionTestUtils.setField(rpm, "indexEnabled", false);
+        final Executor batchExecutor = (workingDir, environmentVariables, cmd) -> {
+            commands.add(cmd);
+            return "glibc-headers-2.17-260.el7.x86_64\nfile /usr/include/notinstalledbypkgmgr.h is not owned by any package\nzlib-devel-1.2.7-18.el7.x86_64";
+        };
+        final DependencyFile stdio = new DependencyFile(false, new File("/usr/include/stdio.h"));
+        final DependencyFile notInstalled = new DependencyFile(false, new File("/usr/include/notinstalledbypkgmgr.h"));
+        final DependencyFile zlib = new DependencyFile(false, new File("/usr/include/zlib.h"));
+        final Map<DependencyFile, List<PackageDetails>> ownersByFile = rpm.getDependencyDetails(batchExecutor, filesForIScan, Arrays.asList(stdio, notInstalled, zlib));
+        assertEquals("glibc-headers", ownersByFile.get(stdio).get(0).getPackageName().get());
+        assertTrue(ownersByFile.get(notInstalled).isEmpty());
+        assertEquals("zlib-devel", ownersByFile.get(zlib).get(0).getPackageName().get());
+        assertEquals(1, filesForIScan.size());
+        assertEquals(Arrays.asList("rpm -qf /usr/include/stdio.h /usr/include/notinstalledbypkgmgr.h /usr/include/zlib.h"), commands);
+    }
+
+    @Test
+    public void testBatchQueryRetriesUnattributableChunk() {
+        ReflectionTestUtils.setField(rpm, "indexEnabled", false);
+        final Executor batchExecutor = (workingDir, environmentVariables, cmd) -> {
+            commands.add(cmd);
+            // A file owned by two packages gets two lines
+            final List<String> lines = new ArrayList<>();
+            if (cmd.contains("stdio.h")) {
+                lines.add("glibc-headers-2.17-260.el7.x86_64");
+                lines.add("glibc-headers-2.17-260.el7.i686");
+            }
+            if (cmd.contains("zlib.h")) {
+                lines.add("zlib-devel-1.2.7-18.el7.x86_64");
+            }
+            return String.join("\n", lines);
+        };
+        final DependencyFile stdio = new DependencyFile(false, new File("/usr/include/stdio.h"));
+        final DependencyFile zlib = new DependencyFile(false, new File("/usr/include/zlib.h"));
+        final Map<DependencyFile, List<PackageDetails>> ownersByFile = rpm.getDependencyDetails(batchExecutor, filesForIScan, Arrays.asList(stdio, zlib));
+        assertEquals(2, ownersByFile.get(stdio).size());
+        assertEquals("zlib-devel", ownersByFile.get(zlib).get(0).getPackageName().get());
+        assertEquals(3, commands.size());
+    }
+
+    @Test
+    public void testFailedLookupIsLeftOutOfResult() {
+        ReflectionTestUtils.setField(rpm, "indexEnabled", false);
+        final Executor failingExecutor = (workingDir, environmentVariables, cmd) -> {
+            commands.add(cmd);
+            if (cmd.contains("broken.h")) {
+                throw new IntegrationException(String.format("Command '%s' return code: 1; stderr: error: rpmdb open failed", cmd));
+            }
+            return "glibc-headers-2.17-260.el7.x86_64";
+        };
+        final DependencyFile stdio = new DependencyFile(false, new File("/usr/include/stdio.h"));
+        final DependencyFile broken = new DependencyFile(false, new File("/usr/include/broken.h"));
+        final Map<DependencyFile, List<PackageDetails>> ownersByFile = rpm.getDependencyDetails(failingExecutor, filesForIScan, Arrays.asList(stdio, broken));
+        assertEquals("glibc-headers", ownersByFile.get(stdio).get(0).getPackageName().get());
+        // Not reported as unowned, so it isn't cached as such, but still handed to iScan for this run
+        assertFalse(ownersByFile.containsKey(broken));
+        assertTrue(filesForIScan.contains(broken.getFile()));
+        assertFalse(rpm.lookUpDependencyDetails(failingExecutor, filesForIScan, broken).isPresent());
+        assertEquals(4, commands.size());
+    }
+
+    private List<PackageDetails> getOwners(final String path) {
+        return rpm.getDependencyDetails(executor, filesForIScan, new DependencyFile(false, new File(path)));
+    }
+}